@@ -0,0 +1,173 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * ArcEvictionPolicy implements Adaptive Replacement Cache (Megiddo and
+ * Modha). Resident pages are split between T1, pages seen once recently, and
+ * T2, pages seen at least twice. The ghost lists B1 and B2 remember the ids of
+ * pages recently evicted from T1 and T2. A miss on a page in B1 means T1 was
+ * too small, so the target size p of T1 grows; a miss on a page in B2 shrinks
+ * it. The policy thus balances recency against frequency on its own and is
+ * resistant to scans.
+ * <p>
+ * All lists are LinkedHashSets whose iteration order runs from the least to
+ * the most recently used page.
+ *
+ * @Threadsafe
+ */
+public class ArcEvictionPolicy implements EvictionPolicy {
+
+    private int c;
+    private int p;
+    private final LinkedHashSet<PageId> t1;
+    private final LinkedHashSet<PageId> t2;
+    private final LinkedHashSet<PageId> b1;
+    private final LinkedHashSet<PageId> b2;
+    // The incoming page p was already adapted for by chooseVictim.
+    private PageId adaptedFor;
+    // A victim taken from T1 while B1 is empty is not remembered.
+    private PageId forget;
+
+    public ArcEvictionPolicy(int numPages) {
+        c = Math.max(numPages, 1);
+        p = 0;
+        t1 = new LinkedHashSet<PageId>();
+        t2 = new LinkedHashSet<PageId>();
+        b1 = new LinkedHashSet<PageId>();
+        b2 = new LinkedHashSet<PageId>();
+    }
+
+    public synchronized void pageAdded(PageId pid) {
+        if (t1.contains(pid) || t2.contains(pid)) {
+            pageAccessed(pid);
+            return;
+        }
+        if (!pid.equals(adaptedFor)) {
+            adapt(pid);
+        }
+        adaptedFor = null;
+        if (b1.remove(pid) || b2.remove(pid)) {
+            t2.add(pid);
+        } else {
+            t1.add(pid);
+        }
+        trimHistory();
+    }
+
+    public synchronized boolean pageAccessed(PageId pid) {
+        if (t1.remove(pid) || t2.remove(pid)) {
+            t2.add(pid);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized PageId chooseVictim(PageId incoming) {
+        if (t1.isEmpty() && t2.isEmpty()) {
+            return null;
+        }
+        if (incoming != null && !incoming.equals(adaptedFor)) {
+            adapt(incoming);
+            adaptedFor = incoming;
+        }
+        boolean ghost = incoming != null && (b1.contains(incoming) || b2.contains(incoming));
+        if (!ghost && b1.isEmpty() && t1.size() >= c) {
+            // T1 alone fills the cache: drop its LRU page without history.
+            forget = first(t1);
+            return forget;
+        }
+        boolean inB2 = incoming != null && b2.contains(incoming);
+        if (!t1.isEmpty() && (t1.size() > p || (inB2 && t1.size() == p) || t2.isEmpty())) {
+            return first(t1);
+        }
+        return first(t2);
+    }
+
+    public synchronized void pageRemoved(PageId pid, boolean evicted) {
+        boolean remember = evicted && !pid.equals(forget);
+        forget = null;
+        if (t1.remove(pid)) {
+            if (remember) {
+                b1.add(pid);
+            }
+        } else if (t2.remove(pid)) {
+            if (remember) {
+                b2.add(pid);
+            }
+        }
+        trimHistory();
+    }
+
+    /**
+     * The target size of T1 is kept within the new number of frames, and
+     * the ghost lists are trimmed to it.
+     */
+    public synchronized void resize(int numPages) {
+        c = Math.max(numPages, 1);
+        p = Math.min(p, c);
+        trimHistory();
+    }
+
+    public synchronized int size() {
+        return t1.size() + t2.size();
+    }
+
+    /**
+     * @return the pages of T2, then those of T1, each the most recently used
+     *         first.
+     */
+    public synchronized List<PageId> residentPages() {
+        ArrayList<PageId> once = new ArrayList<PageId>(t1);
+        ArrayList<PageId> pages = new ArrayList<PageId>(t2);
+        Collections.reverse(once);
+        Collections.reverse(pages);
+        pages.addAll(once);
+        return pages;
+    }
+
+    /** @return the current target size of T1; exposed for testing. */
+    synchronized int getTarget() {
+        return p;
+    }
+
+    private void adapt(PageId pid) {
+        if (b1.contains(pid)) {
+            int delta = Math.max(b2.size() / Math.max(b1.size(), 1), 1);
+            p = Math.min(c, p + delta);
+        } else if (b2.contains(pid)) {
+            int delta = Math.max(b1.size() / Math.max(b2.size(), 1), 1);
+            p = Math.max(0, p - delta);
+        }
+    }
+
+    // Keep |T1| + |B1| <= c and the whole directory within 2c.
+    private void trimHistory() {
+        while (t1.size() + b1.size() > c && !b1.isEmpty()) {
+            removeFirst(b1);
+        }
+        while (t1.size() + t2.size() + b1.size() + b2.size() > 2 * c) {
+            if (!b2.isEmpty()) {
+                removeFirst(b2);
+            } else if (!b1.isEmpty()) {
+                removeFirst(b1);
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static PageId first(LinkedHashSet<PageId> list) {
+        return list.iterator().next();
+    }
+
+    private static void removeFirst(LinkedHashSet<PageId> list) {
+        Iterator<PageId> it = list.iterator();
+        it.next();
+        it.remove();
+    }
+}
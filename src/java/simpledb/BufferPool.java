@@ -1,8 +1,20 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -11,7 +23,40 @@ import java.util.concurrent.ConcurrentHashMap;
  * <p>
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
- * locks to read/write the page.
+ * locks to read/write the page. The locks are kept by a {@link LockManager}
+ * and held until the transaction completes.
+ * <p>
+ * A BufferPool created by {@link #withCapacityBytes} keeps the images of
+ * resident HeapFile pages in a {@link FrameArena} outside the Java heap and
+ * decodes a page every time it is asked for. Only the pages a transaction
+ * may change, i.e. pages asked for with other than READ_ONLY permissions,
+ * stay decoded on the heap, until they are written out; pages of other
+ * kinds of files are always kept decoded.
+ * <p>
+ * The tuples of most HeapFiles are locked one by one, so that transactions
+ * changing different tuples of a page do not wait for each other; see
+ * {@link #locksTuples}. Pages changed that way may hold the changes of
+ * several transactions at once, so rather than dropping the pages an
+ * aborted transaction dirtied, its tuple changes are undone one by one.
+ * <p>
+ * Changes of transactions that have not committed never reach the disk
+ * (NO STEAL): eviction passes over the pages holding them, and a commit,
+ * which writes the pages of the committing transaction (FORCE), writes
+ * shared pages without them.
+ * <p>
+ * A transaction that holds many tuple locks on one page, or many page and
+ * tuple locks on one table, has them escalated to a single lock on the page
+ * or table; see {@link #setTupleLocksPerPage} and {@link #setLocksPerTable}.
+ * Escalation never waits: while another transaction holds a conflicting
+ * lock, the finer locks are kept. {@link #lockTable} locks a whole table up
+ * front.
+ * <p>
+ * A transaction made read-only by {@link #beginSnapshot} reads the pages of
+ * HeapFiles as the transactions committed before it left them, without taking locks
+ * or waiting for writers. The pool works a page's current committed image
+ * out of its resident copy, leaving out the changes of transactions that
+ * have not committed, and keeps older images for as long as such a
+ * snapshot may still read them; see {@link PageVersions}.
  * 
  * @Threadsafe, all fields are final
  */
@@ -25,20 +70,359 @@ public class BufferPool {
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
+
+    /** Scans of tables of more than this percentage of the pool read through
+    a BufferRing; smaller tables are cached like any other. */
+    public static final int BULK_READ_PERCENT = 75;
+
+    /** The most frames a BufferRing takes from the pool. */
+    public static final int RING_PAGES = 16;
+
+    /** The number of pages {@link #warmUp} reads at once. */
+    public static final int WARM_UP_THREADS = 4;
+
+    /** By default, the most tuple locks a transaction holds on one page
+    before it locks the page instead. */
+    public static final int TUPLE_LOCKS_PER_PAGE = 64;
+
+    /** By default, the most page and tuple locks a transaction holds on one
+    table before it locks the table instead. */
+    public static final int LOCKS_PER_TABLE = 1000;
+
+    /** The name of the partition of the tables not assigned to another. */
+    public static final String DEFAULT_PARTITION = "default";
+
+    // The resident pages, or with an arena only those kept decoded.
     private ConcurrentHashMap<PageId, Page> pageMap;
-    private ConcurrentHashMap<PageId, Integer> lruCache;
+    // The off-heap page images, or null if pages are only kept on the heap.
+    private final FrameArena arena;
+    // The frame of each resident page when there is an arena.
+    private final ConcurrentHashMap<PageId, FrameArena.Frame> frameOf = new ConcurrentHashMap<PageId, FrameArena.Frame>();
+    // The frames not given to a named partition, evicted by the pool's policy.
+    private final PoolPartition defaultPartition;
+    // The named partitions, by name.
+    private final ConcurrentHashMap<String, PoolPartition> partitions = new ConcurrentHashMap<String, PoolPartition>();
+    // The partition of each resident page that is not in the default one.
+    private final ConcurrentHashMap<PageId, PoolPartition> partitionOf = new ConcurrentHashMap<PageId, PoolPartition>();
+    // The ring holding each resident page that the policy does not track.
+    private final ConcurrentHashMap<PageId, BufferRing> ringOf = new ConcurrentHashMap<PageId, BufferRing>();
+    // Pages prefetchPage is reading; removing a page's entry cancels its read.
+    private final ConcurrentHashMap<PageId, CountDownLatch> loading = new ConcurrentHashMap<PageId, CountDownLatch>();
     private int maxPageNum;
+    // The background writer, or null if it is not running.
+    private volatile PageCleaner cleaner;
+    private final Object cleanerLock = new Object();
+    // Transactions that committed while the cleaner runs and may still have
+    // dirty pages in the pool; only their pages may be written ahead.
+    private final Set<TransactionId> committed = ConcurrentHashMap.newKeySet();
+    // Whether scans prefetch the pages ahead of them.
+    private volatile boolean readAhead = true;
+    private volatile int tupleLocksPerPage = TUPLE_LOCKS_PER_PAGE;
+    private volatile int locksPerTable = LOCKS_PER_TABLE;
+    private final BufferPoolMetrics metrics = new BufferPoolMetrics();
+    private final LockManager lockManager = new LockManager();
+    // the tuples each transaction inserted or deleted under tuple locks
+    private final ConcurrentHashMap<TransactionId, List<TupleChange>> tupleChanges =
+    		new ConcurrentHashMap<TransactionId, List<TupleChange>>();
+    // the page and tuple locks each transaction holds, until they are escalated
+    private final ConcurrentHashMap<TransactionId, HeldLocks> heldLocks =
+    		new ConcurrentHashMap<TransactionId, HeldLocks>();
+    // the tuple changes of transactions that have not committed, by page;
+    // guarded by itself, and changed under the page's monitor too
+    private final HashMap<PageId, ArrayList<TupleChange>> inFlight =
+    		new HashMap<PageId, ArrayList<TupleChange>>();
+    // the committed images of the HeapFile pages being changed under page locks
+    private final ConcurrentHashMap<PageId, PreImage> preImages = new ConcurrentHashMap<PageId, PreImage>();
+    private final PageVersions versions = new PageVersions();
+    // When set, every getPage is appended here for EvictionReplay.
+    private volatile PrintWriter accessTrace;
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages and evicts the
+     * least recently used page when it is full.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+    	this(numPages, new LruEvictionPolicy());
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and uses the
+     * given policy to choose the page to evict when it is full.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the eviction policy; it must not be shared with another
+     *        BufferPool.
+     */
+    public BufferPool(int numPages, EvictionPolicy policy) {
+    	this(null, numPages, policy);
+    }
+
+    private BufferPool(FrameArena arena, int numPages, EvictionPolicy policy) {
     	maxPageNum = numPages;
     	pageMap = new ConcurrentHashMap<PageId, Page>();
-    	lruCache = new ConcurrentHashMap<PageId, Integer>();
+    	this.arena = arena;
+    	this.defaultPartition = new PoolPartition(DEFAULT_PARTITION, numPages, policy);
+    }
+
+    /**
+     * Creates a BufferPool that caches as many pages as fit in
+     * capacityBytes bytes, stored off the Java heap, and evicts the least
+     * recently used page when it is full. The memory is allocated up front.
+     *
+     * @see FrameArena
+     */
+    public static BufferPool withCapacityBytes(long capacityBytes) {
+    	return withCapacityBytes(capacityBytes, new LruEvictionPolicy());
+    }
+
+    /**
+     * Creates a BufferPool of capacityBytes bytes stored off the Java heap,
+     * as above, that uses the given policy to choose the page to evict.
+     */
+    public static BufferPool withCapacityBytes(long capacityBytes, EvictionPolicy policy) {
+    	FrameArena arena = new FrameArena(capacityBytes, getPageSize());
+    	return new BufferPool(arena, arena.capacity(), policy);
+    }
+
+    /** @return the maximum number of pages in this buffer pool */
+    public int getNumPages() {
+    	return maxPageNum;
+    }
+
+    /** @return the manager of the page locks of this buffer pool */
+    public LockManager getLockManager() {
+    	return lockManager;
+    }
+
+    /** @return the live counts of what this buffer pool does */
+    public BufferPoolMetrics getMetrics() {
+    	return metrics;
+    }
+
+    /**
+     * @return the counts of what this buffer pool did so far, along with
+     *         how many of its pages are resident and dirty now.
+     */
+    public BufferPoolMetrics.Snapshot snapshotMetrics() {
+    	int dirty = 0;
+    	for (Page page : pageMap.values()) {
+    		if (page.isDirty() != null) {
+    			dirty++;
+    		}
+    	}
+    	ArrayList<PoolPartition> parts = new ArrayList<PoolPartition>();
+    	synchronized (this) {
+    		parts.add(defaultPartition);
+    		parts.addAll(partitions.values());
+    	}
+    	return metrics.snapshot(dirty, residentCount(), maxPageNum, parts, lockManager);
+    }
+
+    /** @return whether page images are stored off the Java heap */
+    public boolean isOffHeap() {
+    	return arena != null;
+    }
+
+    /** @return the eviction policy of this buffer pool's default partition */
+    public EvictionPolicy getEvictionPolicy() {
+    	return defaultPartition.policy;
+    }
+
+    /**
+     * Set aside numPages of this pool's frames for the tables the catalog
+     * assigns to partition name, whose pages only evict each other, chosen
+     * by policy. The frames are taken from the default partition, which
+     * must keep at least one; its eviction policy is resized to the frames
+     * it keeps, and if it holds more pages than that, the extra pages are
+     * evicted now. Pages that are resident when a table is assigned to
+     * another partition stay accounted to the old one until they leave the
+     * pool.
+     *
+     * @param policy the partition's eviction policy; it must not be shared
+     * @throws IllegalArgumentException if there is a partition of that name
+     *         or there are not enough frames left
+     * @throws DbException if the default partition has no page to evict
+     * @see Catalog#setPartition
+     */
+    public synchronized void addPartition(String name, int numPages, EvictionPolicy policy)
+        throws DbException {
+    	if (name.equals(DEFAULT_PARTITION) || partitions.containsKey(name)) {
+    		throw new IllegalArgumentException("partition " + name + " already exists");
+    	}
+    	if (numPages <= 0 || numPages >= defaultPartition.capacity) {
+    		throw new IllegalArgumentException("can't set aside " + numPages + " of "
+    				+ defaultPartition.capacity + " free frames");
+    	}
+    	defaultPartition.capacity -= numPages;
+    	defaultPartition.policy.resize(defaultPartition.capacity);
+    	partitions.put(name, new PoolPartition(name, numPages, policy));
+    	while (defaultPartition.resident > defaultPartition.capacity) {
+    		evictPage(defaultPartition, null);
+    	}
+    }
+
+    /**
+     * @return the partition new pages of table tableId go to.
+     */
+    private PoolPartition partitionFor(int tableId) {
+    	if (partitions.isEmpty()) {
+    		return defaultPartition;
+    	}
+    	String name = Database.getCatalog().getPartition(tableId);
+    	PoolPartition part = name == null ? null : partitions.get(name);
+    	return part == null ? defaultPartition : part;
+    }
+
+    /**
+     * @return the partition the resident page pid is accounted to.
+     */
+    private PoolPartition home(PageId pid) {
+    	PoolPartition part = partitionOf.get(pid);
+    	return part == null ? defaultPartition : part;
+    }
+
+    /**
+     * Turn sequential read-ahead for scans opened from now on on or off. It
+     * is on by default.
+     *
+     * @see ReadAhead
+     */
+    public void setReadAhead(boolean enabled) {
+    	readAhead = enabled;
+    }
+
+    /** @return whether scans read ahead */
+    public boolean isReadAheadEnabled() {
+    	return readAhead;
+    }
+
+    /**
+     * Set the most tuple locks a transaction holds on one page; one more
+     * and it locks the whole page instead, in S if it only read the
+     * tuples and in X if it changed any, and gives the tuple locks back.
+     * That keeps a scan of a large table from filling the lock table.
+     * If another transaction holds a conflicting lock on the page, the
+     * transaction keeps its tuple locks and tries again after as many
+     * more.
+     */
+    public void setTupleLocksPerPage(int limit) {
+    	if (limit < 1) {
+    		throw new IllegalArgumentException("at least one tuple lock per page is needed");
+    	}
+    	tupleLocksPerPage = limit;
+    }
+
+    /** @return the most tuple locks a transaction holds on one page */
+    public int getTupleLocksPerPage() {
+    	return tupleLocksPerPage;
+    }
+
+    /**
+     * Set the most page and tuple locks a transaction holds on one table;
+     * one more and it locks the whole table instead, as {@link
+     * #setTupleLocksPerPage} describes for a page.
+     */
+    public void setLocksPerTable(int limit) {
+    	if (limit < 1) {
+    		throw new IllegalArgumentException("at least one lock per table is needed");
+    	}
+    	locksPerTable = limit;
+    }
+
+    /** @return the most page and tuple locks a transaction holds on one table */
+    public int getLocksPerTable() {
+    	return locksPerTable;
+    }
+
+    /**
+     * Record the id of every page requested from now on to trace, one page
+     * per line in the format read by {@link EvictionReplay}. Pass null to
+     * stop recording.
+     */
+    public void setAccessTrace(PrintWriter trace) {
+    	accessTrace = trace;
     }
     
+    /**
+     * Start a background thread that writes dirty pages of committed
+     * transactions to disk ahead of eviction, up to batchSize pages at a
+     * time and about pagesPerSecond pages a second. A commit already writes
+     * the pages its transaction dirtied, so the cleaner only finds pages
+     * dirtied again by a transaction after it committed. It never writes a
+     * page of a transaction that has not committed, and only considers
+     * transactions that commit from now on. Restarts the thread if it is
+     * already running.
+     */
+    public void startPageCleaner(int pagesPerSecond, int batchSize) {
+    	if (pagesPerSecond <= 0 || batchSize <= 0) {
+    		throw new IllegalArgumentException("the rate and batch size must be positive");
+    	}
+    	synchronized (cleanerLock) {
+    		stopPageCleaner();
+    		cleaner = new PageCleaner(this, pagesPerSecond, batchSize);
+    		cleaner.start();
+    	}
+    }
+
+    /**
+     * Stop the background writer started by {@link #startPageCleaner}, if
+     * any, and wait for it to finish the round in progress.
+     */
+    public void stopPageCleaner() {
+    	synchronized (cleanerLock) {
+    		if (cleaner != null) {
+    			cleaner.shutdown();
+    			cleaner = null;
+    			committed.clear();
+    		}
+    	}
+    }
+
+    /**
+     * Write up to max dirty pages of committed transactions to disk. Each
+     * page is written under the BufferPool monitor, but the monitor is
+     * released between pages so that getPage is not held up for a batch.
+     *
+     * @return the number of pages written
+     */
+    int cleanPages(int max) throws IOException {
+    	Set<TransactionId> done = new HashSet<TransactionId>(committed);
+    	if (done.isEmpty()) {
+    		return 0;
+    	}
+    	Set<TransactionId> stillDirty = new HashSet<TransactionId>();
+    	ArrayList<PageId> batch = new ArrayList<PageId>();
+    	synchronized (this) {
+    		for (Page page : pageMap.values()) {
+    			TransactionId dirtier = page.isDirty();
+    			if (dirtier != null && done.contains(dirtier)) {
+    				stillDirty.add(dirtier);
+    				if (batch.size() < max) {
+    					batch.add(page.getId());
+    				}
+    			}
+    		}
+    		// a committed transaction dirties no more pages, so once none of
+    		// its pages is dirty it can be forgotten
+    		done.removeAll(stillDirty);
+    		committed.removeAll(done);
+    	}
+
+    	int written = 0;
+    	for (PageId pid : batch) {
+    		synchronized (this) {
+    			Page page = pageMap.get(pid);
+    			TransactionId dirtier = page == null ? null : page.isDirty();
+    			if (dirtier != null && committed.contains(dirtier)) {
+    				flushPage(pid);
+    				written++;
+    			}
+    		}
+    	}
+    	return written;
+    }
+
     public static int getPageSize() {
       return pageSize;
     }
@@ -53,6 +437,30 @@ public class BufferPool {
     	BufferPool.pageSize = DEFAULT_PAGE_SIZE;
     }
 
+    /** A tuple a transaction inserted or deleted under a tuple lock. */
+    private static class TupleChange {
+    	final TransactionId tid;
+    	final Tuple tuple;
+    	final boolean inserted;
+
+    	TupleChange(TransactionId tid, Tuple tuple, boolean inserted) {
+    		this.tid = tid;
+    		this.tuple = tuple;
+    		this.inserted = inserted;
+    	}
+    }
+
+    /** The image a page had before a transaction locked it to change it. */
+    private static class PreImage {
+    	final TransactionId tid;
+    	final byte[] image;
+
+    	PreImage(TransactionId tid, byte[] image) {
+    		this.tid = tid;
+    		this.image = image;
+    	}
+    }
+
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
@@ -70,26 +478,981 @@ public class BufferPool {
      */
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
+    	return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Lock pid for tid, shared for READ_ONLY and exclusively for any other
+     * permissions, after the matching intention lock on its table. Pages
+     * read on behalf of no transaction are not locked, and neither are
+     * pages whose table tid holds a lock on that covers them.
+     */
+    private void lock(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException {
+    	if (tid == null) {
+    		return;
+    	}
+    	LockManager.Mode mode = LockManager.Mode.of(perm != Permissions.READ_ONLY);
+    	LockManager.Mode onPage = lockManager.heldMode(tid, pid);
+    	if (onPage != null && onPage.covers(mode) || tableCovers(tid, pid.getTableId(), mode)) {
+    		return;
+    	}
+    	lockManager.acquire(tid, LockManager.tableKey(pid.getTableId()), mode.intention());
+    	lockManager.acquire(tid, pid, mode);
+    	counted(tid, pid.getTableId(), onPage == null ? 1 : 0, mode);
+    	escalateLocks(tid, pid);
+    }
+
+    /**
+     * Take the intention locks on pid and its table that locking tuples of
+     * pid for perm needs, unless tid holds a lock on either that covers
+     * the tuples already.
+     */
+    private void lockIntentions(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException {
+    	if (tid == null) {
+    		return;
+    	}
+    	LockManager.Mode mode = LockManager.Mode.of(perm != Permissions.READ_ONLY);
+    	LockManager.Mode onPage = lockManager.heldMode(tid, pid);
+    	if (onPage != null && onPage.covers(mode.intention()) || tableCovers(tid, pid.getTableId(), mode)) {
+    		return;
+    	}
+    	lockManager.acquire(tid, LockManager.tableKey(pid.getTableId()), mode.intention());
+    	lockManager.acquire(tid, pid, mode.intention());
+    	counted(tid, pid.getTableId(), onPage == null ? 1 : 0, mode.intention());
+    	escalateLocks(tid, pid);
+    }
+
+    /** @return whether tid holds a lock on table tableId that covers mode on all of it */
+    private boolean tableCovers(TransactionId tid, int tableId, LockManager.Mode mode) {
+    	LockManager.Mode onTable = lockManager.heldMode(tid, LockManager.tableKey(tableId));
+    	return onTable != null && onTable.covers(mode);
+    }
+
+    /**
+     * Lock all of table tableId for tid, shared for READ_ONLY and
+     * exclusively otherwise, after which the table's pages and tuples need
+     * no locks of their own for that, and give back those tid holds that
+     * the table lock covers. Waits for conflicting locks as getPage does.
+     */
+    public void lockTable(TransactionId tid, int tableId, Permissions perm)
+        throws TransactionAbortedException {
+    	if (tid == null) {
+    		return;
+    	}
+    	LockManager.Mode mode = LockManager.Mode.of(perm != Permissions.READ_ONLY);
+    	Object table = LockManager.tableKey(tableId);
+    	lockManager.acquire(tid, table, mode);
+    	LockManager.Mode onTable = lockManager.heldMode(tid, table);
+    	for (Object key : finerLocks(tid, tableId, onTable)) {
+    		lockManager.release(tid, key);
+    	}
+    	forgetLocks(tid, tableId);
+    }
+
+    /**
+     * @return the page and tuple locks tid holds on table tableId that a
+     *         lock on the table in mode makes unneeded: all of them for X,
+     *         and those that only read for S or SIX
+     */
+    private List<Object> finerLocks(TransactionId tid, int tableId, LockManager.Mode mode) {
+    	ArrayList<Object> finer = new ArrayList<Object>();
+    	for (Object key : lockManager.heldKeys(tid)) {
+    		PageId pid = key instanceof RecordId ? ((RecordId) key).getPageId()
+    				: key instanceof PageId ? (PageId) key : null;
+    		if (pid == null || pid.getTableId() != tableId) {
+    			continue;
+    		}
+    		LockManager.Mode held = lockManager.heldMode(tid, key);
+    		if (mode == LockManager.Mode.X || held == LockManager.Mode.IS || held == LockManager.Mode.S) {
+    			finer.add(key);
+    		}
+    	}
+    	return finer;
+    }
+
+    /**
+     * @return whether the tuples of table tableId are locked one by one
+     *         rather than a page at a time. That needs a HeapFile whose
+     *         pages are HeapPages, and pages that stay decoded while they
+     *         are resident, so that transactions changing different
+     *         tuples of a page share one copy of it: not an off-heap pool.
+     * @see HeapFile#locksTuples
+     */
+    public boolean locksTuples(int tableId) {
+    	if (arena != null) {
+    		return false;
+    	}
+    	DbFile df = Database.getCatalog().getDatabaseFile(tableId);
+    	return df instanceof HeapFile && ((HeapFile) df).locksTuples();
+    }
+
+    /**
+     * Retrieve a page of a table whose tuples are locked one by one. Rather
+     * than the page, tid only locks the page and its table with intention
+     * locks, IS for READ_ONLY and IX otherwise, and must lock each tuple
+     * it reads or changes with {@link #lockTuple}. Other transactions may
+     * be changing other tuples of the page, so it must only be read or
+     * changed under its monitor, and only while {@link #isCached} says it
+     * is still the resident copy.
+     *
+     * @see #locksTuples
+     */
+    public Page getPageForTuples(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
+    	checkWritable(tid, perm);
+    	lockIntentions(tid, pid, perm);
+    	return fetch(pid, perm, ring);
+    }
+
+    /**
+     * Lock tuple rid for tid, shared for READ_ONLY and exclusively for any
+     * other permissions, after the intention locks on its page and table.
+     * Nothing is locked if tid holds a lock on the page that covers it.
+     * May block, so it must not be called under a page's monitor.
+     */
+    public void lockTuple(TransactionId tid, RecordId rid, Permissions perm)
+        throws TransactionAbortedException {
+    	if (tid == null) {
+    		return;
+    	}
+    	LockManager.Mode mode = LockManager.Mode.of(perm != Permissions.READ_ONLY);
+    	if (tupleCovered(tid, rid, mode)) {
+    		return;
+    	}
+    	lockIntentions(tid, rid.getPageId(), perm);
+    	LockManager.Mode onTuple = lockManager.heldMode(tid, rid);
+    	lockManager.acquire(tid, rid, mode);
+    	tupleLocked(tid, rid, onTuple == null, mode);
+    	escalateLocks(tid, rid.getPageId());
+    }
+
+    /**
+     * @return whether tid holds a lock on tuple rid, its page or its table
+     *         that covers mode
+     */
+    private boolean tupleCovered(TransactionId tid, RecordId rid, LockManager.Mode mode) {
+    	LockManager.Mode held = lockManager.heldMode(tid, rid);
+    	if (held != null && held.covers(mode)) {
+    		return true;
+    	}
+    	LockManager.Mode onPage = lockManager.heldMode(tid, rid.getPageId());
+    	return onPage != null && onPage.covers(mode) || tableCovers(tid, rid.getPageId().getTableId(), mode);
+    }
+
+    /**
+     * Lock tuple rid for tid as {@link #lockTuple} does if that can be done
+     * without waiting; tid must hold the intention locks above it already.
+     * The locks are not escalated, as this is called under the page's
+     * monitor; the caller calls {@link #escalateLocks} once it lets go.
+     *
+     * @return whether tid now holds the lock
+     */
+    boolean tryLockTuple(TransactionId tid, RecordId rid, Permissions perm) {
+    	if (tid == null) {
+    		return true;
+    	}
+    	LockManager.Mode mode = LockManager.Mode.of(perm != Permissions.READ_ONLY);
+    	if (tupleCovered(tid, rid, mode)) {
+    		return true;
+    	}
+    	LockManager.Mode onTuple = lockManager.heldMode(tid, rid);
+    	if (!lockManager.tryAcquire(tid, rid, mode)) {
+    		return false;
+    	}
+    	tupleLocked(tid, rid, onTuple == null, mode);
+    	return true;
+    }
+
+    /**
+     * The page and tuple locks a transaction holds, counted so that they
+     * can be escalated. Guarded by its own monitor.
+     */
+    private static class HeldLocks {
+    	// the tuple locks of each page, until they are escalated
+    	final HashMap<PageId, TupleLocks> pages = new HashMap<PageId, TupleLocks>();
+    	// the number of page and tuple locks on each table, until they are escalated
+    	final HashMap<Integer, LockCount> tables = new HashMap<Integer, LockCount>();
+    }
+
+    /** A number of locks and whether any of them is for changing. */
+    private static class LockCount {
+    	int count;
+    	boolean exclusive;
+    	// once escalating failed, the count at which to try again
+    	int retryAt;
+
+    	void add(int n, LockManager.Mode mode) {
+    		count += n;
+    		exclusive |= mode != LockManager.Mode.IS && mode != LockManager.Mode.S;
+    	}
+
+    	/** @return whether there are more than limit locks and it is time to escalate them */
+    	boolean over(int limit) {
+    		return count > limit && count >= retryAt;
+    	}
+    }
+
+    private static class TupleLocks extends LockCount {
+    	final ArrayList<RecordId> rids = new ArrayList<RecordId>();
+    }
+
+    private HeldLocks heldLocks(TransactionId tid) {
+    	HeldLocks held = heldLocks.get(tid);
+    	if (held == null) {
+    		HeldLocks created = new HeldLocks();
+    		held = heldLocks.putIfAbsent(tid, created);
+    		if (held == null) {
+    			held = created;
+    		}
+    	}
+    	return held;
+    }
+
+    /** Count n more locks tid holds on table tableId, in mode. */
+    private void counted(TransactionId tid, int tableId, int n, LockManager.Mode mode) {
+    	HeldLocks held = heldLocks(tid);
+    	synchronized (held) {
+    		LockCount c = held.tables.get(tableId);
+    		if (c == null) {
+    			c = new LockCount();
+    			held.tables.put(tableId, c);
+    		}
+    		c.add(n, mode);
+    	}
+    }
+
+    /** Record that tid locked tuple rid in mode, for the first time if isNew. */
+    private void tupleLocked(TransactionId tid, RecordId rid, boolean isNew, LockManager.Mode mode) {
+    	HeldLocks held = heldLocks(tid);
+    	synchronized (held) {
+    		TupleLocks locks = held.pages.get(rid.getPageId());
+    		if (locks == null) {
+    			locks = new TupleLocks();
+    			held.pages.put(rid.getPageId(), locks);
+    		}
+    		if (isNew) {
+    			locks.rids.add(rid);
+    		}
+    		locks.add(isNew ? 1 : 0, mode);
+    	}
+    	counted(tid, rid.getPageId().getTableId(), isNew ? 1 : 0, mode);
+    }
+
+    /** tid no longer holds page or tuple locks on table tableId. */
+    private void forgetLocks(TransactionId tid, int tableId) {
+    	HeldLocks held = heldLocks.get(tid);
+    	if (held == null) {
+    		return;
+    	}
+    	synchronized (held) {
+    		held.tables.remove(tableId);
+    		Iterator<PageId> it = held.pages.keySet().iterator();
+    		while (it.hasNext()) {
+    			if (it.next().getTableId() == tableId) {
+    				it.remove();
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * If tid holds more tuple locks on page pid than {@link
+     * #setTupleLocksPerPage allowed}, lock the page instead and give them
+     * back; then if it holds more page and tuple locks on the page's table
+     * than {@link #setLocksPerTable allowed}, lock the table instead.
+     * Must not be called under a page's monitor.
+     */
+    void escalateLocks(TransactionId tid, PageId pid) {
+    	HeldLocks held = tid == null ? null : heldLocks.get(tid);
+    	if (held == null) {
+    		return;
+    	}
+    	int tableId = pid.getTableId();
+    	TupleLocks tuples;
+    	LockCount onTable;
+    	synchronized (held) {
+    		tuples = held.pages.get(pid);
+    		if (tuples != null && !tuples.over(tupleLocksPerPage)) {
+    			tuples = null;
+    		}
+    		onTable = held.tables.get(tableId);
+    	}
+    	if (tuples != null) {
+    		LockManager.Mode mode = LockManager.Mode.of(tuples.exclusive);
+    		boolean escalated = lockManager.escalate(tid, pid, mode, tuples.rids);
+    		synchronized (held) {
+    			if (escalated) {
+    				held.pages.remove(pid);
+    				if (onTable != null) {
+    					onTable.count -= tuples.rids.size();
+    				}
+    			} else {
+    				tuples.retryAt = tuples.count + tupleLocksPerPage;
+    			}
+    		}
+    	}
+    	if (onTable == null) {
+    		return;
+    	}
+    	synchronized (held) {
+    		if (!onTable.over(locksPerTable)) {
+    			return;
+    		}
+    	}
+    	LockManager.Mode mode = LockManager.Mode.of(onTable.exclusive);
+    	if (lockManager.escalate(tid, LockManager.tableKey(tableId), mode, finerLocks(tid, tableId, mode))) {
+    		forgetLocks(tid, tableId);
+    	} else {
+    		synchronized (held) {
+    			onTable.retryAt = onTable.count + locksPerTable;
+    		}
+    	}
+    }
+
+    /** @return whether some transaction holds or waits for a lock on tuple rid */
+    boolean isTupleLocked(RecordId rid) {
+    	return lockManager.isLocked(rid);
+    }
+
+    /**
+     * @return whether page is the resident copy of its page, rather than
+     *         one evicted since it was retrieved
+     */
+    boolean isCached(Page page) {
+    	return pageMap.get(page.getId()) == page;
+    }
+
+    /**
+     * Record that tid inserted or deleted tuple t under its tuple lock, so
+     * that the change is written out when tid commits and undone if it
+     * aborts. Called under the monitor of the page holding t.
+     */
+    void tupleChanged(TransactionId tid, Tuple t, boolean inserted) {
+    	if (tid == null) {
+    		return;
+    	}
+    	List<TupleChange> changes = tupleChanges.get(tid);
+    	if (changes == null) {
+    		List<TupleChange> created = Collections.synchronizedList(new ArrayList<TupleChange>());
+    		changes = tupleChanges.putIfAbsent(tid, created);
+    		if (changes == null) {
+    			changes = created;
+    		}
+    	}
+    	TupleChange c = new TupleChange(tid, t, inserted);
+    	changes.add(c);
+    	synchronized (inFlight) {
+    		ArrayList<TupleChange> onPage = inFlight.get(t.getRecordId().getPageId());
+    		if (onPage == null) {
+    			onPage = new ArrayList<TupleChange>();
+    			inFlight.put(t.getRecordId().getPageId(), onPage);
+    		}
+    		onPage.add(c);
+    	}
+    }
+
+    /**
+     * Record that aborting transaction tid undid its last change of tuple
+     * t. Called under the monitor of the page holding t, right after the
+     * page is put back.
+     */
+    void tupleUndone(TransactionId tid, Tuple t) {
+    	synchronized (inFlight) {
+    		ArrayList<TupleChange> onPage = inFlight.get(t.getRecordId().getPageId());
+    		if (onPage == null) {
+    			return;
+    		}
+    		for (int i = onPage.size() - 1; i >= 0; i--) {
+    			if (onPage.get(i).tuple == t && tid.equals(onPage.get(i).tid)) {
+    				onPage.remove(i);
+    				break;
+    			}
+    		}
+    		if (onPage.isEmpty()) {
+    			inFlight.remove(t.getRecordId().getPageId());
+    		}
+    	}
+    }
+
+    /** @return the pages tid changed tuples of under tuple locks */
+    private Set<PageId> tupleChangedPages(TransactionId tid) {
+    	List<TupleChange> changes = tupleChanges.get(tid);
+    	if (changes == null) {
+    		return Collections.emptySet();
+    	}
+    	HashSet<PageId> pages = new HashSet<PageId>();
+    	synchronized (changes) {
+    		for (TupleChange c : changes) {
+    			pages.add(c.tuple.getRecordId().getPageId());
+    		}
+    	}
+    	return pages;
+    }
+
+    /**
+     * Retrieve the specified page as {@link #getPage(TransactionId, PageId,
+     * Permissions)} does, except that if the page is not resident it is
+     * read into a frame of ring rather than one chosen by the eviction
+     * policy.
+     *
+     * @param ring the ring of the scan requesting the page, or null
+     * @see #bulkReadRing
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
+    	Long snapshot = versions.snapshotOf(tid);
+    	if (snapshot != null) {
+    		checkWritable(tid, perm);
+    		Page page = snapshotPage(snapshot, pid, ring);
+    		if (page != null) {
+    			return page;
+    		}
+    		// not a page of a HeapFile: read it under a lock
+    	}
+    	lock(tid, pid, perm);
+    	Page page = fetch(pid, perm, ring);
+    	if (tid != null && perm != Permissions.READ_ONLY && page instanceof TuplePage
+    			&& !preImages.containsKey(pid) && !locksTuples(pid.getTableId())) {
+    		// the first time tid locks the page to change it, so it is as
+    		// the transactions that committed left it
+    		preImages.putIfAbsent(pid, new PreImage(tid, page.getPageData()));
+    	}
+    	return page;
+    }
+
+    /**
+     * Make tid a read-only transaction that reads the database as the
+     * transactions that committed before now left it. It reads the pages
+     * of HeapFiles, in any of their formats, without locking them, and
+     * pages of other kinds, such as those of B+ trees, under shared locks;
+     * asking for a page to change it throws a DbException. The snapshot is
+     * given up when tid completes.
+     */
+    public void beginSnapshot(TransactionId tid) {
+    	versions.begin(tid);
+    }
+
+    /** @return whether tid is a read-only transaction reading a snapshot */
+    public boolean isSnapshot(TransactionId tid) {
+    	return versions.snapshotOf(tid) != null;
+    }
+
+    /** @return the number of older page images kept for snapshots */
+    public int getRetainedVersions() {
+    	return versions.size();
+    }
+
+    private void checkWritable(TransactionId tid, Permissions perm) throws DbException {
+    	if (perm != Permissions.READ_ONLY && isSnapshot(tid)) {
+    		throw new DbException("transaction " + tid.getId() + " only reads a snapshot");
+    	}
+    }
+
+    /**
+     * @return a copy of page pid as snapshot reads it, or null if pid is
+     *         not a page of a HeapFile
+     */
+    private Page snapshotPage(long snapshot, PageId pid, BufferRing ring) throws DbException {
+    	versions.latch.readLock().lock();
+    	try {
+    		byte[] image = versions.imageAt(pid, snapshot);
+    		if (image == null) {
+    			image = committedImage(pid, ring);
+    		}
+    		if (image == null) {
+    			return null;
+    		}
+    		HeapFile hf = (HeapFile) Database.getCatalog().getDatabaseFile(pid.getTableId());
+    		return hf.newPage((HeapPageId) pid, ByteBuffer.wrap(image));
+    	} catch (IOException e) {
+    		throw new DbException("snapshotPage: " + e);
+    	} finally {
+    		versions.latch.readLock().unlock();
+    	}
+    }
+
+    /**
+     * @return the image of page pid as the transactions that committed left
+     *         it, or null if pid is not a page of a HeapFile. The resident
+     *         copy is used unless a transaction changing the page under a
+     *         page lock left the image it started from; the tuple changes
+     *         not yet committed, which are only made on HeapPages, are
+     *         undone on a copy of it.
+     */
+    private byte[] committedImage(PageId pid, BufferRing ring) throws DbException {
+    	while (true) {
+    		Page page = fetch(pid, Permissions.READ_ONLY, ring);
+    		if (!(page instanceof TuplePage)) {
+    			return null;
+    		}
+    		byte[] data;
+    		ArrayList<TupleChange> changes = null;
+    		synchronized (page) {
+    			synchronized (inFlight) {
+    				ArrayList<TupleChange> onPage = inFlight.get(pid);
+    				if (onPage != null) {
+    					changes = new ArrayList<TupleChange>(onPage);
+    				}
+    			}
+    			if (changes != null && !isCached(page)) {
+    				continue;
+    			}
+    			data = page.getPageData();
+    		}
+    		PreImage pre = preImages.get(pid);
+    		if (pre != null) {
+    			return pre.image;
+    		}
+    		if (changes == null) {
+    			return data;
+    		}
+    		try {
+    			HeapPage copy = new HeapPage((HeapPageId) pid, ByteBuffer.wrap(data), false);
+    			undoOn(copy, changes);
+    			return copy.getPageData();
+    		} catch (IOException e) {
+    			throw new DbException("committedImage: " + e);
+    		}
+    	}
+    }
+
+    /**
+     * The part of getPage that looks the page up or reads it, once it is
+     * locked.
+     */
+    private Page fetch(PageId pid, Permissions perm, BufferRing ring) throws DbException {
+    	PrintWriter trace = accessTrace;
+    	if (trace != null) {
+    		EvictionReplay.writeAccess(trace, pid);
+    	}
     	Page page = pageMap.get(pid);
-    	if(page == null)
-    	{
+    	if (page == null && arena != null && perm == Permissions.READ_ONLY) {
+    		FrameArena.Frame frame = frameOf.get(pid);
+    		if (frame != null) {
+    			page = decode(pid, frame);
+    		}
+    	}
+    	if (page != null && (home(pid).policy.pageAccessed(pid) || (ring != null && ringOf.get(pid) == ring))) {
+    		metrics.hit(pid);
+    		return page;
+    	}
+    	while (true) {
+    		CountDownLatch prefetch = loading.get(pid);
+    		if (prefetch != null) {
+    			// being read ahead: wait for that read rather than repeat it
+    			awaitUninterruptibly(prefetch);
+    		}
+    		synchronized (this) {
+    			if (!isResident(pid) && loading.containsKey(pid)) {
+    				continue;
+    			}
+    			return getPageLocked(pid, perm, ring);
+    		}
+    	}
+    }
+
+    /**
+     * The part of getPage that runs under the monitor, once the page is
+     * known not to be being read ahead.
+     */
+    private synchronized Page getPageLocked(PageId pid, Permissions perm, BufferRing ring) throws DbException {
+    	Page page = pageMap.get(pid);
+    	if (page == null && arena != null) {
+    		FrameArena.Frame frame = frameOf.get(pid);
+    		if (frame != null) {
+    			page = decode(pid, frame);
+    			if (perm != Permissions.READ_ONLY) {
+    				// the caller may change it: keep this copy until written
+    				pageMap.put(pid, page);
+    			}
+    		}
+    	}
+    	if (page == null) {
+    		long start = System.nanoTime();
     		page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-    		// If there is no space for the new page, evict the page for spaces.
-    		if (pageMap.size() == maxPageNum) {
-    			evictPage();
-			}
-    		pageMap.put(pid, page);
-    		lruCache.put(pid, 1);
+    		metrics.miss(pid, System.nanoTime() - start);
+    		PoolPartition part = partitionFor(pid.getTableId());
+    		if (ring != null && !ring.released) {
+    			addToRing(ring, pid, part);
+    		} else {
+    			// If there is no space for the new page, evict the page for spaces.
+    			if (part.isFull()) {
+    				evictPage(part, pid);
+    			}
+    			part.policy.pageAdded(pid);
+    		}
+    		install(pid, page, perm, part);
     	} else {
-            // LRU Cache update
-            for(PageId cpid: lruCache.keySet())
-            {
-                int times = lruCache.get(cpid); 
-                lruCache.replace(cpid, times + 1);
-            }
-            lruCache.replace(pid, 1);
+    		metrics.hit(pid);
+    		BufferRing owner = ringOf.get(pid);
+    		if (owner == null) {
+    			home(pid).policy.pageAccessed(pid);
+    		} else if (owner != ring) {
+    			// someone besides the scan wants it: it is no longer scan-only
+    			owner.remove(pid);
+    			ringOf.remove(pid);
+    			home(pid).policy.pageAdded(pid);
+    		}
+    	}
+    	return page;
+    }
+
+    /**
+     * Returns the ring a sequential scan of a table of numPages pages should
+     * read through, or null if the table is small enough to be cached like
+     * any other. The ring holds no frames until the scan reads pages into
+     * it; the scan must {@link #releaseRing release} it when done.
+     */
+    public BufferRing bulkReadRing(int numPages) {
+    	return bulkReadRing(defaultPartition, numPages);
+    }
+
+    /**
+     * Returns the ring a sequential scan of table tableId, of numPages
+     * pages, should read through, as above, relative to the size of the
+     * table's partition.
+     */
+    public BufferRing bulkReadRing(int tableId, int numPages) {
+    	return bulkReadRing(partitionFor(tableId), numPages);
+    }
+
+    private BufferRing bulkReadRing(PoolPartition part, int numPages) {
+    	int frames = part.capacity;
+    	if (numPages * 100L <= (long) frames * BULK_READ_PERCENT) {
+    		return null;
+    	}
+    	return new BufferRing(Math.max(1, Math.min(RING_PAGES, frames / 8)));
+    }
+
+    /**
+     * Gives back the frames of a ring: its pages, which nobody but the scan
+     * has asked for, are flushed if dirty and dropped from the pool.
+     */
+    public synchronized void releaseRing(BufferRing ring) {
+    	ring.released = true;
+    	PageId pid;
+    	while ((pid = ring.poll()) != null) {
+    		dropRingPage(pid);
+    	}
+    }
+
+    /**
+     * Write the ids of the pages resident now to f, one per line in the
+     * format of {@link EvictionReplay} traces, the page the eviction policy
+     * would keep longest first. Pages that only a scan's ring holds are
+     * left out. f is replaced as a whole, so a crash while saving leaves the
+     * previous list.
+     *
+     * @return the number of pages saved
+     * @see #warmUp
+     */
+    public int saveResidentPages(File f) throws IOException {
+    	ArrayList<PageId> pages = new ArrayList<PageId>(defaultPartition.policy.residentPages());
+    	for (PoolPartition part : partitions.values()) {
+    		pages.addAll(part.policy.residentPages());
+    	}
+    	File tmp = new File(f.getPath() + ".tmp");
+    	PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(tmp)));
+    	try {
+    		for (PageId pid : pages) {
+    			EvictionReplay.writeAccess(out, pid);
+    		}
+    	} finally {
+    		out.close();
+    	}
+    	if (out.checkError()) {
+    		throw new IOException("can't write " + tmp);
+    	}
+    	if (!tmp.renameTo(f)) {
+    		f.delete();
+    		if (!tmp.renameTo(f)) {
+    			throw new IOException("can't rename " + tmp + " to " + f);
+    		}
+    	}
+    	return pages.size();
+    }
+
+    /**
+     * Start reading the pages listed in f by {@link #saveResidentPages}
+     * back into the pool, roughly in the order listed, on WARM_UP_THREADS
+     * background threads, so that the pool is warm soon after a restart
+     * while queries already run. Loading stops once the pool is full; it
+     * never evicts a page. Pages of tables that are not in the catalog, or
+     * no longer in their file, are skipped. The catalog must be loaded
+     * first.
+     *
+     * @return the thread loading the pages, already started; it finishes
+     *         once all pages are loaded
+     * @throws IOException if f can't be read
+     */
+    public Thread warmUp(File f) throws IOException {
+    	final List<PageId> pages = EvictionReplay.readTrace(f);
+    	final AtomicInteger next = new AtomicInteger();
+    	final Runnable load = new Runnable() {
+    		public void run() {
+    			int i;
+    			while ((i = next.getAndIncrement()) < pages.size() && residentCount() < maxPageNum) {
+    				if (inFile(pages.get(i))) {
+    					preloadPage(pages.get(i));
+    				}
+    			}
+    		}
+    	};
+    	Thread loader = new Thread("BufferPoolWarmUp") {
+    		public void run() {
+    			// several reads at once, still roughly in the order listed
+    			Thread[] helpers = new Thread[WARM_UP_THREADS - 1];
+    			for (int i = 0; i < helpers.length; i++) {
+    				helpers[i] = new Thread(load, "BufferPoolWarmUp-" + (i + 1));
+    				helpers[i].setDaemon(true);
+    				helpers[i].start();
+    			}
+    			load.run();
+    			for (Thread helper : helpers) {
+    				try {
+    					helper.join();
+    				} catch (InterruptedException e) {
+    					return;
+    				}
+    			}
+    		}
+    	};
+    	loader.setDaemon(true);
+    	loader.start();
+    	return loader;
+    }
+
+    /**
+     * @return whether pid belongs to a table of the catalog and is not past
+     *         the end of its file.
+     */
+    private static boolean inFile(PageId pid) {
+    	DbFile df;
+    	try {
+    		df = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    	} catch (NoSuchElementException e) {
+    		return false;
+    	}
+    	if (df instanceof HeapFile) {
+    		return pid.getPageNumber() < ((HeapFile) df).numPages();
+    	}
+    	if (df instanceof BTreeFile) {
+    		return pid.getPageNumber() <= ((BTreeFile) df).numPages();
+    	}
+    	return true;
+    }
+
+    /**
+     * Reads a page into the pool ahead of a scan, into ring if it is not
+     * null, unless it is already resident. Unlike getPage this is not an
+     * access: a resident page is left where it is in the eviction order.
+     * <p>
+     * The page is read without holding the BufferPool monitor, so several
+     * prefetches and other transactions' hits proceed at once. A getPage of
+     * the page meanwhile waits for the read; if the page is discarded
+     * meanwhile, the read is dropped. Errors are ignored; the scan reads
+     * the page itself if it is missing.
+     *
+     * @param scan the read-ahead the page is for; nothing is read if it no
+     *        longer wants the page
+     * @see ReadAhead
+     */
+    void prefetchPage(PageId pid, BufferRing ring, ReadAhead scan) {
+    	loadAhead(pid, ring, scan);
+    }
+
+    /**
+     * Reads a page into a free frame of the pool, as prefetchPage does, on
+     * behalf of {@link #warmUp}. Nothing is evicted for it: if the pool is
+     * full, nothing is read.
+     */
+    void preloadPage(PageId pid) {
+    	loadAhead(pid, null, null);
+    }
+
+    /**
+     * The body of prefetchPage and, if scan is null, of preloadPage.
+     */
+    private void loadAhead(PageId pid, BufferRing ring, ReadAhead scan) {
+    	CountDownLatch done = new CountDownLatch(1);
+    	synchronized (this) {
+    		if (isResident(pid) || loading.containsKey(pid) || (ring != null && ring.released)
+    				|| (scan != null && !scan.wanted(pid.getPageNumber()))
+    				|| (scan == null && partitionFor(pid.getTableId()).isFull())) {
+    			return;
+    		}
+    		loading.put(pid, done);
+    	}
+    	try {
+    		long start = System.nanoTime();
+    		Page page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+    		metrics.prefetched(pid, System.nanoTime() - start);
+    		synchronized (this) {
+    			if (!loading.remove(pid, done) || page == null || isResident(pid)
+    					|| (ring != null && ring.released)) {
+    				return;
+    			}
+    			PoolPartition part = partitionFor(pid.getTableId());
+    			if (ring != null) {
+    				addToRing(ring, pid, part);
+    			} else {
+    				if (part.isFull()) {
+    					if (scan == null) {
+    						return;
+    					}
+    					evictPage(part, pid);
+    				}
+    				part.policy.pageAdded(pid);
+    			}
+    			install(pid, page, Permissions.READ_ONLY, part);
+    		}
+    	} catch (Exception e) {
+    		// e.g. no page to evict, or a page number that is not in the file
+    		loading.remove(pid, done);
+    	} finally {
+    		done.countDown();
+    	}
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+    	boolean interrupted = false;
+    	while (true) {
+    		try {
+    			latch.await();
+    			break;
+    		} catch (InterruptedException e) {
+    			interrupted = true;
+    		}
+    	}
+    	if (interrupted) {
+    		Thread.currentThread().interrupt();
+    	}
+    }
+
+    /**
+     * Makes room in ring for pid: the ring's oldest frame is reused if the
+     * ring is full, otherwise the ring takes a frame from the pool.
+     */
+    private synchronized void addToRing(BufferRing ring, PageId pid, PoolPartition part) throws DbException {
+    	if (ring.isFull()) {
+    		metrics.evicted();
+    		part.evictions.increment();
+    		dropRingPage(ring.poll());
+    	} else if (part.isFull()) {
+    		evictPage(part, pid);
+    	}
+    	ring.add(pid);
+    	ringOf.put(pid, ring);
+    }
+
+    private synchronized void dropRingPage(PageId pid) {
+    	try {
+    		flushPage(pid);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    	ringOf.remove(pid);
+    	drop(pid);
+    }
+
+    private boolean isResident(PageId pid) {
+    	return arena == null ? pageMap.containsKey(pid) : frameOf.containsKey(pid);
+    }
+
+    private int residentCount() {
+    	return arena == null ? pageMap.size() : frameOf.size();
+    }
+
+    /**
+     * @return whether pages of pid's file are stored as images in the arena;
+     *         only HeapFiles can decode their pages from an image.
+     */
+    private static boolean storedOffHeap(PageId pid) {
+    	return Database.getCatalog().getDatabaseFile(pid.getTableId()) instanceof HeapFile;
+    }
+
+    /**
+     * @return a new copy of page pid decoded from frame, or null if the
+     *         frame was freed meanwhile.
+     */
+    private Page decode(PageId pid, FrameArena.Frame frame) {
+    	DbFile df = Database.getCatalog().getDatabaseFile(pid.getTableId());
+    	if (!(df instanceof HeapFile)) {
+    		return null;
+    	}
+    	synchronized (frame) {
+    		if (frame.isFreed()) {
+    			return null;
+    		}
+    		try {
+    			return ((HeapFile) df).newPage((HeapPageId) pid, frame.buffer());
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    			return null;
+    		}
+    	}
+    }
+
+    /**
+     * Makes a page that was just read resident; there must be room for it.
+     * With an arena its image is stored in a frame, and the page itself is
+     * only kept if the caller may change it.
+     */
+    private synchronized void install(PageId pid, Page page, Permissions perm, PoolPartition part)
+        throws DbException {
+    	if (arena == null) {
+    		pageMap.put(pid, page);
+    		addToPartition(pid, part);
+    		return;
+    	}
+    	FrameArena.Frame frame = arena.allocate();
+    	if (frame == null) {
+    		throw new DbException("no free frame for " + pid);
+    	}
+    	boolean offHeap = storedOffHeap(pid);
+    	if (offHeap) {
+    		frame.store(page.getPageData());
+    	}
+    	if (!offHeap || perm != Permissions.READ_ONLY || page.isDirty() != null) {
+    		pageMap.put(pid, page);
+    	}
+    	frameOf.put(pid, frame);
+    	addToPartition(pid, part);
+    }
+
+    private void addToPartition(PageId pid, PoolPartition part) {
+    	part.resident++;
+    	if (part != defaultPartition) {
+    		partitionOf.put(pid, part);
+    	}
+    }
+
+    /**
+     * Once a page kept decoded has been written out, its image goes back to
+     * its frame and the decoded page is let go of.
+     */
+    private synchronized void unpin(Page page) {
+    	PageId pid = page.getId();
+    	FrameArena.Frame frame = arena == null ? null : frameOf.get(pid);
+    	if (frame == null || !storedOffHeap(pid)) {
+    		return;
+    	}
+    	frame.store(page.getPageData());
+    	pageMap.remove(pid, page);
+    }
+
+    private synchronized void drop(PageId pid) {
+    	if (isResident(pid)) {
+    		home(pid).resident--;
+    		partitionOf.remove(pid);
+    	}
+    	pageMap.remove(pid);
+    	FrameArena.Frame frame = frameOf.remove(pid);
+    	if (frame != null) {
+    		arena.free(frame);
     	}
-        return page;
     }
 
     /**
@@ -102,8 +1465,10 @@ public class BufferPool {
      * @param pid the ID of the page to unlock
      */
     public  void releasePage(TransactionId tid, PageId pid) {
-        // some code goes here
-        // not necessary for lab1|lab2
+        if (tid != null && lockManager.heldMode(tid, pid) != null) {
+            lockManager.release(tid, pid);
+            counted(tid, pid.getTableId(), -1, LockManager.Mode.IS);
+        }
     }
 
     /**
@@ -112,28 +1477,156 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      */
     public void transactionComplete(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
-        // some code goes here
-        // not necessary for lab1|lab2
-        return false;
+        return lockManager.holdsLock(tid, p) || tableCovers(tid, p.getTableId(), LockManager.Mode.S);
     }
 
     /**
      * Commit or abort a given transaction; release all locks associated to
-     * the transaction.
+     * the transaction. The pages a committing transaction dirtied are
+     * written to disk first. The pages an aborted transaction dirtied are
+     * discarded, so that the next transaction to read them reads them as
+     * they are on disk.
      *
      * @param tid the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
      */
     public void transactionComplete(TransactionId tid, boolean commit)
         throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        List<TupleChange> changes = tupleChanges.get(tid);
+        heldLocks.remove(tid);
+        if (versions.end(tid)) {
+            // read only: it holds no more than the locks of pages other than HeapPages
+        } else if (commit) {
+            // FORCE: its pages reach the disk before its locks are let go
+            writeDirtyPages(tid);
+            publish(tid);
+            if (cleaner != null) {
+                // its dirty pages may now be written ahead
+                committed.add(tid);
+            }
+        } else {
+            discardPages(tid);
+            if (changes != null) {
+                undo(tid, changes);
+            }
+            versions.latch.writeLock().lock();
+            try {
+                forget(tid);
+            } finally {
+                versions.latch.writeLock().unlock();
+            }
+        }
+        tupleChanges.remove(tid);
+        lockManager.releaseAll(tid);
+    }
+
+    /**
+     * Make the changes of committing transaction tid part of the committed
+     * images of their pages, first retaining the images they replace if
+     * some snapshot may read them.
+     */
+    private void publish(TransactionId tid) {
+        Set<PageId> tuplePages = tupleChangedPages(tid);
+        ArrayList<PageId> lockedPages = new ArrayList<PageId>();
+        for (Map.Entry<PageId, PreImage> e : preImages.entrySet()) {
+            if (tid.equals(e.getValue().tid)) {
+                lockedPages.add(e.getKey());
+            }
+        }
+        if (tuplePages.isEmpty() && lockedPages.isEmpty()) {
+            return;
+        }
+        versions.latch.writeLock().lock();
+        try {
+            long commit = versions.nextCommit();
+            for (PageId pid : tuplePages) {
+                if (versions.needs(pid)) {
+                    try {
+                        byte[] image = committedImage(pid, null);
+                        if (image != null) {
+                            versions.retain(pid, commit, image);
+                        }
+                    } catch (DbException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            for (PageId pid : lockedPages) {
+                if (versions.needs(pid)) {
+                    versions.retain(pid, commit, preImages.get(pid).image);
+                }
+            }
+            forget(tid);
+        } finally {
+            versions.latch.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop the record of the changes tid made that are not committed, as
+     * it commits or once it has undone them. Called under the write lock
+     * of the versions' latch.
+     */
+    private void forget(TransactionId tid) {
+        Set<PageId> tuplePages = tupleChangedPages(tid);
+        synchronized (inFlight) {
+            for (PageId pid : tuplePages) {
+                ArrayList<TupleChange> onPage = inFlight.get(pid);
+                if (onPage == null) {
+                    continue;
+                }
+                Iterator<TupleChange> it = onPage.iterator();
+                while (it.hasNext()) {
+                    if (tid.equals(it.next().tid)) {
+                        it.remove();
+                    }
+                }
+                if (onPage.isEmpty()) {
+                    inFlight.remove(pid);
+                }
+            }
+        }
+        Iterator<PreImage> it = preImages.values().iterator();
+        while (it.hasNext()) {
+            if (tid.equals(it.next().tid)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Discards the resident pages tid dirtied, except for those of tables
+     * whose tuples are locked one by one, which may hold the changes of
+     * other transactions too.
+     */
+    private synchronized void discardPages(TransactionId tid) {
+        for (Page page : pageMap.values()) {
+            if (tid.equals(page.isDirty()) && !locksTuples(page.getId().getTableId())) {
+                discardPage(page.getId());
+            }
+        }
+    }
+
+    /**
+     * Undoes the tuple changes of aborting transaction tid, last first,
+     * while it still holds the tuple locks.
+     */
+    private void undo(TransactionId tid, List<TupleChange> changes) {
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            TupleChange c = changes.get(i);
+            HeapFile f = (HeapFile) Database.getCatalog().getDatabaseFile(
+                    c.tuple.getRecordId().getPageId().getTableId());
+            try {
+                f.undoTupleChange(tid, c.tuple, c.inserted);
+            } catch (DbException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
@@ -153,7 +1646,7 @@ public class BufferPool {
      */
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
-    	// TODO: consider locks
+    	checkWritable(tid, Permissions.READ_WRITE);
     	Database.getCatalog().getDatabaseFile(tableId).insertTuple(tid, t);
     }
 
@@ -172,8 +1665,8 @@ public class BufferPool {
      */
     public  void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
-    	// TODO: consider locks
-        ((HeapPage) getPage(tid, t.getRecordId().getPageId(), null)).deleteTuple(t);
+        checkWritable(tid, Permissions.READ_WRITE);
+        Database.getCatalog().getDatabaseFile(t.getRecordId().getPageId().getTableId()).deleteTuple(tid, t);
     }
 
     /**
@@ -182,15 +1675,7 @@ public class BufferPool {
      *     break simpledb if running in NO STEAL mode.
      */
     public synchronized void flushAllPages() throws IOException {
-        for(PageId pid:this.pageMap.keySet())
-        {
-            Page page = this.pageMap.get(pid);
-            if (page.isDirty() != null)
-            {
-                this.flushPage(pid);
-            }
-        }
-
+        writeDirtyPages(null);
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -202,8 +1687,13 @@ public class BufferPool {
         are removed from the cache so they can be reused safely
     */
     public synchronized void discardPage(PageId pid) {
-        // some code goes here
-        // not necessary for lab1
+        home(pid).policy.pageRemoved(pid, false);
+        drop(pid);
+        loading.remove(pid);
+        BufferRing ring = ringOf.remove(pid);
+        if (ring != null) {
+            ring.remove(pid);
+        }
     }
 
     /**
@@ -213,62 +1703,281 @@ public class BufferPool {
     private synchronized  void flushPage(PageId pid) throws IOException {
         DbFile df = Database.getCatalog().getDatabaseFile(pid.getTableId());
         Page to_be_written = pageMap.get(pid);
-        if ( to_be_written == null)
+        if ( to_be_written == null || to_be_written.isDirty() == null)
         {
+            // clean pages are already on disk as they are
             return;
         }
         else
         {
-            df.writePage(to_be_written);
+            // marked clean before it is written, so that a tuple changed
+            // meanwhile under a tuple lock leaves it dirty
+            TransactionId dirtier = to_be_written.isDirty();
             to_be_written.markDirty(false, null);
+            long start = System.nanoTime();
+            try {
+                df.writePage(to_be_written);
+            } catch (IOException e) {
+                to_be_written.markDirty(true, dirtier);
+                throw e;
+            }
+            metrics.written(pid.getTableId(), 1, System.nanoTime() - start);
+            unpin(to_be_written);
         }
     }
 
     /** Write all pages of the specified transaction to disk.
      */
     public synchronized  void flushPages(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        writeDirtyPages(tid);
+    }
+
+    /**
+     * Writes the dirty pages of tid, or all dirty pages if tid is null. The
+     * pages tid changed tuples of under tuple locks are written too, even
+     * if another transaction dirtied them last, but without the tuple
+     * changes of other transactions that have not committed: those pages
+     * stay dirty until the last of them completes. The pages of each
+     * HeapFile are handed to it together, so that it writes them in page
+     * order with as few writes as it can.
+     */
+    private synchronized void writeDirtyPages(TransactionId tid) throws IOException {
+        HashMap<Integer, ArrayList<Page>> byTable = new HashMap<Integer, ArrayList<Page>>();
+        Set<PageId> tuplePages = tid == null ? Collections.<PageId>emptySet() : tupleChangedPages(tid);
+        for (Page page : pageMap.values()) {
+            TransactionId dirtier = page.isDirty();
+            if (dirtier != null && (tid == null || tid.equals(dirtier) || tuplePages.contains(page.getId()))) {
+                int tableId = page.getId().getTableId();
+                ArrayList<Page> pages = byTable.get(tableId);
+                if (pages == null) {
+                    pages = new ArrayList<Page>();
+                    byTable.put(tableId, pages);
+                }
+                pages.add(page);
+            }
+        }
+        for (Map.Entry<Integer, ArrayList<Page>> e : byTable.entrySet()) {
+            DbFile df = Database.getCatalog().getDatabaseFile(e.getKey());
+            // marked clean before they are written, as in flushPage
+            HashMap<Page, TransactionId> dirtiers = new HashMap<Page, TransactionId>();
+            ArrayList<Page> images = new ArrayList<Page>(e.getValue().size());
+            // the tuples other transactions inserted into the pages written
+            // without them
+            HashMap<HeapPage, List<Tuple>> withheld = new HashMap<HeapPage, List<Tuple>>();
+            for (Page page : e.getValue()) {
+                dirtiers.put(page, page.isDirty());
+                if (tid != null && page instanceof HeapPage && locksTuples(page.getId().getTableId())) {
+                    images.add(committedCopy((HeapPage) page, tid, withheld));
+                } else {
+                    page.markDirty(false, null);
+                    images.add(page);
+                }
+            }
+            long start = System.nanoTime();
+            try {
+                if (df instanceof HeapFile) {
+                    ((HeapFile) df).writePages(images);
+                } else {
+                    for (Page page : images) {
+                        df.writePage(page);
+                    }
+                }
+            } catch (IOException ex) {
+                for (Map.Entry<Page, TransactionId> d : dirtiers.entrySet()) {
+                    d.getKey().markDirty(true, d.getValue());
+                }
+                throw ex;
+            }
+            for (Map.Entry<HeapPage, List<Tuple>> w : withheld.entrySet()) {
+                // the maps describe the resident copy, which holds them
+                HeapFile hf = (HeapFile) df;
+                HeapPage page = w.getKey();
+                synchronized (page) {
+                    hf.getFreeSpaceMap().update(page.getId().getPageNumber(), page.getFreeSpace());
+                    for (Tuple t : w.getValue()) {
+                        hf.getZoneMap().tupleInserted(page, t);
+                    }
+                }
+            }
+            metrics.written(e.getKey(), e.getValue().size(), System.nanoTime() - start);
+            for (Page page : e.getValue()) {
+                unpin(page);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of page, a HeapPage whose tuples are locked one by
+     *         one, to write for tid: as page is now, but with the tuple
+     *         changes of other transactions that have not committed undone.
+     *         page is marked clean if there are none, and otherwise left
+     *         dirty by the last of those transactions, with the tuples they
+     *         inserted added to withheld.
+     */
+    private Page committedCopy(HeapPage page, TransactionId tid, Map<HeapPage, List<Tuple>> withheld)
+            throws IOException {
+        PageId pid = page.getId();
+        ArrayList<TupleChange> others;
+        byte[] data;
+        synchronized (page) {
+            // NO STEAL, as in holdsUncommitted
+            others = uncommittedChanges(pid, tid);
+            data = page.getPageData();
+            if (others.isEmpty()) {
+                page.markDirty(false, null);
+            } else {
+                page.markDirty(true, others.get(others.size() - 1).tid);
+            }
+        }
+        HeapPage copy = new HeapPage((HeapPageId) pid, ByteBuffer.wrap(data), false);
+        if (others.isEmpty()) {
+            return copy;
+        }
+        try {
+            undoOn(copy, others);
+        } catch (DbException e) {
+            throw new IOException("committedCopy: " + e);
+        }
+        ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+        for (TupleChange c : others) {
+            if (c.inserted) {
+                inserted.add(c.tuple);
+            }
+        }
+        withheld.put(page, inserted);
+        return copy;
+    }
+
+    /**
+     * Undo changes, last first, on copy, a page that is not resident.
+     */
+    private static void undoOn(HeapPage copy, List<TupleChange> changes) throws DbException {
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            TupleChange c = changes.get(i);
+            int slot = c.tuple.getRecordId().getTupleNumber();
+            if (c.inserted) {
+                copy.deleteTuple(copy.getTuple(slot));
+            } else {
+                copy.insertTuple(c.tuple, slot);
+            }
+        }
     }
 
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Pages holding changes of transactions that have not completed are
+     * never evicted (NO STEAL).
      */
     private synchronized  void evictPage() throws DbException {
-        PageId temppid = null;
-        int tempmax = 1;
-        for(PageId pid: this.lruCache.keySet())
-        {
-            int v = this.lruCache.get(pid);
-            if(v >= tempmax)
-            {
-                temppid = pid;
-                tempmax = v;
+        evictPage(defaultPartition, null);
+    }
+
+    /**
+     * Evicts the page of partition part chosen by its eviction policy to
+     * make room for incoming, which may be null, or the next page it would
+     * choose that holds no changes of a transaction still running.
+     *
+     * @throws DbException if every page of the partition holds such changes
+     */
+    private synchronized void evictPage(PoolPartition part, PageId incoming) throws DbException {
+        PageId victim = part.policy.chooseVictim(incoming);
+        if (victim == null) {
+            // every frame belongs to a ring, e.g. of a scan that was never closed
+            for (PageId pid : ringOf.keySet()) {
+                if (home(pid) == part && !holdsUncommitted(pageMap.get(pid))) {
+                    ringOf.get(pid).remove(pid);
+                    metrics.evicted();
+                    part.evictions.increment();
+                    dropRingPage(pid);
+                    return;
+                }
             }
-        }
-        
-        if (temppid == null)
-        {
             throw new DbException("Should exist victim page!\n");
         }
-        else
-        {
-//            for(PageId pid: this.lruCache.keySet())
-//            {
-//                int times = this.lruCache.get(pid); 
-//                this.lruCache.replace(pid,times+1);
-//            }
-            
-            try {
-            	flushPage(temppid);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-            
-            lruCache.remove(temppid);
-            pageMap.remove(temppid);
+        if (tryEvict(part, victim)) {
+            return;
+        }
+        // NO STEAL: pass over the pages holding changes that have not
+        // committed, next victim first
+        List<PageId> resident = part.policy.residentPages();
+        for (int i = resident.size() - 1; i >= 0; i--) {
+            if (!resident.get(i).equals(victim) && tryEvict(part, resident.get(i))) {
+                return;
+            }
+        }
+        throw new DbException("every page of the pool holds changes of a transaction that has not committed");
+    }
+
+    /**
+     * Evict victim unless it holds changes that have not committed.
+     *
+     * @return whether victim was evicted
+     */
+    private synchronized boolean tryEvict(PoolPartition part, PageId victim) {
+        Page page = pageMap.get(victim);
+        if (page == null) {
+            evict(part, victim);
+            return true;
+        }
+        // under the page's monitor, no tuple can be changed between
+        // checking the page and letting it go
+        synchronized (page) {
+            if (holdsUncommitted(page)) {
+                return false;
+            }
+            evict(part, victim);
+            return true;
+        }
+    }
+
+    /**
+     * @return whether page holds changes of a transaction that has not
+     *         completed, which are not to be written (NO STEAL): it was
+     *         dirtied by one, or tuples on it were changed by one
+     */
+    private boolean holdsUncommitted(Page page) {
+        if (page == null) {
+            return false;
         }
+        TransactionId dirtier = page.isDirty();
+        if (dirtier != null && lockManager.holdsAnyLock(dirtier)) {
+            return true;
+        }
+        return !uncommittedChanges(page.getId(), null).isEmpty();
+    }
+
+    /**
+     * @return the tuple changes on page pid of the transactions other than
+     *         tid, or of all transactions if tid is null, that have not
+     *         committed, oldest first
+     */
+    private ArrayList<TupleChange> uncommittedChanges(PageId pid, TransactionId tid) {
+        ArrayList<TupleChange> changes = new ArrayList<TupleChange>();
+        synchronized (inFlight) {
+            ArrayList<TupleChange> onPage = inFlight.get(pid);
+            if (onPage != null) {
+                for (TupleChange c : onPage) {
+                    if (!c.tid.equals(tid)) {
+                        changes.add(c);
+                    }
+                }
+            }
+        }
+        return changes;
+    }
+
+    private synchronized void evict(PoolPartition part, PageId victim) {
+        try {
+            flushPage(victim);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        part.policy.pageRemoved(victim, true);
+        metrics.evicted();
+        part.evictions.increment();
+        drop(victim);
     }
 
 }
@@ -0,0 +1,67 @@
+package simpledb;
+
+import java.util.List;
+
+/**
+ * The statistics of a BufferPool, as seen through JMX under the name
+ * {@link BufferPoolMetrics#OBJECT_NAME} and as returned by
+ * {@link BufferPool#snapshotMetrics}. Counts are since the pool was created
+ * or its metrics were last reset.
+ */
+public interface BufferPoolMXBean {
+
+    /** @return the number of getPage calls that found the page resident */
+    long getHits();
+
+    /** @return the number of getPage calls that read the page from disk */
+    long getMisses();
+
+    /** @return hits / (hits + misses), or 0 if there were none */
+    double getHitRatio();
+
+    /** @return the number of pages read ahead of a scan */
+    long getPrefetches();
+
+    /** @return the number of pages evicted to make room for another */
+    long getEvictions();
+
+    /** @return the number of dirty pages written to disk */
+    long getPagesWritten();
+
+    /** @return the number of resident pages that are dirty now */
+    int getDirtyPages();
+
+    /** @return the number of resident pages now */
+    int getResidentPages();
+
+    /** @return the maximum number of resident pages */
+    int getCapacityPages();
+
+    /** @return the statistics of each table the pool has read pages of */
+    List<BufferPoolMetrics.TableSnapshot> getTables();
+
+    /** @return the statistics of each partition, the default one first */
+    List<BufferPoolMetrics.PartitionSnapshot> getPartitions();
+
+    /**
+     * @return the number of times a transaction had to wait for a page
+     *         lock, since the pool was created
+     */
+    long getLockWaits();
+
+    /**
+     * @return the number of deadlocks broken by aborting a transaction,
+     *         since the pool was created
+     */
+    long getDeadlocks();
+
+    /** @return how long finding each deadlock took once it formed */
+    LatencyHistogram.Snapshot getDeadlockDetection();
+
+    /**
+     * @return the number of times a transaction's tuple or page locks were
+     *         replaced by one lock on their page or table, since the pool
+     *         was created
+     */
+    long getLockEscalations();
+}
@@ -0,0 +1,490 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * BufferPoolMetrics counts what a BufferPool does: hits, misses, read-ahead,
+ * evictions and writes, overall and for each table, along with how long
+ * the reads and writes of each table take. Snapshots also include the lock
+ * waits, deadlocks and escalations counted by the pool's {@link
+ * LockManager}. Counting a hit costs one uncontended increment; only reads
+ * and writes are timed.
+ * <p>
+ * {@link BufferPool#snapshotMetrics} returns the counts together with the
+ * pool's current occupancy, and {@link #registerMBean} publishes the
+ * metrics of the current {@link Database#getBufferPool buffer pool} through
+ * JMX.
+ */
+public class BufferPoolMetrics {
+
+    /** The JMX name the metrics are published under. */
+    public static final String OBJECT_NAME = "simpledb:type=BufferPool";
+
+    /**
+     * The counts of one table.
+     */
+    static class TableMetrics {
+        final int tableId;
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LatencyHistogram reads = new LatencyHistogram();
+        final LatencyHistogram writes = new LatencyHistogram();
+
+        TableMetrics(int tableId) {
+            this.tableId = tableId;
+        }
+    }
+
+    // hits and misses are only counted per table
+    private final LongAdder prefetches = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder pagesWritten = new LongAdder();
+    private final ConcurrentHashMap<Integer, TableMetrics> tables = new ConcurrentHashMap<Integer, TableMetrics>();
+    // the table counted last, which the next page most likely belongs to too
+    private volatile TableMetrics last;
+
+    private TableMetrics table(int tableId) {
+        TableMetrics t = last;
+        if (t != null && t.tableId == tableId) {
+            return t;
+        }
+        t = tables.get(tableId);
+        if (t == null) {
+            TableMetrics created = new TableMetrics(tableId);
+            t = tables.putIfAbsent(tableId, created);
+            if (t == null) {
+                t = created;
+            }
+        }
+        last = t;
+        return t;
+    }
+
+    /** getPage found pid resident. */
+    void hit(PageId pid) {
+        table(pid.getTableId()).hits.increment();
+    }
+
+    /** getPage read pid from disk, which took nanos nanoseconds. */
+    void miss(PageId pid, long nanos) {
+        TableMetrics t = table(pid.getTableId());
+        t.misses.increment();
+        t.reads.record(nanos);
+    }
+
+    /** pid was read ahead of a scan, which took nanos nanoseconds. */
+    void prefetched(PageId pid, long nanos) {
+        prefetches.increment();
+        table(pid.getTableId()).reads.record(nanos);
+    }
+
+    /** A page was evicted to make room for another. */
+    void evicted() {
+        evictions.increment();
+    }
+
+    /**
+     * pages dirty pages of a table were written with one call to its file,
+     * which took nanos nanoseconds.
+     */
+    void written(int tableId, int pages, long nanos) {
+        pagesWritten.add(pages);
+        table(tableId).writes.record(nanos);
+    }
+
+    /** Set every count back to zero. */
+    public void reset() {
+        prefetches.reset();
+        evictions.reset();
+        pagesWritten.reset();
+        tables.clear();
+        last = null;
+    }
+
+    /**
+     * @return the counts so far, with the given occupancy of the pool and
+     *         of its partitions, the first of which is the default one. The
+     *         hits and misses of a partition are those of the tables the
+     *         catalog assigns to it now.
+     */
+    Snapshot snapshot(int dirtyPages, int residentPages, int capacityPages,
+            List<PoolPartition> partitions, LockManager locks) {
+        ArrayList<TableSnapshot> perTable = new ArrayList<TableSnapshot>();
+        long[] partHits = new long[partitions.size()];
+        long[] partMisses = new long[partitions.size()];
+        long hits = 0;
+        long misses = 0;
+        for (Map.Entry<Integer, TableMetrics> e : tables.entrySet()) {
+            TableMetrics t = e.getValue();
+            TableSnapshot table = new TableSnapshot(e.getKey(), t.hits.sum(), t.misses.sum(),
+                    t.reads.snapshot(), t.writes.snapshot());
+            hits += table.getHits();
+            misses += table.getMisses();
+            perTable.add(table);
+            int i = partitions.size() == 1 ? 0 : indexOf(partitions, e.getKey());
+            partHits[i] += table.getHits();
+            partMisses[i] += table.getMisses();
+        }
+        ArrayList<PartitionSnapshot> perPartition = new ArrayList<PartitionSnapshot>();
+        for (int i = 0; i < partitions.size(); i++) {
+            PoolPartition p = partitions.get(i);
+            perPartition.add(new PartitionSnapshot(p.name, p.capacity, p.resident,
+                    partHits[i], partMisses[i], p.evictions.sum()));
+        }
+        return new Snapshot(hits, misses, prefetches.sum(), evictions.sum(),
+                pagesWritten.sum(), dirtyPages, residentPages, capacityPages, perTable,
+                perPartition, locks.getWaits(), locks.getDeadlocks(), locks.getDetectionLatency(),
+                locks.getEscalations());
+    }
+
+    /**
+     * @return the index in partitions of the one table tableId is assigned
+     *         to, or 0, that of the default one.
+     */
+    private static int indexOf(List<PoolPartition> partitions, int tableId) {
+        String name = Database.getCatalog().getPartition(tableId);
+        for (int i = 1; name != null && i < partitions.size(); i++) {
+            if (partitions.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Publish the metrics of the current buffer pool through JMX under
+     * {@link #OBJECT_NAME}, unless they already are. The published bean
+     * follows {@link Database#resetBufferPool} to the new pool.
+     *
+     * @throws DbException if the bean cannot be registered
+     */
+    public static void registerMBean() throws DbException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new CurrentPool(), name);
+            }
+        } catch (JMException e) {
+            throw new DbException("can't register " + OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The bean published by registerMBean: each attribute is read from a new
+     * snapshot of the current buffer pool.
+     */
+    private static class CurrentPool implements BufferPoolMXBean {
+        private static Snapshot now() {
+            return Database.getBufferPool().snapshotMetrics();
+        }
+
+        public long getHits() {
+            return now().getHits();
+        }
+
+        public long getMisses() {
+            return now().getMisses();
+        }
+
+        public double getHitRatio() {
+            return now().getHitRatio();
+        }
+
+        public long getPrefetches() {
+            return now().getPrefetches();
+        }
+
+        public long getEvictions() {
+            return now().getEvictions();
+        }
+
+        public long getPagesWritten() {
+            return now().getPagesWritten();
+        }
+
+        public int getDirtyPages() {
+            return now().getDirtyPages();
+        }
+
+        public int getResidentPages() {
+            return now().getResidentPages();
+        }
+
+        public int getCapacityPages() {
+            return now().getCapacityPages();
+        }
+
+        public List<TableSnapshot> getTables() {
+            return now().getTables();
+        }
+
+        public List<PartitionSnapshot> getPartitions() {
+            return now().getPartitions();
+        }
+
+        public long getLockWaits() {
+            return now().getLockWaits();
+        }
+
+        public long getDeadlocks() {
+            return now().getDeadlocks();
+        }
+
+        public LatencyHistogram.Snapshot getDeadlockDetection() {
+            return now().getDeadlockDetection();
+        }
+
+        public long getLockEscalations() {
+            return now().getLockEscalations();
+        }
+    }
+
+    /**
+     * The metrics of a BufferPool at some point.
+     */
+    public static class Snapshot implements BufferPoolMXBean {
+        private final long hits;
+        private final long misses;
+        private final long prefetches;
+        private final long evictions;
+        private final long pagesWritten;
+        private final int dirtyPages;
+        private final int residentPages;
+        private final int capacityPages;
+        private final List<TableSnapshot> tables;
+        private final List<PartitionSnapshot> partitions;
+        private final long lockWaits;
+        private final long deadlocks;
+        private final LatencyHistogram.Snapshot deadlockDetection;
+        private final long lockEscalations;
+
+        Snapshot(long hits, long misses, long prefetches, long evictions, long pagesWritten,
+                int dirtyPages, int residentPages, int capacityPages, List<TableSnapshot> tables,
+                List<PartitionSnapshot> partitions, long lockWaits, long deadlocks,
+                LatencyHistogram.Snapshot deadlockDetection, long lockEscalations) {
+            this.hits = hits;
+            this.misses = misses;
+            this.prefetches = prefetches;
+            this.evictions = evictions;
+            this.pagesWritten = pagesWritten;
+            this.dirtyPages = dirtyPages;
+            this.residentPages = residentPages;
+            this.capacityPages = capacityPages;
+            this.tables = Collections.unmodifiableList(tables);
+            this.partitions = Collections.unmodifiableList(partitions);
+            this.lockWaits = lockWaits;
+            this.deadlocks = deadlocks;
+            this.deadlockDetection = deadlockDetection;
+            this.lockEscalations = lockEscalations;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getPrefetches() {
+            return prefetches;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getPagesWritten() {
+            return pagesWritten;
+        }
+
+        public int getDirtyPages() {
+            return dirtyPages;
+        }
+
+        public int getResidentPages() {
+            return residentPages;
+        }
+
+        public int getCapacityPages() {
+            return capacityPages;
+        }
+
+        public List<TableSnapshot> getTables() {
+            return tables;
+        }
+
+        public List<PartitionSnapshot> getPartitions() {
+            return partitions;
+        }
+
+        public long getLockWaits() {
+            return lockWaits;
+        }
+
+        public long getDeadlocks() {
+            return deadlocks;
+        }
+
+        public LatencyHistogram.Snapshot getDeadlockDetection() {
+            return deadlockDetection;
+        }
+
+        public long getLockEscalations() {
+            return lockEscalations;
+        }
+
+        public double getHitRatio() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        /**
+         * @return the statistics of table tableId
+         * @throws NoSuchElementException if the pool has not read any page
+         *         of the table
+         */
+        public TableSnapshot getTable(int tableId) {
+            for (TableSnapshot t : tables) {
+                if (t.getTableId() == tableId) {
+                    return t;
+                }
+            }
+            throw new NoSuchElementException();
+        }
+
+        /**
+         * @return the statistics of the partition of the given name
+         * @throws NoSuchElementException if the pool has no such partition
+         */
+        public PartitionSnapshot getPartition(String name) {
+            for (PartitionSnapshot p : partitions) {
+                if (p.getName().equals(name)) {
+                    return p;
+                }
+            }
+            throw new NoSuchElementException();
+        }
+
+        public String toString() {
+            return String.format("hits %d, misses %d (%.1f%% hits), prefetches %d, evictions %d, "
+                    + "pages written %d, dirty %d, resident %d of %d, lock waits %d, deadlocks %d, "
+                    + "lock escalations %d",
+                    hits, misses, 100 * getHitRatio(), prefetches, evictions, pagesWritten,
+                    dirtyPages, residentPages, capacityPages, lockWaits, deadlocks, lockEscalations);
+        }
+    }
+
+    /**
+     * The metrics of one table at some point.
+     */
+    public static class TableSnapshot {
+        private final int tableId;
+        private final long hits;
+        private final long misses;
+        private final LatencyHistogram.Snapshot reads;
+        private final LatencyHistogram.Snapshot writes;
+
+        TableSnapshot(int tableId, long hits, long misses, LatencyHistogram.Snapshot reads,
+                LatencyHistogram.Snapshot writes) {
+            this.tableId = tableId;
+            this.hits = hits;
+            this.misses = misses;
+            this.reads = reads;
+            this.writes = writes;
+        }
+
+        public int getTableId() {
+            return tableId;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /** @return the table's name, or null if it is not in the catalog */
+        public String getTableName() {
+            try {
+                return Database.getCatalog().getTableName(tableId);
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+        }
+
+        /** @return how long reading a page of the table from disk took */
+        public LatencyHistogram.Snapshot getReads() {
+            return reads;
+        }
+
+        /** @return how long each write of the table's dirty pages took */
+        public LatencyHistogram.Snapshot getWrites() {
+            return writes;
+        }
+    }
+
+    /**
+     * The metrics of one partition of the pool at some point.
+     */
+    public static class PartitionSnapshot {
+        private final String name;
+        private final int capacityPages;
+        private final int residentPages;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        PartitionSnapshot(String name, int capacityPages, int residentPages, long hits,
+                long misses, long evictions) {
+            this.name = name;
+            this.capacityPages = capacityPages;
+            this.residentPages = residentPages;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCapacityPages() {
+            return capacityPages;
+        }
+
+        public int getResidentPages() {
+            return residentPages;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /** @return the number of pages of the partition evicted for another */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public double getHitRatio() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+
+/**
+ * A BufferRing is a small set of BufferPool frames owned by one large
+ * sequential scan. Pages the scan reads in are kept in the ring rather than
+ * in the pool's eviction policy, and once the ring is full each new page
+ * takes the frame of the ring's oldest page. A scan of a table much larger
+ * than the pool then only ever occupies a ring's worth of frames, and the
+ * pages other transactions use stay resident.
+ * <p>
+ * A page of the ring that some other reader asks for leaves the ring and is
+ * handed to the eviction policy like any page it reads in. Rings are only
+ * changed while holding the BufferPool monitor.
+ *
+ * @see BufferPool#bulkReadRing
+ * @see BufferPool#getPage(TransactionId, PageId, Permissions, BufferRing)
+ */
+public class BufferRing {
+
+    private final int capacity;
+    // the ring's pages, oldest first
+    private final ArrayDeque<PageId> pages;
+    // set once the scan gave the ring back; nothing may be added after
+    boolean released;
+
+    /**
+     * Creates an empty ring of up to capacity frames.
+     */
+    BufferRing(int capacity) {
+        this.capacity = capacity;
+        this.pages = new ArrayDeque<PageId>(capacity);
+    }
+
+    /**
+     * @return the maximum number of frames of this ring.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of frames this ring holds now.
+     */
+    public int size() {
+        return pages.size();
+    }
+
+    boolean isFull() {
+        return pages.size() >= capacity;
+    }
+
+    void add(PageId pid) {
+        pages.addLast(pid);
+    }
+
+    /** @return the oldest page of the ring, removed, or null if it is empty */
+    PageId poll() {
+        return pages.pollFirst();
+    }
+
+    void remove(PageId pid) {
+        pages.remove(pid);
+    }
+}
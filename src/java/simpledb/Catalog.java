@@ -22,6 +22,8 @@ public class Catalog {
 	private Vector<String> fileNames;
 	private Vector<String> fileKeys;
 	private Vector<Integer> fileIds;
+	// the buffer pool partition of each table not in the default one
+	private final ConcurrentHashMap<Integer, String> partitions = new ConcurrentHashMap<Integer, String>();
 	
     /**
      * Constructor.
@@ -119,6 +121,16 @@ public class Catalog {
         throw new NoSuchElementException();
     }
 
+    /**
+     * Returns the dictionary of a dictionary-encoded string field of a table.
+     * @param tableid The id of the table
+     * @param field The index of the field
+     * @return the dictionary, or null if the field is not dictionary-encoded
+     */
+    public StringDictionary getDictionary(int tableid, int field) throws NoSuchElementException {
+        return getTupleDesc(tableid).getDictionary(field);
+    }
+
     public String getPrimaryKey(int tableid) {
     	if(fileIds.contains(tableid)) {
         	return this.fileKeys.get(fileIds.indexOf(tableid));
@@ -126,6 +138,31 @@ public class Catalog {
         throw new NoSuchElementException();
     }
 
+    /**
+     * Assign a table to a partition of the buffer pool; its pages read from
+     * then on compete for the partition's frames only.
+     * @param tableid The id of the table
+     * @param partition The name of the partition, or null for the default
+     *     one. Tables assigned to a partition the buffer pool does not have
+     *     use the default one.
+     * @see BufferPool#addPartition
+     */
+    public void setPartition(int tableid, String partition) {
+        if (partition == null || partition.equals(BufferPool.DEFAULT_PARTITION)) {
+            partitions.remove(tableid);
+        } else {
+            partitions.put(tableid, partition);
+        }
+    }
+
+    /**
+     * @return the name of the buffer pool partition the table is assigned
+     *     to, or null if it is in the default one
+     */
+    public String getPartition(int tableid) {
+        return partitions.get(tableid);
+    }
+
     public Iterator<Integer> tableIdIterator() {
         return this.fileIds.iterator();
     }
@@ -139,14 +176,48 @@ public class Catalog {
     
     /** Delete all tables from the catalog */
     public void clear() {
+    	for (DbFile file : dbFiles) {
+    		closeFile(file);
+    	}
 		dbFiles.clear();
 		fileNames.clear();
 		fileKeys.clear();
 		fileIds.clear();    	
+		partitions.clear();
     }
     
+    /**
+     * Release the file handle held by a table's DbFile, if any. The file
+     * reopens itself if it is used again.
+     */
+    private static void closeFile(DbFile file) {
+    	try {
+    		if (file instanceof HeapFile) {
+    			((HeapFile) file).close();
+    		} else if (file instanceof BTreeFile) {
+    			((BTreeFile) file).close();
+    		}
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    }
+
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line describes one table as
+     * <pre>
+     *   name (field type [pk] [dict], field type, ...) [option ...]
+     * </pre>
+     * where a string field marked <code>dict</code> is dictionary-encoded
+     * (see {@link StringDictionary}), and the options are <code>mmap</code>, which serves the table's
+     * pages from a memory mapping of its file
+     * (see {@link HeapFile#HeapFile(File, TupleDesc, boolean)}), and
+     * <code>slotted</code>, which stores the table as a
+     * {@link SlottedHeapFile} with variable-length tuples,
+     * <code>compressed</code>, which stores it as a {@link CompressedHeapFile},
+     * and <code>pax</code>, which stores it as a {@link PaxFile}. The option
+     * <code>partition=NAME</code> assigns the table to a partition of the
+     * buffer pool (see {@link #setPartition}).
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -160,9 +231,38 @@ public class Catalog {
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                boolean memoryMapped = false;
+                boolean slotted = false;
+                boolean compressed = false;
+                boolean pax = false;
+                String partition = null;
+                for (String option : line.substring(line.indexOf(")") + 1).trim().split("\\s+")) {
+                    if (option.equals(""))
+                        continue;
+                    if (option.toLowerCase().equals("mmap"))
+                        memoryMapped = true;
+                    else if (option.toLowerCase().equals("slotted"))
+                        slotted = true;
+                    else if (option.toLowerCase().equals("compressed"))
+                        compressed = true;
+                    else if (option.toLowerCase().equals("pax"))
+                        pax = true;
+                    else if (option.toLowerCase().startsWith("partition=") && option.length() > 10)
+                        partition = option.substring(10);
+                    else {
+                        System.out.println("Unknown table option " + option);
+                        System.exit(0);
+                    }
+                }
+                if ((compressed ? 1 : 0) + (slotted ? 1 : 0) + (pax ? 1 : 0) > 1
+                        || (compressed && memoryMapped)) {
+                    System.out.println("Table options compressed, slotted and pax are exclusive, and compressed can't be combined with mmap");
+                    System.exit(0);
+                }
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
+                ArrayList<Boolean> encoded = new ArrayList<Boolean>();
                 String primaryKey = "";
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
@@ -175,20 +275,38 @@ public class Catalog {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    encoded.add(false);
+                    for (int i = 2; i < els2.length; i++) {
+                        if (els2[i].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[i].trim().equals("dict") && types.get(types.size() - 1) == Type.STRING_TYPE)
+                            encoded.set(encoded.size() - 1, true);
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[i]);
                             System.exit(0);
                         }
                     }
                 }
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
-                TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                StringDictionary[] dictionaries = new StringDictionary[typeAr.length];
+                for (int i = 0; i < typeAr.length; i++) {
+                    if (encoded.get(i))
+                        dictionaries[i] = new StringDictionary(StringDictionary.sidecarFor(tabFile, i));
+                }
+                TupleDesc t = new TupleDesc(typeAr, namesAr, dictionaries);
+                HeapFile tabHf;
+                if (compressed)
+                    tabHf = new CompressedHeapFile(tabFile, t);
+                else if (slotted)
+                    tabHf = new SlottedHeapFile(tabFile, t, memoryMapped);
+                else if (pax)
+                    tabHf = new PaxFile(tabFile, t, memoryMapped);
+                else
+                    tabHf = new HeapFile(tabFile, t, memoryMapped);
                 addTable(tabHf,name,primaryKey);
+                setPartition(tabHf.getId(), partition);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
         } catch (IOException e) {
@@ -0,0 +1,130 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * ClockEvictionPolicy approximates LRU with the CLOCK algorithm. Resident
+ * pages sit in a ring of frames, each with a reference bit that is set on
+ * every access. To find a victim the clock hand sweeps the ring, clearing set
+ * bits, and stops at the first frame whose bit is already clear. A hit only
+ * sets a bit, so it is cheaper than moving a page in a list.
+ *
+ * @Threadsafe
+ */
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private PageId[] frames;
+    private boolean[] referenced;
+    private final HashMap<PageId, Integer> frameOf;
+    // Frames that have never been used or whose page was removed.
+    private int[] freeFrames;
+    private int numFree;
+    private int hand;
+
+    /**
+     * @param numPages the number of frames of the BufferPool; the ring grows
+     *        if more pages are ever added.
+     */
+    public ClockEvictionPolicy(int numPages) {
+        int n = Math.max(numPages, 1);
+        frames = new PageId[n];
+        referenced = new boolean[n];
+        frameOf = new HashMap<PageId, Integer>();
+        freeFrames = new int[n];
+        for (int i = 0; i < n; i++) {
+            freeFrames[i] = n - 1 - i;
+        }
+        numFree = n;
+        hand = 0;
+    }
+
+    public synchronized void pageAdded(PageId pid) {
+        Integer frame = frameOf.get(pid);
+        if (frame == null) {
+            if (numFree == 0) {
+                grow();
+            }
+            frame = freeFrames[--numFree];
+            frames[frame] = pid;
+            frameOf.put(pid, frame);
+        }
+        referenced[frame] = true;
+    }
+
+    public synchronized boolean pageAccessed(PageId pid) {
+        Integer frame = frameOf.get(pid);
+        if (frame == null) {
+            return false;
+        }
+        referenced[frame] = true;
+        return true;
+    }
+
+    public synchronized PageId chooseVictim(PageId incoming) {
+        if (frameOf.isEmpty()) {
+            return null;
+        }
+        // At most two sweeps: the first may only clear reference bits.
+        while (true) {
+            int frame = hand;
+            hand = (hand + 1) % frames.length;
+            if (frames[frame] == null) {
+                continue;
+            }
+            if (referenced[frame]) {
+                referenced[frame] = false;
+            } else {
+                return frames[frame];
+            }
+        }
+    }
+
+    public synchronized void pageRemoved(PageId pid, boolean evicted) {
+        Integer frame = frameOf.remove(pid);
+        if (frame != null) {
+            frames[frame] = null;
+            referenced[frame] = false;
+            freeFrames[numFree++] = frame;
+        }
+    }
+
+    public void resize(int numPages) {
+        // the ring keeps its frames; those left free are simply not used
+    }
+
+    public synchronized int size() {
+        return frameOf.size();
+    }
+
+    /**
+     * @return the resident pages, those with their reference bit set first;
+     *         within each group, the frames the hand passed last come first,
+     *         as it will get to them last.
+     */
+    public synchronized List<PageId> residentPages() {
+        ArrayList<PageId> pages = new ArrayList<PageId>(frameOf.size());
+        for (boolean ref : new boolean[] {true, false}) {
+            for (int i = 1; i <= frames.length; i++) {
+                int frame = (hand - i + frames.length) % frames.length;
+                if (frames[frame] != null && referenced[frame] == ref) {
+                    pages.add(frames[frame]);
+                }
+            }
+        }
+        return pages;
+    }
+
+    private void grow() {
+        int oldLen = frames.length;
+        int newLen = oldLen * 2;
+        frames = Arrays.copyOf(frames, newLen);
+        referenced = Arrays.copyOf(referenced, newLen);
+        freeFrames = Arrays.copyOf(freeFrames, newLen);
+        for (int i = newLen - 1; i >= oldLen; i--) {
+            freeFrames[numFree++] = i;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are deflated when written and
+ * inflated when read, for archival tables that are scanned now and then but
+ * rarely changed. In the BufferPool its pages are ordinary HeapPages; only
+ * the file differs.
+ * <p>
+ * A compressed page no longer has a fixed place in the file, so the file is
+ * a sequence of extents, each holding one page:
+ * <pre>
+ *   int pageNo, int capacity, int length, byte[capacity] data
+ * </pre>
+ * where the first length bytes of data are the deflated page. The capacity
+ * is the length rounded up to EXTENT_ALIGN bytes, so that a page that grows
+ * a little can be rewritten in place. A page that no longer fits its extent
+ * is appended as a new extent and the old one is left behind as garbage.
+ * <p>
+ * The page table, from page number to the offset of the page's latest
+ * extent, is kept in memory and rebuilt from the extent headers when the
+ * file is opened, the last extent of a page being the latest one. An extent
+ * cut short at the end of the file, e.g. by a crash, is ignored.
+ *
+ * @see HeapFile
+ * @Threadsafe
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    /** Extent capacities are multiples of this many bytes. */
+    public static final int EXTENT_ALIGN = 256;
+
+    private static final int HEADER_SIZE = 12;
+
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>();
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>();
+
+    private final PageTable table;
+
+    /**
+     * Constructs a compressed heap file backed by the specified file.
+     *
+     * @throws IOException if the extent headers of f cannot be read; going
+     *         on with the pages found so far would lose the others, and
+     *         let new extents overwrite them
+     */
+    public CompressedHeapFile(File f, TupleDesc td) throws IOException {
+        this(f, td, PageTable.load(f));
+    }
+
+    private CompressedHeapFile(File f, TupleDesc td, PageTable table) {
+        super(f, td, false, table.numPages);
+        this.table = table;
+    }
+
+    /**
+     * Copies every page of a HeapFile into a new CompressedHeapFile.
+     *
+     * @param source the table to copy, which is not changed
+     * @param dest the file to create; it must not exist or be empty
+     * @return the new file, which is not added to the Catalog
+     */
+    public static CompressedHeapFile compress(HeapFile source, File dest) throws IOException {
+        if (dest.length() > 0) {
+            throw new IOException("compress: " + dest + " is not empty");
+        }
+        CompressedHeapFile cf = new CompressedHeapFile(dest, source.getTupleDesc());
+        for (int i = 0; i < source.numPages(); i++) {
+            Page page = source.readPage(new HeapPageId(source.getId(), i));
+            if (page == null) {
+                throw new IOException("compress: can't read page " + i + " of " + source.getFile());
+            }
+            // the free space and zone maps fill in as the pages are read
+            cf.store(i, page.getPageData());
+        }
+        return cf;
+    }
+
+    /**
+     * @return the number of bytes the file takes on disk, including extents
+     *         that are no longer used.
+     */
+    public long diskSize() {
+        synchronized (table) {
+            return table.end;
+        }
+    }
+
+    @Override
+    protected TuplePage loadPage(HeapPageId pid) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        byte[] page = new byte[pageSize];
+        int pageNo = pid.getPageNumber();
+        byte[] data;
+        int length;
+        synchronized (table) {
+            long offset = pageNo < table.offsets.length ? table.offsets[pageNo] : -1;
+            if (offset < 0) {
+                // never written: an empty page, as past the end of a HeapFile
+                return newPage(pid, ByteBuffer.wrap(page));
+            }
+            data = PageFileChannel.buffer(HEADER_SIZE + table.capacities[pageNo]);
+            channel.read(offset, data, HEADER_SIZE + table.capacities[pageNo]);
+            length = ByteBuffer.wrap(data).getInt(8);
+        }
+        Inflater inflater = inflaters.get();
+        if (inflater == null) {
+            inflater = new Inflater();
+            inflaters.set(inflater);
+        }
+        inflater.reset();
+        inflater.setInput(data, HEADER_SIZE, length);
+        try {
+            int n = 0;
+            while (n < pageSize && !inflater.finished()) {
+                int got = inflater.inflate(page, n, pageSize - n);
+                if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += got;
+            }
+            if (n != pageSize) {
+                throw new IOException("page " + pageNo + " of " + getFile() + " inflates to " + n + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("page " + pageNo + " of " + getFile() + " is corrupt", e);
+        }
+        return newPage(pid, ByteBuffer.wrap(page));
+    }
+
+    @Override
+    protected void storePage(Page page) throws IOException {
+        store(page.getId().getPageNumber(), page.getPageData());
+    }
+
+    @Override
+    protected void storePages(List<Page> run) throws IOException {
+        // pages that are consecutive in number are not in the file
+        for (Page page : run) {
+            storePage(page);
+        }
+    }
+
+    private void store(int pageNo, byte[] raw) throws IOException {
+        Deflater deflater = deflaters.get();
+        if (deflater == null) {
+            deflater = new Deflater();
+            deflaters.set(deflater);
+        }
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        // incompressible pages come out slightly larger than they went in
+        byte[] extent = new byte[HEADER_SIZE + raw.length + raw.length / 16 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (HEADER_SIZE + length == extent.length) {
+                extent = Arrays.copyOf(extent, extent.length * 2);
+            }
+            length += deflater.deflate(extent, HEADER_SIZE + length, extent.length - HEADER_SIZE - length);
+        }
+
+        synchronized (table) {
+            long offset = pageNo < table.offsets.length ? table.offsets[pageNo] : -1;
+            int capacity;
+            if (offset >= 0 && length <= table.capacities[pageNo]) {
+                capacity = table.capacities[pageNo];
+            } else {
+                capacity = (length + EXTENT_ALIGN - 1) / EXTENT_ALIGN * EXTENT_ALIGN;
+                offset = table.end;
+            }
+            ByteBuffer.wrap(extent).putInt(pageNo).putInt(capacity).putInt(length);
+            channel.write(offset, Arrays.copyOf(extent, HEADER_SIZE + capacity));
+            if (offset == table.end) {
+                table.end += HEADER_SIZE + capacity;
+                table.put(pageNo, offset, capacity);
+            }
+            if (pageNo >= numPages) {
+                numPages = pageNo + 1;
+            }
+        }
+    }
+
+    /**
+     * Where the extent of each page is. Pages that were never written have
+     * offset -1.
+     */
+    private static class PageTable {
+        long[] offsets = new long[16];
+        int[] capacities = new int[16];
+        int numPages;
+        // the end of the last extent, where new extents are appended
+        long end;
+
+        PageTable() {
+            Arrays.fill(offsets, -1);
+        }
+
+        void put(int pageNo, long offset, int capacity) {
+            if (pageNo >= offsets.length) {
+                int len = Math.max(pageNo + 1, offsets.length * 2);
+                int old = offsets.length;
+                offsets = Arrays.copyOf(offsets, len);
+                capacities = Arrays.copyOf(capacities, len);
+                Arrays.fill(offsets, old, len, -1);
+            }
+            offsets[pageNo] = offset;
+            capacities[pageNo] = capacity;
+            numPages = Math.max(numPages, pageNo + 1);
+        }
+
+        /** Rebuild the page table of a file from its extent headers. */
+        static PageTable load(File f) throws IOException {
+            PageTable table = new PageTable();
+            if (!f.exists()) {
+                return table;
+            }
+            PageFileChannel ch = new PageFileChannel(f);
+            try {
+                long size = ch.size();
+                byte[] header = new byte[HEADER_SIZE];
+                while (table.end + HEADER_SIZE <= size) {
+                    ch.read(table.end, header, HEADER_SIZE);
+                    ByteBuffer bb = ByteBuffer.wrap(header);
+                    int pageNo = bb.getInt();
+                    int capacity = bb.getInt();
+                    int length = bb.getInt();
+                    if (pageNo < 0 || capacity <= 0 || length <= 0 || length > capacity
+                            || table.end + HEADER_SIZE + capacity > size) {
+                        // a torn extent; the next write goes over it
+                        break;
+                    }
+                    table.put(pageNo, table.end, capacity);
+                    table.end += HEADER_SIZE + capacity;
+                }
+            } finally {
+                ch.close();
+            }
+            return table;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -19,11 +20,33 @@ public class Database {
     private final BufferPool _bufferpool;
 
     private final static String LOGFILENAME = "log";
+
+    /**
+     * System property giving the size in bytes of an off-heap buffer pool,
+     * e.g. -Dsimpledb.BufferPoolBytes=4294967296. Without it the buffer
+     * pool holds DEFAULT_PAGES pages on the heap.
+     *
+     * @see BufferPool#withCapacityBytes
+     */
+    public final static String BUFFER_POOL_BYTES = "simpledb.BufferPoolBytes";
+
+    /**
+     * System property naming the file the parser keeps the buffer pool's
+     * resident pages in across restarts, e.g.
+     * -Dsimpledb.WarmRestartFile=pool.pages.
+     *
+     * @see #warmRestart
+     */
+    public final static String WARM_RESTART_FILE = "simpledb.WarmRestartFile";
+
+    private static final AtomicBoolean saveOnExit = new AtomicBoolean();
     private final LogFile _logfile;
 
     private Database() {
         _catalog = new Catalog();
-        _bufferpool = new BufferPool(BufferPool.DEFAULT_PAGES);
+        Long poolBytes = Long.getLong(BUFFER_POOL_BYTES);
+        _bufferpool = poolBytes == null ? new BufferPool(BufferPool.DEFAULT_PAGES)
+                : BufferPool.withCapacityBytes(poolBytes);
         LogFile tmp = null;
         try {
             tmp = new LogFile(new File(LOGFILENAME));
@@ -55,11 +78,24 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return setBufferPool(new BufferPool(pages));
+    }
+
+    /**
+     * Method used for testing -- create a new buffer pool of capacityBytes
+     * bytes stored off the heap and return it
+     */
+    public static BufferPool resetBufferPoolBytes(long capacityBytes) {
+        return setBufferPool(BufferPool.withCapacityBytes(capacityBytes));
+    }
+
+    private static BufferPool setBufferPool(BufferPool pool) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            getBufferPool().stopPageCleaner();
+            bufferPoolF.set(_instance.get(), pool);
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -73,9 +109,36 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    /**
+     * Keep the buffer pool warm across restarts: when the JVM exits, the ids
+     * of the pages resident in the buffer pool are saved to f, and if f
+     * exists, the pages it lists are read back into the buffer pool now, in
+     * the background. Call it once the catalog is loaded.
+     *
+     * @return the thread reading the pages back, or null if f does not exist
+     * @see BufferPool#saveResidentPages
+     * @see BufferPool#warmUp
+     */
+    public static Thread warmRestart(final File f) throws IOException {
+        if (saveOnExit.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread("BufferPoolSave") {
+                public void run() {
+                    try {
+                        getBufferPool().saveResidentPages(f);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        return f.exists() ? getBufferPool().warmUp(f) : null;
+    }
+
     // reset the database, used for unit tests only.
     public static void reset() {
-        _instance.set(new Database());
+        Database old = _instance.getAndSet(new Database());
+        old._bufferpool.stopPageCleaner();
+        old._catalog.clear();
     }
 
 }
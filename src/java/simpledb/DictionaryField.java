@@ -0,0 +1,82 @@
+package simpledb;
+
+/**
+ * A StringField read from a dictionary-encoded column. It carries the code
+ * the column's StringDictionary gave its value, so that two fields from the
+ * same dictionary are compared for equality by their codes rather than by
+ * their strings. Each code has a single DictionaryField instance, shared by
+ * every tuple holding that value.
+ *
+ * @see StringDictionary
+ */
+public class DictionaryField extends StringField {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient StringDictionary dictionary;
+	private final int code;
+
+	/**
+	 * Constructor; used by StringDictionary.
+	 *
+	 * @param s
+	 *            The value of this field.
+	 * @param dictionary
+	 *            The dictionary that encodes the value.
+	 * @param code
+	 *            The value's code in the dictionary.
+	 */
+	DictionaryField(String s, StringDictionary dictionary, int code) {
+		super(s, Type.STRING_LEN);
+		this.dictionary = dictionary;
+		this.code = code;
+	}
+
+	/**
+	 * @return the dictionary that encodes this field's value.
+	 */
+	public StringDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @return the code of this field's value in its dictionary.
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * @return true if field is encoded by the same dictionary as this one,
+	 *         so that their codes can be compared.
+	 */
+	boolean sameDictionary(Object field) {
+		return dictionary != null && field instanceof DictionaryField
+				&& ((DictionaryField) field).dictionary == dictionary;
+	}
+
+	public boolean equals(Object field) {
+		if (sameDictionary(field))
+			return ((DictionaryField) field).code == code;
+		return super.equals(field);
+	}
+
+	// hashCode() is inherited: it must agree with equals() on plain
+	// StringFields, and String caches its hash.
+
+	/**
+	 * Compare the specified field to the value of this Field. Equality
+	 * against a field of the same dictionary compares the codes.
+	 *
+	 * @see StringField#compare
+	 */
+	public boolean compare(Predicate.Op op, Field val) {
+		if (sameDictionary(val)) {
+			if (op == Predicate.Op.EQUALS)
+				return ((DictionaryField) val).code == code;
+			if (op == Predicate.Op.NOT_EQUALS)
+				return ((DictionaryField) val).code != code;
+		}
+		return super.compare(op, val);
+	}
+}
@@ -0,0 +1,72 @@
+package simpledb;
+
+import java.util.List;
+
+/**
+ * EvictionPolicy decides which page the BufferPool gives up when it needs a
+ * free frame. The BufferPool reports every page that becomes resident, every
+ * hit on a resident page and every page that leaves the pool; the policy only
+ * tracks page ids and never touches the pages themselves.
+ * <p>
+ * Implementations must be thread safe: hits are reported without holding the
+ * BufferPool monitor.
+ *
+ * @see BufferPool#BufferPool(int, EvictionPolicy)
+ * @see LruEvictionPolicy
+ * @see ClockEvictionPolicy
+ * @see TwoQueueEvictionPolicy
+ * @see ArcEvictionPolicy
+ */
+public interface EvictionPolicy {
+
+    /**
+     * A page was read in and is now resident in the pool.
+     */
+    public void pageAdded(PageId pid);
+
+    /**
+     * A resident page was requested again.
+     *
+     * @return false if the policy does not know the page (e.g. it was evicted
+     *         concurrently), in which case its state is left unchanged.
+     */
+    public boolean pageAccessed(PageId pid);
+
+    /**
+     * Pick the resident page that should be evicted next. The page stays
+     * tracked until {@link #pageRemoved} is called for it.
+     *
+     * @param incoming the page the pool is making room for, or null if not
+     *        known. Adaptive policies may use it to tune themselves.
+     * @return the victim, or null if no page is resident.
+     */
+    public PageId chooseVictim(PageId incoming);
+
+    /**
+     * A page left the pool.
+     *
+     * @param evicted true if the page was chosen by {@link #chooseVictim} and
+     *        evicted, false if it was discarded; policies that keep a history
+     *        of evicted pages only remember the former.
+     */
+    public void pageRemoved(PageId pid, boolean evicted);
+
+    /**
+     * The pool now gives this policy numPages frames, e.g. because some of
+     * its frames were set aside for a partition. Policies whose targets or
+     * history depend on the number of frames recompute them; the pool
+     * evicts the pages that no longer fit itself.
+     */
+    public void resize(int numPages);
+
+    /**
+     * @return the number of resident pages tracked by this policy.
+     */
+    public int size();
+
+    /**
+     * @return the resident pages tracked by this policy, the page it would
+     *         evict last first and its next victim last.
+     */
+    public List<PageId> residentPages();
+}
@@ -0,0 +1,135 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * EvictionReplay runs a recorded trace of page requests against each
+ * EvictionPolicy and reports the hit ratio it would achieve for a given
+ * number of buffer pool frames. Nothing is read from disk; only page ids are
+ * simulated.
+ * <p>
+ * A trace has one page id per line, written as the integers returned by
+ * {@link PageId#serialize} separated by spaces: two for a HeapPageId, three
+ * for a BTreePageId. Traces can be recorded from a running database with
+ * {@link BufferPool#setAccessTrace}.
+ * <p>
+ * Usage: java -jar dist/simpledb.jar replay trace-file num-pages [policy ...]
+ */
+public class EvictionReplay {
+
+    /** Names of the policies known to {@link #createPolicy}. */
+    public static final String[] POLICIES = {"lru", "clock", "2q", "arc"};
+
+    /**
+     * Create the eviction policy with the given name for a pool of numPages
+     * frames.
+     *
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static EvictionPolicy createPolicy(String name, int numPages) {
+        String n = name.toLowerCase();
+        if (n.equals("lru"))
+            return new LruEvictionPolicy();
+        if (n.equals("clock"))
+            return new ClockEvictionPolicy(numPages);
+        if (n.equals("2q"))
+            return new TwoQueueEvictionPolicy(numPages);
+        if (n.equals("arc"))
+            return new ArcEvictionPolicy(numPages);
+        throw new IllegalArgumentException("Unknown eviction policy " + name);
+    }
+
+    /** Append one page request to a trace. */
+    static void writeAccess(PrintWriter trace, PageId pid) {
+        int[] data = pid.serialize();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < data.length; i++) {
+            if (i > 0)
+                sb.append(' ');
+            sb.append(data[i]);
+        }
+        trace.println(sb.toString());
+    }
+
+    /**
+     * Parse one line of a trace.
+     *
+     * @throws IllegalArgumentException if the line is not a page id
+     */
+    public static PageId parseAccess(String line) {
+        String[] els = line.trim().split("\\s+");
+        try {
+            if (els.length == 2)
+                return new HeapPageId(Integer.parseInt(els[0]), Integer.parseInt(els[1]));
+            if (els.length == 3)
+                return new BTreePageId(Integer.parseInt(els[0]), Integer.parseInt(els[1]),
+                        Integer.parseInt(els[2]));
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("Invalid trace entry : " + line);
+    }
+
+    /** Read a whole trace file; blank lines are skipped. */
+    public static List<PageId> readTrace(File f) throws IOException {
+        ArrayList<PageId> trace = new ArrayList<PageId>();
+        BufferedReader br = new BufferedReader(new FileReader(f));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.trim().length() > 0)
+                    trace.add(parseAccess(line));
+            }
+        } finally {
+            br.close();
+        }
+        return trace;
+    }
+
+    /**
+     * Replay a trace against a policy the way the BufferPool drives it.
+     *
+     * @param trace the page requests, in order
+     * @param numPages the number of frames of the simulated pool
+     * @param policy a fresh policy instance
+     * @return the fraction of requests that were hits
+     */
+    public static double hitRatio(List<PageId> trace, int numPages, EvictionPolicy policy) {
+        if (trace.isEmpty())
+            return 0.0;
+        HashSet<PageId> resident = new HashSet<PageId>();
+        long hits = 0;
+        for (PageId pid : trace) {
+            if (resident.contains(pid)) {
+                policy.pageAccessed(pid);
+                hits++;
+                continue;
+            }
+            if (resident.size() >= numPages) {
+                PageId victim = policy.chooseVictim(pid);
+                resident.remove(victim);
+                policy.pageRemoved(victim, true);
+            }
+            resident.add(pid);
+            policy.pageAdded(pid);
+        }
+        return (double) hits / trace.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: replay trace-file num-pages [policy ...]");
+            System.exit(1);
+        }
+        List<PageId> trace = readTrace(new File(args[0]));
+        int numPages = Integer.parseInt(args[1]);
+        String[] policies = args.length > 2 ? Arrays.copyOfRange(args, 2, args.length) : POLICIES;
+
+        System.out.println(trace.size() + " requests, " + numPages + " pages");
+        for (String name : policies) {
+            double ratio = hitRatio(trace, numPages, createPolicy(name, numPages));
+            System.out.printf("%-6s hit ratio %.4f%n", name, ratio);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FrameArena holds page images outside the Java heap, in direct
+ * ByteBuffers allocated once when the arena is created. It is divided into
+ * frames of one page each, so that a BufferPool of many gigabytes keeps
+ * only a small Frame object per page on the heap, and the garbage collector
+ * never has to trace the pages themselves.
+ * <p>
+ * A single direct buffer can hold at most 2GB, so the arena is allocated as
+ * chunks of up to CHUNK_BYTES each. Frames are handed out and given back
+ * while holding the BufferPool monitor; the bytes of a frame are read and
+ * written while holding the Frame's own monitor.
+ *
+ * @see BufferPool#withCapacityBytes
+ */
+public class FrameArena {
+
+    /** The largest direct buffer the arena allocates at once. */
+    static final int CHUNK_BYTES = 1 << 30;
+
+    /**
+     * One frame of the arena, holding the image of one page for as long as
+     * the page is resident. A Frame is never reused for another page: once
+     * it is freed, readers that still hold it find it {@link #isFreed
+     * freed} rather than another page's bytes.
+     */
+    public static class Frame {
+        private final ByteBuffer data;
+        private final int index;
+        private boolean freed;
+
+        private Frame(ByteBuffer data, int index) {
+            this.data = data;
+            this.index = index;
+        }
+
+        /** Copy a page image into the frame. */
+        public synchronized void store(byte[] image) {
+            ByteBuffer dst = data.duplicate();
+            dst.put(image, 0, Math.min(image.length, dst.remaining()));
+        }
+
+        /**
+         * @return a view of the frame's bytes. It may only be read while
+         *         holding the Frame's monitor, and only if the frame is not
+         *         freed.
+         */
+        public ByteBuffer buffer() {
+            return data.duplicate();
+        }
+
+        /** @return whether the frame's page left the arena */
+        public synchronized boolean isFreed() {
+            return freed;
+        }
+    }
+
+    private final int pageSize;
+    private final ByteBuffer[] chunks;
+    private final int framesPerChunk;
+    private final int numFrames;
+    // indices of the frames not in use, the top of the stack first
+    private final int[] free;
+    private int numFree;
+
+    /**
+     * Allocate an arena of capacityBytes bytes, rounded down to whole pages
+     * of pageSize bytes.
+     *
+     * @throws IllegalArgumentException if capacityBytes is less than a page
+     * @throws OutOfMemoryError if there is not enough direct memory; see
+     *         -XX:MaxDirectMemorySize
+     */
+    public FrameArena(long capacityBytes, int pageSize) {
+        long frames = capacityBytes / pageSize;
+        if (frames < 1) {
+            throw new IllegalArgumentException("the arena must hold at least one page");
+        }
+        if (frames > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many pages: " + frames);
+        }
+        this.pageSize = pageSize;
+        this.numFrames = (int) frames;
+        this.framesPerChunk = CHUNK_BYTES / pageSize;
+        this.chunks = new ByteBuffer[(numFrames + framesPerChunk - 1) / framesPerChunk];
+        for (int i = 0; i < chunks.length; i++) {
+            int n = Math.min(framesPerChunk, numFrames - i * framesPerChunk);
+            chunks[i] = ByteBuffer.allocateDirect(n * pageSize);
+        }
+        this.free = new int[numFrames];
+        for (int i = 0; i < numFrames; i++) {
+            free[i] = numFrames - 1 - i;
+        }
+        this.numFree = numFrames;
+    }
+
+    /** @return the number of frames of the arena */
+    public int capacity() {
+        return numFrames;
+    }
+
+    /** @return the number of frames in use */
+    public synchronized int size() {
+        return numFrames - numFree;
+    }
+
+    /**
+     * @return an unused frame, or null if all frames are in use.
+     */
+    public synchronized Frame allocate() {
+        if (numFree == 0) {
+            return null;
+        }
+        int index = free[--numFree];
+        ByteBuffer slice = chunks[index / framesPerChunk].duplicate();
+        int offset = (index % framesPerChunk) * pageSize;
+        slice.limit(offset + pageSize);
+        slice.position(offset);
+        return new Frame(slice.slice(), index);
+    }
+
+    /**
+     * Give back a frame; readers holding it see it freed from now on.
+     */
+    public void free(Frame frame) {
+        synchronized (frame) {
+            if (frame.freed) {
+                return;
+            }
+            frame.freed = true;
+        }
+        synchronized (this) {
+            free[numFree++] = frame.index;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records how many empty slots each page of a HeapFile has (or
+ * free bytes, for the pages of a SlottedHeapFile), so
+ * that HeapFile.insertTuple can go straight to a page with room instead of
+ * reading every page of the table through the BufferPool.
+ * <p>
+ * Two views are kept. The in-memory counts follow the pages cached in the
+ * BufferPool and are updated by HeapPage.insertTuple and deleteTuple. The
+ * sidecar file (the heap file's name plus ".fsm") holds the counts of the
+ * pages as they were last written to or read from disk. It starts with the
+ * number of pages it describes, followed by two bytes per page holding the
+ * count plus one, so that zero (e.g. a hole in the file) means unknown. It
+ * is only used to start from when the HeapFile is opened again.
+ * <p>
+ * The map is a hint: an aborted transaction or an out-of-date sidecar can
+ * make it wrong. Callers must check the page they are given, and pages
+ * whose count is unknown are treated as possibly having room.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    /** Count of a page that has not been seen since the map was created. */
+    public static final short UNKNOWN = -1;
+
+    private static final int HEADER_SIZE = 4;
+
+    private final PageFileChannel sidecar;
+    // free[i] is the number of empty slots of page i, or UNKNOWN
+    private short[] free;
+    // the counts in the sidecar file, to skip writes that change nothing
+    private short[] onDisk;
+    private int numPages;
+    // the number of pages in the sidecar's header
+    private int headerPages;
+    // pages whose count is positive or UNKNOWN
+    private final BitSet candidates;
+
+    /**
+     * Open the free space map of a heap file.
+     *
+     * @param sidecarFile the file the map is persisted in
+     * @param numPages the number of pages the heap file has now; if the
+     *        sidecar describes a different number of pages it is ignored
+     */
+    public FreeSpaceMap(File sidecarFile, int numPages) {
+        this.sidecar = new PageFileChannel(sidecarFile);
+        this.numPages = numPages;
+        this.free = new short[Math.max(numPages, 16)];
+        this.onDisk = new short[free.length];
+        Arrays.fill(free, UNKNOWN);
+        Arrays.fill(onDisk, UNKNOWN);
+        this.candidates = new BitSet();
+        candidates.set(0, numPages);
+        if (sidecarFile.exists()) {
+            load();
+        }
+    }
+
+    /** @return the sidecar file name used for a heap file. */
+    public static File sidecarFor(File heapFile) {
+        return new File(heapFile.getPath() + ".fsm");
+    }
+
+    private void load() {
+        try {
+            byte[] header = new byte[HEADER_SIZE];
+            if (sidecar.read(0, header, HEADER_SIZE) < HEADER_SIZE
+                    || ByteBuffer.wrap(header).getInt() != numPages) {
+                // out of date: start over so stale entries are never trusted
+                sidecar.channel().truncate(0);
+                return;
+            }
+            headerPages = numPages;
+            byte[] data = new byte[numPages * 2];
+            sidecar.read(HEADER_SIZE, data, data.length);
+            ByteBuffer bb = ByteBuffer.wrap(data);
+            for (int i = 0; i < numPages; i++) {
+                short count = (short) (bb.getShort() - 1);
+                free[i] = count;
+                onDisk[i] = count;
+                candidates.set(i, count != 0);
+            }
+        } catch (IOException e) {
+            // an unreadable map is as good as no map
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of a page that may have an empty slot, or -1 if
+     *         every page is known to be full.
+     */
+    public synchronized int findPage() {
+        return findPage(0, 1);
+    }
+
+    /**
+     * @return the number of the first page from page from on whose count is
+     *         unknown or at least needed, or -1 if there is none.
+     */
+    public synchronized int findPage(int from, int needed) {
+        for (int i = candidates.nextSetBit(from); i >= 0 && i < numPages; i = candidates.nextSetBit(i + 1)) {
+            if (free[i] == UNKNOWN || free[i] >= needed) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the recorded number of empty slots of a page, or UNKNOWN.
+     */
+    public synchronized int getFreeSlots(int pageNo) {
+        return pageNo < numPages ? free[pageNo] : UNKNOWN;
+    }
+
+    /**
+     * Record the number of empty slots of a page as cached in memory. Pages
+     * past the known end of the file are added.
+     */
+    public synchronized void update(int pageNo, int freeSlots) {
+        if (pageNo >= numPages) {
+            ensureCapacity(pageNo + 1);
+            candidates.set(numPages, pageNo + 1);
+            numPages = pageNo + 1;
+        }
+        free[pageNo] = (short) Math.min(freeSlots, Short.MAX_VALUE - 1);
+        candidates.set(pageNo, freeSlots != 0);
+    }
+
+    /**
+     * Record the number of empty slots of a page as it is on disk, after it
+     * was read or written, and save it to the sidecar if it changed. A
+     * sidecar that cannot be written (e.g. in a read-only directory) only
+     * costs the hint on the next open, so the error is not passed on.
+     */
+    public synchronized void persist(int pageNo, int freeSlots) {
+        update(pageNo, freeSlots);
+        short count = free[pageNo];
+        try {
+            if (onDisk[pageNo] != count) {
+                short stored = (short) (count + 1);
+                byte[] entry = new byte[] {(byte) (stored >> 8), (byte) stored};
+                sidecar.write(HEADER_SIZE + 2L * pageNo, entry);
+                onDisk[pageNo] = count;
+            }
+            if (headerPages != numPages) {
+                sidecar.write(0, ByteBuffer.allocate(HEADER_SIZE).putInt(numPages).array());
+                headerPages = numPages;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** @return the number of pages described by this map. */
+    public synchronized int numPages() {
+        return numPages;
+    }
+
+    /** Close the sidecar file; it is reopened if the map is used again. */
+    public void close() throws IOException {
+        sidecar.close();
+    }
+
+    private void ensureCapacity(int n) {
+        if (n > free.length) {
+            int len = Math.max(n, free.length * 2);
+            int old = free.length;
+            free = Arrays.copyOf(free, len);
+            onDisk = Arrays.copyOf(onDisk, len);
+            Arrays.fill(free, old, len, UNKNOWN);
+            Arrays.fill(onDisk, old, len, UNKNOWN);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package simpledb;
 
-import java.awt.RenderingHints;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 /**
@@ -10,15 +12,35 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * Unless the BufferPool cannot (see {@link BufferPool#locksTuples}),
+ * inserts, deletes and scans lock the tuples they touch rather than their
+ * pages, taking intention locks on the pages and the table: an insert
+ * takes an exclusive lock on the free slot it fills, a delete on the tuple
+ * it deletes, and a scan a shared lock on each tuple of a page before it
+ * returns the page's tuples. There are no locks on ranges of tuples, so a
+ * scan may see tuples inserted after it started. A scan by a transaction
+ * reading a {@link BufferPool#beginSnapshot snapshot} locks nothing.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 	
+	// The most pages writePages writes with a single call.
+	private static final int MAX_RUN_PAGES = 128;
+
 	File file;
 	TupleDesc td;
 	int numPages;
+	// Stays open for the life of this HeapFile; see close().
+	final PageFileChannel channel;
+	final boolean memoryMapped;
+	final FreeSpaceMap freeSpace;
+	final ZoneMap zoneMap;
+	// In memory-mapped mode, a read-only mapping of the file as large as the
+	// file was when it was last (re)mapped; null until first needed.
+	private volatile MappedByteBuffer map;
     /**
      * Constructs a heap file backed by the specified file.
      * 
@@ -27,9 +49,97 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+    	this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file.
+     * 
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param memoryMapped
+     *            if true, readPage parses pages straight out of a read-only
+     *            memory mapping of the file rather than reading them into a
+     *            buffer first. Meant for tables that are rarely written.
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped) {
+    	this(f, td, memoryMapped, (int)(f.length() / BufferPool.getPageSize()));
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, for subclasses
+     * whose files are not simply numPages pages of BufferPool.getPageSize()
+     * bytes.
+     *
+     * @param numPages the number of pages in the file
+     */
+    protected HeapFile(File f, TupleDesc td, boolean memoryMapped, int numPages) {
     	this.file = f;
         this.td = td;
-        numPages = (int)(file.length() / BufferPool.getPageSize());
+        this.channel = new PageFileChannel(f);
+        this.memoryMapped = memoryMapped;
+        this.numPages = numPages;
+        this.freeSpace = new FreeSpaceMap(FreeSpaceMap.sidecarFor(f), numPages);
+        this.zoneMap = new ZoneMap(ZoneMap.sidecarFor(f), f, td, numPages);
+    }
+
+    /**
+     * @return true if this file serves pages from a memory mapping.
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Closes the file handle kept by this HeapFile. It is reopened if the
+     * file is accessed again.
+     */
+    public void close() throws IOException {
+        map = null;
+        channel.close();
+        freeSpace.close();
+        zoneMap.close();
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getDictionary(i) != null)
+                td.getDictionary(i).close();
+        }
+    }
+
+    /**
+     * @return the free space map used to pick the page an insert goes to.
+     */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return freeSpace;
+    }
+
+    /**
+     * @return the per-page ranges of the INT columns used to skip pages.
+     */
+    public ZoneMap getZoneMap() {
+        return zoneMap;
+    }
+
+    /**
+     * Returns a mapping of the file that covers at least the first end bytes
+     * if the file is that large, remapping the file if it grew since it was
+     * last mapped.
+     */
+    private MappedByteBuffer mapping(long end) throws IOException {
+        MappedByteBuffer m = map;
+        if (m != null && m.capacity() >= end) {
+            return m;
+        }
+        synchronized (this) {
+            m = map;
+            if (m == null || m.capacity() < end) {
+                FileChannel ch = channel.channel();
+                long size = Math.min(ch.size(), Integer.MAX_VALUE);
+                m = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                map = m;
+            }
+            return m;
+        }
     }
 
     /**
@@ -65,31 +175,135 @@ public class HeapFile implements DbFile {
 
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
-    	int pageSize = BufferPool.getPageSize();
-    	byte[] data = new byte[pageSize];
-    	Page page = null;
     	try {
-    		RandomAccessFile raf = new RandomAccessFile(this.file, "r");
-    		int offset = pid.getPageNumber() * pageSize;
-    		raf.seek(offset);
-    		raf.read(data, 0, pageSize);
-    		page = new HeapPage((HeapPageId)pid, data);
-    		raf.close();
+    		TuplePage page = loadPage((HeapPageId) pid);
+    		freeSpace.persist(pid.getPageNumber(), page.getFreeSpace());
+    		zoneMap.pageRead(page);
+    		return page;
 		} catch (IOException e) {
 			e.printStackTrace();
 			return null;
 		}
-        return page;
     }
 
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
-    	try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
-            raf.seek(page.getId().getPageNumber() * BufferPool.getPageSize());
-            byte[] data = page.getPageData();
-            raf.write(data);
-            raf.close();
-        }
+    	storePage(page);
+    	if (page instanceof TuplePage) {
+    		freeSpace.persist(page.getId().getPageNumber(), ((TuplePage) page).getFreeSpace());
+    		zoneMap.pageWritten((TuplePage) page);
+    	}
+    }
+
+    /**
+     * Write several pages of this file, as writePage would one at a time.
+     * The pages are written in page number order, each run of consecutive
+     * pages with a single write, so that flushing many dirty pages costs a
+     * few sequential writes instead of one random write per page.
+     */
+    public void writePages(List<Page> pages) throws IOException {
+    	ArrayList<Page> sorted = new ArrayList<Page>(pages);
+    	Collections.sort(sorted, new Comparator<Page>() {
+    		public int compare(Page a, Page b) {
+    			return Integer.compare(a.getId().getPageNumber(), b.getId().getPageNumber());
+    		}
+    	});
+    	int start = 0;
+    	for (int i = 1; i <= sorted.size(); i++) {
+    		if (i == sorted.size() || i - start == MAX_RUN_PAGES
+    				|| sorted.get(i).getId().getPageNumber() != sorted.get(i - 1).getId().getPageNumber() + 1) {
+    			storePages(sorted.subList(start, i));
+    			start = i;
+    		}
+    	}
+    	ArrayList<TuplePage> tuplePages = new ArrayList<TuplePage>(sorted.size());
+    	for (Page page : sorted) {
+    		if (page instanceof TuplePage) {
+    			freeSpace.persist(page.getId().getPageNumber(), ((TuplePage) page).getFreeSpace());
+    			tuplePages.add((TuplePage) page);
+    		}
+    	}
+    	zoneMap.pagesWritten(tuplePages);
+    }
+
+    /**
+     * Read a page from disk. Subclasses that lay pages out in the file
+     * differently override this and {@link #storePage}.
+     */
+    protected TuplePage loadPage(HeapPageId pid) throws IOException {
+    	int pageSize = BufferPool.getPageSize();
+    	long offset = (long) pid.getPageNumber() * pageSize;
+    	TuplePage page = null;
+    	if (memoryMapped) {
+    		MappedByteBuffer m = mapping(offset + pageSize);
+    		if (m.capacity() >= offset + pageSize) {
+    			ByteBuffer slice = m.duplicate();
+    			slice.limit((int) (offset + pageSize));
+    			slice.position((int) offset);
+    			page = newPage(pid, slice);
+    		}
+    		// past the end of the mapping: read (zeroes) through the channel
+    	}
+    	if (page == null) {
+    		byte[] data = PageFileChannel.buffer(pageSize);
+    		channel.read(offset, data, pageSize);
+    		page = newPage(pid, ByteBuffer.wrap(data));
+    	}
+    	return page;
+    }
+
+    /**
+     * Write a page to disk.
+     *
+     * @see #loadPage
+     */
+    protected void storePage(Page page) throws IOException {
+    	channel.write((long) page.getId().getPageNumber() * BufferPool.getPageSize(), page.getPageData());
+    }
+
+    /**
+     * Write a run of pages with consecutive page numbers to disk, with one
+     * gathering write.
+     *
+     * @see #writePages
+     */
+    protected void storePages(List<Page> run) throws IOException {
+    	if (run.size() == 1) {
+    		storePage(run.get(0));
+    		return;
+    	}
+    	byte[][] data = new byte[run.size()][];
+    	for (int i = 0; i < data.length; i++) {
+    		data[i] = run.get(i).getPageData();
+    	}
+    	channel.write((long) run.get(0).getId().getPageNumber() * BufferPool.getPageSize(), data);
+    }
+
+    /**
+     * Parse a page of this file. Subclasses that store pages in another
+     * format override this.
+     *
+     * @param data the page's bytes, between the buffer's position and limit
+     */
+    protected TuplePage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+    	return new HeapPage(pid, data);
+    }
+
+    /**
+     * @return whether the tuples of this file can be locked one by one,
+     *         which needs its pages to be HeapPages. Subclasses that store
+     *         pages in another format override this to lock whole pages.
+     */
+    protected boolean locksTuples() {
+    	return true;
+    }
+
+    /**
+     * @return the free space, as counted by the pages of this file, that a
+     *         page needs to hold t.
+     */
+    protected int spaceNeeded(Tuple t) {
+    	return 1;
     }
 
     /**
@@ -103,28 +317,61 @@ public class HeapFile implements DbFile {
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
     	ArrayList<Page> retPages = new ArrayList<>();
-        for (int i = 0; i < numPages(); i++) {
-        	HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(this.getId(), i), null);
-        	if(page.getNumEmptySlots() > 0) {
+    	boolean rows = Database.getBufferPool().locksTuples(getId());
+    	// Only visit pages the free space map says may have room.
+    	int needed = spaceNeeded(t);
+    	int pageNo = -1;
+        while ((pageNo = freeSpace.findPage(pageNo + 1, needed)) >= 0 && pageNo < numPages()) {
+        	HeapPageId pid = new HeapPageId(this.getId(), pageNo);
+        	if (rows) {
+        		HeapPage page = insertIntoFreeSlot(tid, pid, t);
+        		if (page != null) {
+        			retPages.add(page);
+        			return retPages;
+        		}
+        		continue;
+        	}
+        	boolean locked = Database.getBufferPool().holdsLock(tid, pid);
+        	TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        	if(page.hasRoomFor(t)) {
         		page.insertTuple(t);
         		page.markDirty(true, tid);
         		retPages.add(page);
         		return retPages;  
-        	}        	     	
+        	}
+        	// the map was out of date; the page is unchanged, so unless tid
+        	// had it locked before it need not stay locked
+        	freeSpace.update(pageNo, page.getFreeSpace());
+        	if (!locked) {
+        		Database.getBufferPool().releasePage(tid, pid);
+        	}
         }
         
 		// Need a new page.
-        byte[] data = new byte[BufferPool.getPageSize()];
-        for (int i = 0; i < BufferPool.getPageSize(); i++) {
-        	data[i] = 0;
+        HeapPageId npid;
+        TuplePage newPage;
+        synchronized (this) {
+            byte[] data = new byte[BufferPool.getPageSize()];
+            npid = new HeapPageId(getId(), numPages());
+            newPage = newPage(npid, ByteBuffer.wrap(data));
+            numPages++;
+            this.writePage(newPage);
+            if (memoryMapped) {
+                mapping((long) numPages * BufferPool.getPageSize());
+            }
+        }
+        if (rows) {
+        	HeapPage page = insertIntoFreeSlot(tid, npid, t);
+        	if (page == null) {
+        		// others filled the new page first
+        		return insertTuple(tid, t);
+        	}
+        	retPages.add(page);
+        	return retPages;
         }
-        HeapPageId npid = new HeapPageId(getId(), numPages());
-        HeapPage newPage = new HeapPage(npid, data);
-        numPages++;
-        this.writePage(newPage);
         
         // Get the page from buffer pool. It's not the same object from newPage.
-        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, npid, null);
+        TuplePage page = (TuplePage) Database.getBufferPool().getPage(tid, npid, Permissions.READ_WRITE);
         page.insertTuple(t);
         page.markDirty(true, tid);
         retPages.add(newPage);
@@ -132,46 +379,246 @@ public class HeapFile implements DbFile {
         return retPages; 
     }
 
+    /**
+     * Insert t into a free slot of page pid that tid can lock without
+     * waiting, under the page's monitor. A free slot another transaction
+     * has locked is one it deleted a tuple from, which it may put back.
+     *
+     * @return the page, or null if it has no such slot
+     */
+    private HeapPage insertIntoFreeSlot(TransactionId tid, HeapPageId pid, Tuple t)
+            throws DbException, TransactionAbortedException {
+    	BufferPool bp = Database.getBufferPool();
+    	while (true) {
+    		HeapPage page = (HeapPage) bp.getPageForTuples(tid, pid, Permissions.READ_WRITE, null);
+    		boolean inserted = false;
+    		synchronized (page) {
+    			if (!bp.isCached(page)) {
+    				// evicted before we got hold of it
+    				continue;
+    			}
+    			for (int i = 0; i < page.numSlots && page.getNumEmptySlots() > 0 && !inserted; i++) {
+    				if (!page.isSlotUsed(i) && bp.tryLockTuple(tid, new RecordId(pid, i), Permissions.READ_WRITE)) {
+    					page.insertTuple(t, i);
+    					page.markDirty(true, tid);
+    					bp.tupleChanged(tid, t, true);
+    					inserted = true;
+    				}
+    			}
+    		}
+    		if (!inserted) {
+    			return null;
+    		}
+    		bp.escalateLocks(tid, pid);
+    		return page;
+    	}
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
     	ArrayList<Page> retPages = new ArrayList<>();
     	PageId pid = t.getRecordId().getPageId();
-        for (int i = 0; i < numPages(); i++) {
-        	if (i == pid.getPageNumber()) {
-        		HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
-        		page.deleteTuple(t);
-        		retPages.add(page);
-        		return retPages;
-        	}
-        }
-        throw new DbException("deleteTuple: can't find pid of tuple in page file");
+    	if (pid.getPageNumber() >= numPages()) {
+    		throw new DbException("deleteTuple: can't find pid of tuple in page file");
+    	}
+    	BufferPool bp = Database.getBufferPool();
+    	if (!bp.locksTuples(getId())) {
+    		TuplePage page = (TuplePage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+    		page.deleteTuple(t);
+    		page.markDirty(true, tid);
+    		retPages.add(page);
+    		return retPages;
+    	}
+    	bp.lockTuple(tid, t.getRecordId(), Permissions.READ_WRITE);
+    	int slot = t.getRecordId().getTupleNumber();
+    	while (true) {
+    		HeapPage page = (HeapPage) bp.getPageForTuples(tid, pid, Permissions.READ_WRITE, null);
+    		synchronized (page) {
+    			if (!bp.isCached(page)) {
+    				continue;
+    			}
+    			if (slot >= page.numSlots || !page.isSlotUsed(slot)) {
+    				throw new DbException("deleteTuple: the tuple slot is already empty");
+    			}
+    			// the tuple as it is on the page, to put back if tid aborts
+    			Tuple before = page.getTuple(slot);
+    			page.deleteTuple(before);
+    			page.markDirty(true, tid);
+    			bp.tupleChanged(tid, before, false);
+    			retPages.add(page);
+    			return retPages;
+    		}
+    	}
+    }
+
+    /**
+     * Undo an insert or a delete of t that aborting transaction tid made
+     * under its tuple lock, which it still holds.
+     */
+    void undoTupleChange(TransactionId tid, Tuple t, boolean inserted) throws DbException {
+    	BufferPool bp = Database.getBufferPool();
+    	PageId pid = t.getRecordId().getPageId();
+    	int slot = t.getRecordId().getTupleNumber();
+    	while (true) {
+    		HeapPage page;
+    		try {
+    			page = (HeapPage) bp.getPageForTuples(null, pid, Permissions.READ_WRITE, null);
+    		} catch (TransactionAbortedException e) {
+    			// nothing is locked on behalf of no transaction
+    			throw new DbException("undoTupleChange: " + e);
+    		}
+    		synchronized (page) {
+    			if (!bp.isCached(page)) {
+    				continue;
+    			}
+    			if (inserted) {
+    				if (page.isSlotUsed(slot)) {
+    					page.deleteTuple(page.getTuple(slot));
+    				}
+    			} else if (!page.isSlotUsed(slot)) {
+    				page.insertTuple(t, slot);
+    			}
+    			page.markDirty(true, tid);
+    			bp.tupleUndone(tid, t);
+    			return;
+    		}
+    	}
     }
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
-    	return new HeapFileIterator(tid);	
+    	return new HeapFileIterator(tid, null, null);	
+    }
+
+    /**
+     * Returns an iterator over the tuples of the pages that may hold tuples
+     * satisfying all of the given predicates, according to the zone map.
+     * Pages that cannot are skipped without being read. The iterator may
+     * still return tuples that do not satisfy the predicates.
+     *
+     * @see SeqScan#addPredicate
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> predicates) {
+    	return new HeapFileIterator(tid, predicates, null);
+    }
+
+    /**
+     * Returns an iterator like {@link #iterator(TransactionId, List)} whose
+     * tuples only need to have the given fields set; the others may be
+     * null. Either argument may be null.
+     *
+     * @see TuplePage#iterator(int[])
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> predicates, int[] columns) {
+    	return new HeapFileIterator(tid, predicates, columns);
     }
     
     private class HeapFileIterator implements DbFileIterator {
     	private int pageNo;
     	private Iterator<Tuple> tuplesInPage;
     	private TransactionId tid;
+    	private final List<Predicate> predicates;
+    	private final int[] columns;
+    	// the frames the scan reads through if the table is large, or null
+    	private BufferRing ring;
+    	// prefetches the pages after the current one; made by open()
+    	private ReadAhead readAhead;
     	
-        public HeapFileIterator(TransactionId tid) {
+        public HeapFileIterator(TransactionId tid, List<Predicate> predicates, int[] columns) {
             this.tid = tid;
+            this.predicates = predicates;
+            this.columns = columns;
+        }
+
+        /**
+         * @return the first page from pageNo on that may hold a matching
+         *         tuple, or numPages() if there is none.
+         */
+        private int nextPage(int pageNo) {
+        	while (pageNo < numPages() && predicates != null
+        			&& !zoneMap.mayMatch(pageNo, predicates)) {
+        		pageNo++;
+        	}
+        	return pageNo;
         }
         
     	public Iterator<Tuple> getTuplesInPage(HeapPageId pid) throws TransactionAbortedException, DbException {
-    		HeapPage page = (HeapPage) Database.getBufferPool().getPage(this.tid, pid, Permissions.READ_ONLY);
-            return page.iterator();
+    		if (readAhead != null) {
+    			readAhead.pageRequested(pid.getPageNumber());
+    		}
+    		BufferPool bp = Database.getBufferPool();
+    		if (bp.locksTuples(getId()) && !bp.isSnapshot(tid)) {
+    			return lockTuplesInPage(pid);
+    		}
+    		TuplePage page = (TuplePage) Database.getBufferPool().getPage(this.tid, pid, Permissions.READ_ONLY, ring);
+            return columns == null ? page.iterator() : page.iterator(columns);
         }
     	
+    	/**
+    	 * Lock each tuple of page pid shared, and return them as they are
+    	 * once all are locked. A free slot that is locked may be one whose
+    	 * tuple a transaction deleted and will put back if it aborts, so it
+    	 * is locked too; its tuple is returned if it is back by then.
+    	 */
+    	private Iterator<Tuple> lockTuplesInPage(HeapPageId pid) throws TransactionAbortedException, DbException {
+    		BufferPool bp = Database.getBufferPool();
+    		HeapPage page = (HeapPage) bp.getPageForTuples(tid, pid, Permissions.READ_ONLY, ring);
+    		ArrayList<RecordId> rids = new ArrayList<RecordId>();
+    		synchronized (page) {
+    			for (int i = 0; i < page.numSlots; i++) {
+    				RecordId rid = new RecordId(pid, i);
+    				if (page.isSlotUsed(i) || bp.isTupleLocked(rid)) {
+    					rids.add(rid);
+    				}
+    			}
+    		}
+    		for (RecordId rid : rids) {
+    			bp.lockTuple(tid, rid, Permissions.READ_ONLY);
+    		}
+    		while (true) {
+    			synchronized (page) {
+    				if (bp.isCached(page)) {
+    					ArrayList<Tuple> tuples = new ArrayList<Tuple>(rids.size());
+    					for (RecordId rid : rids) {
+    						if (page.isSlotUsed(rid.getTupleNumber())) {
+    							tuples.add(page.getTuple(rid.getTupleNumber()));
+    						}
+    					}
+    					return tuples.iterator();
+    				}
+    			}
+    			page = (HeapPage) bp.getPageForTuples(tid, pid, Permissions.READ_ONLY, ring);
+    		}
+    	}
+
     	@Override
 		public void open() throws DbException, TransactionAbortedException{
-    		pageNo = 0;
-    		HeapPageId pid = new HeapPageId(getId(), pageNo);
-			tuplesInPage = getTuplesInPage(pid);
+    		if (ring == null) {
+    			ring = Database.getBufferPool().bulkReadRing(getId(), numPages());
+    		}
+    		if (readAhead != null) {
+    			readAhead.cancel();
+    			readAhead = null;
+    		}
+    		if (Database.getBufferPool().isReadAheadEnabled()) {
+    			readAhead = new ReadAhead(ring) {
+    				PageId pageId(int pageNo) {
+    					return new HeapPageId(getId(), pageNo);
+    				}
+
+    				int lastPageNo() {
+    					return numPages() - 1;
+    				}
+    			};
+    		}
+    		pageNo = nextPage(0);
+    		if (pageNo < numPages()) {
+    			HeapPageId pid = new HeapPageId(getId(), pageNo);
+    			tuplesInPage = getTuplesInPage(pid);
+    		} else {
+    			tuplesInPage = Collections.<Tuple>emptyIterator();
+    		}
 		}
     	
     	@Override
@@ -186,15 +633,18 @@ public class HeapFile implements DbFile {
                 return true;
             }
     		
-    		// Move to next page.
-            if (pageNo < numPages() - 1) {
-            	pageNo++;
-                HeapPageId pid = new HeapPageId(getId(), pageNo);
-                tuplesInPage = getTuplesInPage(pid);
-                return tuplesInPage.hasNext();
-            } else {
-            	return false;
-            }
+    		// Move to the next page with tuples.
+    		while (!tuplesInPage.hasNext()) {
+    			int next = nextPage(pageNo + 1);
+    			if (next >= numPages()) {
+    				releaseRing();
+    				return false;
+    			}
+    			pageNo = next;
+    			HeapPageId pid = new HeapPageId(getId(), pageNo);
+    			tuplesInPage = getTuplesInPage(pid);
+    		}
+    		return true;
     	}
     	
     	@Override
@@ -215,6 +665,17 @@ public class HeapFile implements DbFile {
         public void close() {
         	pageNo = 0;
             tuplesInPage = null;
+            releaseRing();
+        }
+
+        private void releaseRing() {
+        	if (readAhead != null) {
+        		readAhead.cancel();
+        	}
+        	if (ring != null) {
+        		Database.getBufferPool().releaseRing(ring);
+        		ring = null;
+        	}
         }
     }
     
@@ -2,30 +2,42 @@ package simpledb;
 
 import java.util.*;
 
-import static org.junit.Assume.assumeNotNull;
-
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * When the tuples of a table are locked one by one, several transactions
+ * may change a page at once; the methods that read or change its header
+ * and slots as a whole are synchronized, and callers that need several
+ * of them to see the same page hold its monitor around them.
  *
  * @see HeapFile
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements TuplePage {
 
     final HeapPageId pid;
     final TupleDesc td;    
     final int numSlots;
     
     byte header[];    
+    // The page as it was read. Tuples are decoded from it when they are
+    // asked for, so it is never modified.
+    final byte[] raw;
+    // Tuples inserted since the page was read, or null if there are none.
     Tuple tuples[];
     byte[] oldData;
     int numEmptySlots;
     boolean m_dirty;
     TransactionId m_tid;
+    // The HeapFile the page belongs to, whose free space map and zone map
+    // are kept up to date; null if the table is not a HeapFile or the page
+    // is not attached to it.
+    final HeapFile file;
     private final Byte oldDataLock=new Byte((byte)0);
 
     /**
@@ -40,37 +52,60 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The bytes are copied, and tuples are only decoded from the copy when
+     * {@link #iterator} returns them. Likewise a field of a tuple is only
+     * parsed when {@link Tuple#getField} asks for it.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from the bytes between the position and the limit of
+     * a buffer, in the format described above. Used to read pages out of a
+     * memory-mapped file without an intermediate byte[]; the buffer's
+     * position is not changed.
+     *
+     * @see HeapFile#isMemoryMapped
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, data, true);
+    }
+
+    /**
+     * Create a HeapPage from the bytes between the position and the limit of
+     * a buffer, as above. A page that is not attached to its HeapFile may be
+     * changed without updating the file's free space map and zone map; the
+     * BufferPool uses such pages to work out older versions of a page.
+     */
+    HeapPage(HeapPageId id, ByteBuffer data, boolean attached) throws IOException {
         this.pid = id;
-        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        DbFile dbFile = Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.td = dbFile.getTupleDesc();
+        this.file = attached && dbFile instanceof HeapFile ? (HeapFile) dbFile : null;
         this.numSlots = getNumTuples();
-        this.numEmptySlots = 0;
         markDirty(false, null);
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));        
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i = 0; i < header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i = 0; i < tuples.length; i++) {
-            	tuples[i] = readNextTuple(dis, i);
-            	if (!this.isSlotUsed(i)) {
-            		numEmptySlots++;
-        		}
-            }                
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+
+        this.raw = new byte[BufferPool.getPageSize()];
+        ByteBuffer src = data.duplicate();
+        src.get(raw, 0, Math.min(raw.length, src.remaining()));
+        header = Arrays.copyOf(raw, getHeaderSize());
+        this.numEmptySlots = 0;
+        for (int i = 0; i < numSlots; i++) {
+        	if (!this.isSlotUsed(i)) {
+        		numEmptySlots++;
+        	}
         }
-        dis.close();
 
-        setBeforeImage();
+        // the page has not been modified yet, so it is its own before image
+        synchronized(oldDataLock)
+        {
+        	oldData = raw;
+        }
     }
 
     /** Retrieve the number of tuples on this page.
@@ -106,10 +141,10 @@ public class HeapPage implements Page {
         return null;
     }
     
-    public void setBeforeImage() {
+    public synchronized void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        	oldData = getPageData().clone();
+        	oldData = getPageData();
         }
     }
 
@@ -121,37 +156,21 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * @return where the tuple in slot i starts in the page data.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i < td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
-
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
-        }
+    private int slotOffset(int i) {
+    	return header.length + i * td.getSize();
+    }
 
-        return t;
+    /**
+     * @return the tuple in a used slot, decoding it from the page data if it
+     *         was not inserted since the page was read.
+     */
+    Tuple getTuple(int i) {
+    	if (tuples != null && tuples[i] != null) {
+    		return tuples[i];
+    	}
+    	return new Tuple(td, raw, slotOffset(i), pid, i);
     }
 
     /**
@@ -165,65 +184,48 @@ public class HeapPage implements Page {
      * @see #HeapPage
      * @return A byte array correspond to the bytes of this page.
      */
-    public byte[] getPageData() {
+    public synchronized byte[] getPageData() {
         int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
+        int tupleSize = td.getSize();
+        byte[] out = new byte[len];
 
         // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
+        System.arraycopy(header, 0, out, 0, header.length);
 
-            // empty slot
+        // create the tuples; empty slots and the padding stay zero
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(tupleSize);
+        DataOutputStream dos = new DataOutputStream(baos);
+        for (int i=0; i<numSlots; i++) {
             if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                continue;
+            }
+            int offset = slotOffset(i);
 
-                }
+            // not modified since the page was read
+            if (tuples == null || tuples[i] == null) {
+                System.arraycopy(raw, offset, out, offset, tupleSize);
                 continue;
             }
 
-            // non-empty slot
+            baos.reset();
             for (int j=0; j<td.numFields(); j++) {
                 Field f = tuples[i].getField(j);
                 try {
-                    f.serialize(dos);
-                
+                    td.serializeField(j, f, dos);
                 } catch (IOException e) {
+                    // this really shouldn't happen
                     e.printStackTrace();
                 }
             }
+            try {
+                dos.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            System.arraycopy(baos.toByteArray(), 0, out, offset, Math.min(baos.size(), tupleSize));
         }
 
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return baos.toByteArray();
+        return out;
     }
 
     /**
@@ -247,16 +249,19 @@ public class HeapPage implements Page {
      *         already empty.
      * @param t The tuple to delete
      */
-    public void deleteTuple(Tuple t) throws DbException {
+    public synchronized void deleteTuple(Tuple t) throws DbException {
     	int tupleNo = t.getRecordId().getTupleNumber();
     	
-        if(t.getRecordId().getPageId() != pid)
+        if(!pid.equals(t.getRecordId().getPageId()))
         	throw new DbException("deleteTuple: pid in the tuple is not matched");  
         if(!isSlotUsed(tupleNo))
         	throw new DbException("deleteTuple: the tuple slot is already empty");
         
-        tuples[tupleNo] = null;
+        if (tuples != null)
+        	tuples[tupleNo] = null;
         markSlotUsed(tupleNo, false);
+        if (file != null)
+        	file.getFreeSpaceMap().update(pid.getPageNumber(), numEmptySlots);
     }
 
     /**
@@ -266,28 +271,51 @@ public class HeapPage implements Page {
      *         is mismatch.
      * @param t The tuple to add.
      */
-    public void insertTuple(Tuple t) throws DbException {
+    public synchronized void insertTuple(Tuple t) throws DbException {
     	if (getNumEmptySlots() == 0)
     		throw new DbException("insertTuple: the page is full");
-    	if(!td.equals(t.getTupleDesc()))
-    		throw new DbException("insertTuple: TupleDesc is not matched");
-    	
     	for (int i = 0; i < numSlots; i++) {
     		if (!isSlotUsed(i)) {
-    			t.setRecordId(new RecordId(pid, i));
-    			tuples[i] = t;
-    			markDirty(true, m_tid);
-    			markSlotUsed(i, true);
-    			break;
+    			insertTuple(t, i);
+    			return;
     		}
     	}
     }
 
+    /**
+     * Adds the specified tuple to the page in slot i, which must be empty.
+     * Used where the slot is chosen by its tuple lock, and to put a deleted
+     * tuple back where it was.
+     * @throws DbException if the slot is used or tupledesc is mismatch.
+     */
+    synchronized void insertTuple(Tuple t, int i) throws DbException {
+    	if (isSlotUsed(i))
+    		throw new DbException("insertTuple: slot " + i + " is already used");
+    	if(!td.equals(t.getTupleDesc()))
+    		throw new DbException("insertTuple: TupleDesc is not matched");
+    	try {
+    		td.encodeFields(t);
+    	} catch (IOException e) {
+    		throw new DbException("insertTuple: can't encode tuple: " + e.getMessage());
+    	}
+    	
+    	t.setRecordId(new RecordId(pid, i));
+    	if (tuples == null)
+    		tuples = new Tuple[numSlots];
+    	tuples[i] = t;
+    	markDirty(true, m_tid);
+    	markSlotUsed(i, true);
+    	if (file != null) {
+    		file.getFreeSpaceMap().update(pid.getPageNumber(), numEmptySlots);
+    		file.getZoneMap().tupleInserted(this, t);
+    	}
+    }
+
     /**
      * Marks this page as dirty/not dirty and record that transaction
      * that did the dirtying
      */
-    public void markDirty(boolean dirty, TransactionId tid) {
+    public synchronized void markDirty(boolean dirty, TransactionId tid) {
         if (dirty)
         {
             m_dirty = dirty;
@@ -303,7 +331,7 @@ public class HeapPage implements Page {
     /**
      * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
      */
-    public TransactionId isDirty() {
+    public synchronized TransactionId isDirty() {
         return m_tid;      
     }
 
@@ -314,6 +342,17 @@ public class HeapPage implements Page {
         return numEmptySlots;
     }
 
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getFreeSpace() {
+        return numEmptySlots;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        return numEmptySlots > 0;
+    }
+
     /**
      * Returns true if associated slot on this page is filled.
      */
@@ -360,10 +399,17 @@ public class HeapPage implements Page {
                 }
     			while(!isSlotUsed(idx)) idx++;
                 pos++;
-                return tuples[idx++];
+                return getTuple(idx++);
     		}    		
     	};
     }
 
-}
+    /**
+     * Tuples are decoded field by field as they are read, so this is the
+     * same as {@link #iterator()}.
+     */
+    public Iterator<Tuple> iterator(int[] columns) {
+        return iterator();
+    }
 
+}
@@ -39,7 +39,9 @@ public class HeapPageId implements PageId {
      * @see BufferPool
      */
     public int hashCode() {
-    	return ((this.tableId << 20) & 0xFFFFF000) + (this.pgNo & 0x00000FFF); 
+    	// Use every bit of the page number; masking it to 12 bits made all
+    	// pages past 4096 of a table collide in the BufferPool's hash maps.
+    	return 31 * this.tableId + this.pgNo;
     }
 
     /**
@@ -48,7 +48,7 @@ public class IntegerAggregator implements Aggregator {
      */
     public void mergeTupleIntoGroup(Tuple tup) {
     	Field gField = m_gbField == NO_GROUPING ? null : tup.getField(m_gbField);
-    	Integer aValue = ((IntField)tup.getField(m_aField)).getValue();
+    	int aValue = tup.getInt(m_aField);
     	Integer newValue = 0;
     	boolean bHasKey = m_gVal2agVal.containsKey(gField);
         switch (m_op) {
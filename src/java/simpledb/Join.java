@@ -14,6 +14,8 @@ public class Join extends Operator {
     OpIterator[] m_children;
     Tuple m_curT1;
     Tuple m_curT2;
+    // the merged TupleDesc, made once as every output tuple refers to it
+    TupleDesc m_td;
     
     /**
      * Constructor. Accepts two children to join and the predicate to join them
@@ -62,7 +64,9 @@ public class Join extends Operator {
      *      implementation logic.
      */
     public TupleDesc getTupleDesc() {
-        return TupleDesc.merge(m_child1.getTupleDesc(), m_child2.getTupleDesc());
+        if (m_td == null)
+            m_td = TupleDesc.merge(m_child1.getTupleDesc(), m_child2.getTupleDesc());
+        return m_td;
     }
 
     public void open() throws DbException, NoSuchElementException,
@@ -129,18 +133,7 @@ public class Join extends Operator {
 		} while (!m_predicate.filter(m_curT1, m_curT2));
         
         //join
-    	Tuple ret_tuple = new Tuple(getTupleDesc());
-    	int filedNum = 0;
-    	for (int i = 0; i < m_curT1.getTupleDesc().numFields(); i++) {
-    		ret_tuple.setField(filedNum, m_curT1.getField(i));
-    		filedNum++;
-    	}
-    	for (int i = 0; i < m_curT2.getTupleDesc().numFields(); i++) {
-    		ret_tuple.setField(filedNum, m_curT2.getField(i));
-    		filedNum++;
-    	}
-    	System.out.printf("%s\n", ret_tuple.toString());
-        return ret_tuple;
+        return Tuple.merge(getTupleDesc(), m_curT1, m_curT2);
     }
 
     @Override
@@ -42,6 +42,10 @@ public class JoinPredicate implements Serializable {
      * @return true if the tuples satisfy the predicate.
      */
     public boolean filter(Tuple t1, Tuple t2) {
+        if (t1.getTupleDesc().getFieldType(m_field1) == Type.INT_TYPE
+                && t2.getTupleDesc().getFieldType(m_field2) == Type.INT_TYPE) {
+            return IntField.compare(m_op, t1.getInt(m_field1), t2.getInt(m_field2));
+        }
         return t1.getField(m_field1).compare(m_op, t2.getField(m_field2));
     }
     
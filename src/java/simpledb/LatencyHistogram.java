@@ -0,0 +1,118 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts durations in buckets of powers of two
+ * nanoseconds, so that recording one is a couple of atomic increments and
+ * percentiles are known to within a factor of two. It is safe to record
+ * from many threads at once.
+ */
+public class LatencyHistogram {
+
+    // bucket i counts durations d with 2^(i-1) <= d < 2^i; bucket 0 counts 0
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /** Record a duration of nanos nanoseconds. */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /** Forget every duration recorded so far. */
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * @return a copy of the histogram as it is now. Durations recorded while
+     *         it is taken may be partly included.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, totalNanos.get(), maxNanos.get());
+    }
+
+    /**
+     * The durations recorded by a LatencyHistogram up to some point.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        Snapshot(long[] counts, long totalNanos, long maxNanos) {
+            this.counts = counts;
+            long n = 0;
+            for (long c : counts) {
+                n += c;
+            }
+            this.count = n;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        /** @return the number of durations recorded */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return the sum of the durations recorded */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /** @return the mean duration, or 0 if none was recorded */
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /** @return the longest duration recorded */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getP50Nanos() {
+            return percentileNanos(50);
+        }
+
+        public long getP99Nanos() {
+            return percentileNanos(99);
+        }
+
+        /**
+         * @return a duration at least as long as p percent of the durations
+         *         recorded and at most twice as long as the longest of them,
+         *         or 0 if none was recorded.
+         */
+        public long percentileNanos(double p) {
+            long rank = (long) Math.ceil(count * p / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return i == 0 ? 0 : Math.min(maxNanos, (1L << i) - 1);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LockManager keeps the locks of a BufferPool. Locks are taken on tables,
+ * pages and tuples, each kept under its own key: the table's
+ * {@link #tableKey}, the page's PageId or the tuple's RecordId. A
+ * transaction takes a shared (S) lock to read and an exclusive (X) lock to
+ * change, and before locking a page or a tuple takes an intention lock (IS
+ * or IX) on what contains it, so that a lock on a table or a page only has
+ * to be checked against the locks on it, not on everything inside it.
+ * A transaction that already holds a lock can strengthen it, e.g. from
+ * S to X. Locks are held until the transaction completes, or until it
+ * gives one back with {@link BufferPool#releasePage}.
+ * <p>
+ * Each key has its own lock object, found in a concurrent table, so
+ * taking a lock nobody else wants only synchronizes on that lock, and
+ * asking again for a lock a transaction holds does not synchronize at
+ * all. Transactions that have to wait are queued and granted the lock in
+ * the order they asked for it, except that an upgrade goes ahead of the
+ * queue, since the upgrader already holds the lock.
+ * <p>
+ * Waiting transactions form a waits-for graph: a waiter waits for the
+ * holders of the lock whose modes conflict with its request, and for the
+ * conflicting requests queued ahead of it. Whenever the edges of a waiter
+ * change, the graph is searched for a cycle through it, and if there is
+ * one the youngest transaction of the cycle is aborted at once. A timeout,
+ * off by default, can be set as well for waits the graph does not see,
+ * such as a lock holder that blocks on something other than a lock.
+ * <p>
+ * Monitors are only ever taken in the order lock, then the graph, then a
+ * request, on which its transaction waits.
+ *
+ * @see BufferPool#getPage
+ */
+public class LockManager {
+
+    /**
+     * The modes a lock is held in. IS and IX announce shared and exclusive
+     * locks below, and SIX is S and IX at once.
+     */
+    public enum Mode {
+        IS, IX, S, SIX, X;
+
+        private static final boolean[][] COMPATIBLE = {
+            //          IS     IX     S      SIX    X
+            /* IS  */ { true,  true,  true,  true,  false },
+            /* IX  */ { true,  true,  false, false, false },
+            /* S   */ { true,  false, true,  false, false },
+            /* SIX */ { true,  false, false, false, false },
+            /* X   */ { false, false, false, false, false },
+        };
+
+        /** @return S for reading or X for changing */
+        public static Mode of(boolean exclusive) {
+            return exclusive ? X : S;
+        }
+
+        /** @return whether two transactions can hold this mode and other at once */
+        public boolean compatibleWith(Mode other) {
+            return COMPATIBLE[ordinal()][other.ordinal()];
+        }
+
+        /** @return the weakest mode that gives the rights of both this and other */
+        public Mode join(Mode other) {
+            if ((this == IX && other == S) || (this == S && other == IX)) {
+                return SIX;
+            }
+            return ordinal() >= other.ordinal() ? this : other;
+        }
+
+        /** @return whether this mode gives every right other does */
+        public boolean covers(Mode other) {
+            return join(other) == this;
+        }
+
+        /** @return the intention lock to take on what contains a lock of this mode */
+        public Mode intention() {
+            return this == IS || this == S ? IS : IX;
+        }
+    }
+
+    /** The key of a table's lock. */
+    private static final class TableKey {
+        final int tableId;
+
+        TableKey(int tableId) {
+            this.tableId = tableId;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof TableKey && ((TableKey) o).tableId == tableId;
+        }
+
+        public int hashCode() {
+            return tableId;
+        }
+
+        public String toString() {
+            return "table " + tableId;
+        }
+    }
+
+    /** @return the key the lock of table tableId is kept under */
+    public static Object tableKey(int tableId) {
+        return new TableKey(tableId);
+    }
+
+    /**
+     * A transaction waiting for a lock. Its thread waits on its monitor.
+     */
+    private static class Request {
+        final TransactionId tid;
+        // the mode it will hold once granted, including any it holds now
+        final Mode mode;
+        volatile boolean granted;
+        // chosen to break a deadlock
+        volatile boolean aborted;
+        // the transactions it waits for; guarded by the graph
+        Set<TransactionId> blockers = Collections.emptySet();
+
+        Request(TransactionId tid, Mode mode) {
+            this.tid = tid;
+            this.mode = mode;
+        }
+
+        synchronized void wake() {
+            notifyAll();
+        }
+    }
+
+    /**
+     * The lock of one key: who holds it in what mode and who waits for it.
+     * Guarded by its own monitor.
+     */
+    private static class Lock {
+        final Object key;
+        final HashMap<TransactionId, Mode> holders = new HashMap<TransactionId, Mode>(4);
+        final ArrayDeque<Request> waiters = new ArrayDeque<Request>();
+        // set once the lock is out of the table: take a new one
+        boolean discarded;
+
+        Lock(Object key) {
+            this.key = key;
+        }
+
+        /** @return whether tid could be granted mode now */
+        boolean compatible(TransactionId tid, Mode mode) {
+            for (Map.Entry<TransactionId, Mode> e : holders.entrySet()) {
+                if (!e.getKey().equals(tid) && !mode.compatibleWith(e.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** @return the transactions r, queued here, waits for */
+        Set<TransactionId> blockersOf(Request r) {
+            HashSet<TransactionId> blockers = new HashSet<TransactionId>();
+            for (Map.Entry<TransactionId, Mode> e : holders.entrySet()) {
+                if (!r.mode.compatibleWith(e.getValue())) {
+                    blockers.add(e.getKey());
+                }
+            }
+            // waiters are granted in order, so r waits for every one ahead
+            // of it, even those it could share the lock with
+            for (Request q : waiters) {
+                if (q == r) {
+                    break;
+                }
+                blockers.add(q.tid);
+            }
+            blockers.remove(r.tid);
+            return blockers;
+        }
+    }
+
+    private final ConcurrentHashMap<Object, Lock> locks = new ConcurrentHashMap<Object, Lock>();
+    // the locks each transaction holds, and in what mode
+    private final ConcurrentHashMap<TransactionId, ConcurrentHashMap<Object, Mode>> held =
+            new ConcurrentHashMap<TransactionId, ConcurrentHashMap<Object, Mode>>();
+    // the waits-for graph: the requests each transaction waits on
+    private final HashMap<TransactionId, List<Request>> graph = new HashMap<TransactionId, List<Request>>();
+    private volatile long timeoutMillis;
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder deadlocks = new LongAdder();
+    private final LongAdder escalations = new LongAdder();
+    private final LatencyHistogram detection = new LatencyHistogram();
+
+    /** @return how long a transaction waits for a lock before it aborts, or 0 for ever */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Set how long a transaction waits for a lock before it aborts, or 0 to
+     * wait until it is granted the lock or aborted to break a deadlock.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("the timeout must not be negative");
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /** @return the number of times a transaction had to wait for a lock */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    /** @return the number of deadlocks broken by aborting a transaction */
+    public long getDeadlocks() {
+        return deadlocks.sum();
+    }
+
+    /** @return the number of times {@link #escalate} replaced locks */
+    public long getEscalations() {
+        return escalations.sum();
+    }
+
+    /**
+     * @return how long it took from the wait that closed each deadlock to
+     *         the choice of the transaction to abort
+     */
+    public LatencyHistogram.Snapshot getDetectionLatency() {
+        return detection.snapshot();
+    }
+
+    private Lock lockOf(Object key) {
+        Lock lock = locks.get(key);
+        if (lock == null) {
+            Lock created = new Lock(key);
+            lock = locks.putIfAbsent(key, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    private ConcurrentHashMap<Object, Mode> locksOf(TransactionId tid) {
+        ConcurrentHashMap<Object, Mode> mine = held.get(tid);
+        if (mine == null) {
+            ConcurrentHashMap<Object, Mode> created = new ConcurrentHashMap<Object, Mode>();
+            mine = held.putIfAbsent(tid, created);
+            if (mine == null) {
+                mine = created;
+            }
+        }
+        return mine;
+    }
+
+    /** Grant tid lock in mode; the caller holds lock's monitor. */
+    private void grant(Lock lock, TransactionId tid, Mode mode) {
+        lock.holders.put(tid, mode);
+        locksOf(tid).put(lock.key, mode);
+    }
+
+    /**
+     * Lock page pid for tid, shared or exclusively, as {@link
+     * #acquire(TransactionId, Object, Mode)} does with S or X.
+     */
+    public void acquire(TransactionId tid, PageId pid, boolean exclusive)
+            throws TransactionAbortedException {
+        acquire(tid, pid, Mode.of(exclusive));
+    }
+
+    /**
+     * Lock key for tid in mode, waiting for the transactions that hold
+     * conflicting locks or asked for one first. If tid holds the lock in
+     * another mode already, it ends up holding it in the weakest mode that
+     * covers both. Does nothing if tid holds a mode that covers mode.
+     *
+     * @throws TransactionAbortedException if tid was aborted to break a
+     *         deadlock, waited longer than the timeout or was interrupted;
+     *         it still holds the locks it held
+     */
+    public void acquire(TransactionId tid, Object key, Mode mode)
+            throws TransactionAbortedException {
+        Mode current = heldMode(tid, key);
+        if (current != null && current.covers(mode)) {
+            return;
+        }
+        Lock lock;
+        Request r;
+        while (true) {
+            lock = lockOf(key);
+            synchronized (lock) {
+                if (lock.discarded) {
+                    continue;
+                }
+                Mode holding = lock.holders.get(tid);
+                Mode wanted = holding == null ? mode : holding.join(mode);
+                if (wanted == holding) {
+                    return;
+                }
+                boolean upgrade = holding != null;
+                if (lock.compatible(tid, wanted) && (upgrade || lock.waiters.isEmpty())) {
+                    grant(lock, tid, wanted);
+                    return;
+                }
+                r = new Request(tid, wanted);
+                if (upgrade) {
+                    lock.waiters.addFirst(r);
+                } else {
+                    lock.waiters.addLast(r);
+                }
+                waits.increment();
+                synchronized (graph) {
+                    List<Request> requests = graph.get(tid);
+                    if (requests == null) {
+                        requests = new ArrayList<Request>(1);
+                        graph.put(tid, requests);
+                    }
+                    requests.add(r);
+                }
+                waitsChanged(lock);
+                break;
+            }
+        }
+        await(lock, r);
+    }
+
+    /**
+     * Lock key for tid in mode if that can be done without waiting.
+     *
+     * @return whether tid now holds the lock in mode
+     */
+    public boolean tryAcquire(TransactionId tid, Object key, Mode mode) {
+        Mode current = heldMode(tid, key);
+        if (current != null && current.covers(mode)) {
+            return true;
+        }
+        while (true) {
+            Lock lock = lockOf(key);
+            synchronized (lock) {
+                if (lock.discarded) {
+                    continue;
+                }
+                Mode holding = lock.holders.get(tid);
+                Mode wanted = holding == null ? mode : holding.join(mode);
+                if (lock.compatible(tid, wanted) && (holding != null || lock.waiters.isEmpty())) {
+                    grant(lock, tid, wanted);
+                    return true;
+                }
+                discardIfUnused(lock);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Wait until r, queued on lock, is granted. If it is not, r leaves the
+     * queue, which may let those behind it go ahead.
+     */
+    private void await(Lock lock, Request r) throws TransactionAbortedException {
+        long timeout = timeoutMillis;
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            synchronized (r) {
+                while (!r.granted && !r.aborted) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (timeout > 0 && left <= 0) {
+                        break;
+                    }
+                    try {
+                        r.wait(timeout > 0 ? left : 0);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        } finally {
+            synchronized (lock) {
+                if (!r.granted) {
+                    lock.waiters.remove(r);
+                    dequeued(r);
+                    grantWaiters(lock);
+                    discardIfUnused(lock);
+                }
+            }
+        }
+        if (!r.granted) {
+            throw new TransactionAbortedException();
+        }
+    }
+
+    /**
+     * Grant lock to waiters, first come first served, and update the edges
+     * of those left waiting. The caller holds lock's monitor.
+     */
+    private void grantWaiters(Lock lock) {
+        while (!lock.waiters.isEmpty()) {
+            Request r = lock.waiters.peekFirst();
+            if (!lock.compatible(r.tid, r.mode)) {
+                break;
+            }
+            lock.waiters.pollFirst();
+            grant(lock, r.tid, r.mode);
+            r.granted = true;
+            dequeued(r);
+            r.wake();
+        }
+        waitsChanged(lock);
+    }
+
+    /** r no longer waits. The caller holds its lock's monitor. */
+    private void dequeued(Request r) {
+        synchronized (graph) {
+            List<Request> requests = graph.get(r.tid);
+            if (requests != null) {
+                requests.remove(r);
+                if (requests.isEmpty()) {
+                    graph.remove(r.tid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bring the edges of the waiters of lock up to date, and break any
+     * deadlock through a waiter whose edges changed. The caller holds
+     * lock's monitor.
+     */
+    private void waitsChanged(Lock lock) {
+        if (lock.waiters.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        synchronized (graph) {
+            for (Request r : lock.waiters) {
+                Set<TransactionId> blockers = lock.blockersOf(r);
+                if (r.aborted || blockers.equals(r.blockers)) {
+                    continue;
+                }
+                r.blockers = blockers;
+                ArrayList<TransactionId> cycle = new ArrayList<TransactionId>();
+                if (findCycle(r.tid, r.tid, cycle, new HashSet<TransactionId>())) {
+                    abortYoungest(cycle);
+                    detection.record(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+
+    /**
+     * Depth-first search of the waits-for graph for a path from at back to
+     * start, which is left in path. The caller holds the graph's monitor.
+     */
+    private boolean findCycle(TransactionId at, TransactionId start, ArrayList<TransactionId> path,
+            HashSet<TransactionId> visited) {
+        List<Request> requests = graph.get(at);
+        if (requests == null) {
+            return false;
+        }
+        path.add(at);
+        for (Request r : requests) {
+            if (r.aborted) {
+                continue;
+            }
+            for (TransactionId next : r.blockers) {
+                if (next.equals(start)) {
+                    return true;
+                }
+                if (visited.add(next) && findCycle(next, start, path, visited)) {
+                    return true;
+                }
+            }
+        }
+        path.remove(path.size() - 1);
+        return false;
+    }
+
+    /**
+     * Abort the requests of the youngest transaction of cycle. The caller
+     * holds the graph's monitor.
+     */
+    private void abortYoungest(List<TransactionId> cycle) {
+        TransactionId victim = cycle.get(0);
+        for (TransactionId tid : cycle) {
+            if (tid.getId() > victim.getId()) {
+                victim = tid;
+            }
+        }
+        deadlocks.increment();
+        for (Request r : graph.get(victim)) {
+            r.aborted = true;
+            r.wake();
+        }
+    }
+
+    /** @return the mode tid holds the lock on key in, or null if it holds none */
+    public Mode heldMode(TransactionId tid, Object key) {
+        ConcurrentHashMap<Object, Mode> mine = held.get(tid);
+        return mine == null ? null : mine.get(key);
+    }
+
+    /** @return whether tid holds a lock on key, in any mode */
+    public boolean holdsLock(TransactionId tid, Object key) {
+        return heldMode(tid, key) != null;
+    }
+
+    /** @return whether tid holds an exclusive lock on key */
+    public boolean holdsExclusive(TransactionId tid, Object key) {
+        return heldMode(tid, key) == Mode.X;
+    }
+
+    /** @return whether any transaction holds or waits for a lock on key */
+    public boolean isLocked(Object key) {
+        return locks.containsKey(key);
+    }
+
+    /** @return the pages tid holds a lock on */
+    public Set<PageId> lockedPages(TransactionId tid) {
+        ConcurrentHashMap<Object, Mode> mine = held.get(tid);
+        HashSet<PageId> pages = new HashSet<PageId>();
+        if (mine != null) {
+            for (Object key : mine.keySet()) {
+                if (key instanceof PageId) {
+                    pages.add((PageId) key);
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * @return whether tid holds any lock, which a transaction that changed
+     *         something does until it completes
+     */
+    public boolean holdsAnyLock(TransactionId tid) {
+        ConcurrentHashMap<Object, Mode> mine = held.get(tid);
+        return mine != null && !mine.isEmpty();
+    }
+
+    /** @return the keys of the locks tid holds */
+    public Set<Object> heldKeys(TransactionId tid) {
+        ConcurrentHashMap<Object, Mode> mine = held.get(tid);
+        if (mine == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<Object>(mine.keySet());
+    }
+
+    /**
+     * Replace tid's locks on the keys of fine with one lock on coarse, the
+     * key of what contains them, in mode, if tid can lock coarse without
+     * waiting; escalating does not wait, so that it never adds a wait that
+     * could deadlock, and the caller tries again later.
+     *
+     * @return whether tid now holds coarse in mode and none of fine
+     */
+    public boolean escalate(TransactionId tid, Object coarse, Mode mode, Collection<?> fine) {
+        if (!tryAcquire(tid, coarse, mode)) {
+            return false;
+        }
+        for (Object key : fine) {
+            release(tid, key);
+        }
+        escalations.increment();
+        return true;
+    }
+
+    /**
+     * Give back tid's lock on key, if it holds one, and grant it to the
+     * transactions waiting for it that can have it now.
+     */
+    public void release(TransactionId tid, Object key) {
+        ConcurrentHashMap<Object, Mode> mine = held.get(tid);
+        if (mine != null) {
+            mine.remove(key);
+        }
+        releaseLock(tid, key);
+    }
+
+    /** Give back every lock tid holds. */
+    public void releaseAll(TransactionId tid) {
+        ConcurrentHashMap<Object, Mode> mine = held.remove(tid);
+        if (mine == null) {
+            return;
+        }
+        for (Object key : mine.keySet()) {
+            releaseLock(tid, key);
+        }
+    }
+
+    private void releaseLock(TransactionId tid, Object key) {
+        Lock lock = locks.get(key);
+        if (lock == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (lock.holders.remove(tid) != null) {
+                grantWaiters(lock);
+                discardIfUnused(lock);
+            }
+        }
+    }
+
+    /**
+     * A lock nobody holds or waits for leaves the table. The caller holds
+     * lock's monitor.
+     */
+    private void discardIfUnused(Lock lock) {
+        if (lock.holders.isEmpty() && lock.waiters.isEmpty()) {
+            lock.discarded = true;
+            locks.remove(lock.key, lock);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package simpledb;
 import java.util.Map;
 import java.util.Vector;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
@@ -271,6 +272,45 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /** Tell the scan of each table which of its fields the query reads, so that
+     *   files that store columns apart, like {@link PaxFile}, only decode those.
+     *   Scans are left to read every field if the select list has a *.
+     */
+    private void projectScans() {
+        HashSet<String> used = new HashSet<String>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.equals("null.*"))
+                return;
+            used.add(si.fname);
+        }
+        if (hasAgg) {
+            used.add(aggField);
+            used.add(groupByField);
+        }
+        if (hasOrderBy)
+            used.add(oByField);
+        for (LogicalFilterNode lf : filters)
+            used.add(lf.fieldQuantifiedName);
+        for (LogicalJoinNode lj : joins) {
+            used.add(lj.f1QuantifiedName);
+            used.add(lj.f2QuantifiedName);
+        }
+        for (OpIterator plan : subplanMap.values()) {
+            if (!(plan instanceof SeqScan))
+                continue;
+            TupleDesc td = plan.getTupleDesc();
+            ArrayList<Integer> fields = new ArrayList<Integer>();
+            for (int i = 0; i < td.numFields(); i++) {
+                if (used.contains(td.getFieldName(i)))
+                    fields.add(i);
+            }
+            int[] projection = new int[fields.size()];
+            for (int i = 0; i < projection.length; i++)
+                projection[i] = fields.get(i);
+            ((SeqScan) plan).setProjection(projection);
+        }
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link OpIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned OpIterator will run as a part of
@@ -305,6 +345,7 @@ public class LogicalPlan {
             filterSelectivities.put(table.alias, 1.0);
 
         }
+        projectScans();
 
         Iterator<LogicalFilterNode> filterIt = filters.iterator();        
         while (filterIt.hasNext()) {
@@ -334,6 +375,12 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
+            // let the scan skip pages that cannot match
+            OpIterator scan = subplan;
+            while (scan instanceof Filter)
+                scan = ((Filter) scan).getChildren()[0];
+            if (scan instanceof SeqScan)
+                ((SeqScan) scan).addPredicate(p);
             subplanMap.put(lf.tableAlias, new Filter(p, subplan));
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * LruEvictionPolicy evicts the least recently used page. The resident pages
+ * are kept in a doubly linked list indexed by a hash map, so adding, touching
+ * and removing a page as well as finding the next eviction victim are all
+ * constant time, however many pages the pool holds.
+ *
+ * @Threadsafe
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    private static class Node {
+        PageId pid;
+        Node prev;
+        Node next;
+
+        Node(PageId pid) {
+            this.pid = pid;
+        }
+    }
+
+    private final HashMap<PageId, Node> nodes;
+    // Sentinel: head.next is the most recently used page, head.prev the least.
+    private final Node head;
+
+    public LruEvictionPolicy() {
+        nodes = new HashMap<PageId, Node>();
+        head = new Node(null);
+        head.prev = head;
+        head.next = head;
+    }
+
+    /**
+     * Add a page as the most recently used one. Adding a page that is already
+     * in the list just touches it.
+     */
+    public synchronized void pageAdded(PageId pid) {
+        Node node = nodes.get(pid);
+        if (node != null) {
+            unlink(node);
+        } else {
+            node = new Node(pid);
+            nodes.put(pid, node);
+        }
+        linkFirst(node);
+    }
+
+    /**
+     * Mark a page as the most recently used one.
+     */
+    public synchronized boolean pageAccessed(PageId pid) {
+        Node node = nodes.get(pid);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        linkFirst(node);
+        return true;
+    }
+
+    public synchronized void pageRemoved(PageId pid, boolean evicted) {
+        Node node = nodes.remove(pid);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * @return the least recently used page, or null if the list is empty.
+     */
+    public synchronized PageId chooseVictim(PageId incoming) {
+        return head.prev == head ? null : head.prev.pid;
+    }
+
+    public void resize(int numPages) {
+        // LRU order does not depend on the number of frames
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return the resident pages, the most recently used first.
+     */
+    public synchronized List<PageId> residentPages() {
+        ArrayList<PageId> pages = new ArrayList<PageId>(nodes.size());
+        for (Node n = head.next; n != head; n = n.next) {
+            pages.add(n.pid);
+        }
+        return pages;
+    }
+
+    private void linkFirst(Node node) {
+        node.prev = head;
+        node.next = head.next;
+        head.next.prev = node;
+        head.next = node;
+    }
+
+    private void unlink(Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+}
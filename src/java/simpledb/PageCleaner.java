@@ -0,0 +1,57 @@
+package simpledb;
+
+import java.io.IOException;
+
+/**
+ * PageCleaner is a background thread that writes dirty pages of committed
+ * transactions to disk ahead of eviction, so that a getPage that misses
+ * finds a clean victim and does not wait for a write. Since a commit writes
+ * the pages its transaction dirtied, these are only pages dirtied again
+ * after the commit; pages of running transactions are left alone, as
+ * eviction leaves them. Every round it asks
+ * the BufferPool to clean up to batchSize pages, then sleeps long enough to
+ * keep to pagesPerSecond.
+ *
+ * @see BufferPool#startPageCleaner
+ */
+class PageCleaner extends Thread {
+
+    private final BufferPool pool;
+    private final int batchSize;
+    private final long intervalMillis;
+    private volatile boolean running = true;
+
+    PageCleaner(BufferPool pool, int pagesPerSecond, int batchSize) {
+        super("PageCleaner");
+        setDaemon(true);
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.intervalMillis = Math.max(1, 1000L * batchSize / pagesPerSecond);
+    }
+
+    public void run() {
+        while (running) {
+            try {
+                pool.cleanPages(batchSize);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                // woken up by shutdown
+            }
+        }
+    }
+
+    /** Stop the thread and wait for the round in progress, if any. */
+    void shutdown() {
+        running = false;
+        interrupt();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * PageFileChannel keeps one FileChannel open for the lifetime of a DbFile and
+ * reads and writes pages with positional I/O, so a page miss costs a single
+ * pread() instead of an open(), a seek, a read and a close(). Positional reads
+ * do not move a shared file pointer and are safe to issue from several
+ * threads at once.
+ * <p>
+ * Page bytes are read into a per-thread buffer that is reused across reads,
+ * see {@link #buffer}. The channel is opened lazily and reopened if it was
+ * closed with {@link #close}.
+ *
+ * @Threadsafe
+ */
+class PageFileChannel {
+
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>();
+
+    private final File file;
+    private RandomAccessFile raf;
+    private volatile FileChannel channel;
+
+    public PageFileChannel(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns this thread's reusable page buffer, at least len bytes long.
+     * The contents are only valid until the thread's next call, so page
+     * constructors must copy whatever they keep.
+     */
+    public static byte[] buffer(int len) {
+        byte[] buf = buffers.get();
+        if (buf == null || buf.length < len) {
+            buf = new byte[len];
+            buffers.set(buf);
+        }
+        return buf;
+    }
+
+    /** @return the open channel, opening the file if needed. */
+    public FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen()) {
+            return ch;
+        }
+        synchronized (this) {
+            if (channel == null || !channel.isOpen()) {
+                String mode = file.exists() && !file.canWrite() ? "r" : "rw";
+                raf = new RandomAccessFile(file, mode);
+                channel = raf.getChannel();
+            }
+            return channel;
+        }
+    }
+
+    /**
+     * Read up to len bytes at offset into buf. Bytes past the end of the file
+     * are zeroed.
+     *
+     * @return the number of bytes actually read from the file
+     */
+    public int read(long offset, byte[] buf, int len) throws IOException {
+        FileChannel ch = channel();
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, len);
+        int total = 0;
+        while (bb.hasRemaining()) {
+            int n = ch.read(bb, offset + total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        for (int i = total; i < len; i++) {
+            buf[i] = 0;
+        }
+        return total;
+    }
+
+    /** Write data at offset, extending the file if needed. */
+    public void write(long offset, byte[] data) throws IOException {
+        FileChannel ch = channel();
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        long pos = offset;
+        while (bb.hasRemaining()) {
+            pos += ch.write(bb, pos);
+        }
+    }
+
+    /**
+     * Write pages back to back from offset on with a single gathering
+     * write, extending the file if needed.
+     */
+    public void write(long offset, byte[][] pages) throws IOException {
+        ByteBuffer[] bufs = new ByteBuffer[pages.length];
+        long total = 0;
+        for (int i = 0; i < pages.length; i++) {
+            bufs[i] = ByteBuffer.wrap(pages[i]);
+            total += pages[i].length;
+        }
+        FileChannel ch = channel();
+        // gathering writes go through the channel's position, which no
+        // other access uses
+        synchronized (this) {
+            ch.position(offset);
+            while (total > 0) {
+                total -= ch.write(bufs);
+            }
+        }
+    }
+
+    /** @return the current size of the file in bytes. */
+    public long size() throws IOException {
+        return channel().size();
+    }
+
+    /** Close the channel; the next access reopens it. */
+    public synchronized void close() throws IOException {
+        if (raf != null) {
+            raf.close();
+            raf = null;
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * PageVersions keeps the older committed images of pages that the
+ * snapshots of read-only transactions still need, for the BufferPool's
+ * snapshot reads.
+ * <p>
+ * Commits that change pages are numbered in order, and a snapshot is the
+ * number of the last commit before it was taken. When a transaction with
+ * number n commits, the image each page it changed had before is retained
+ * as valid until n, if some snapshot may need it; a snapshot s then reads
+ * the oldest image of a page valid until after s, or the page's current
+ * committed image if there is none. Images no active snapshot reads are
+ * dropped as snapshots end.
+ * <p>
+ * Commits hold the write lock of {@link #latch} while they retain images
+ * and take their number, so that a snapshot read, which holds the read
+ * lock, sees each commit either entirely or not at all.
+ *
+ * @see BufferPool#beginSnapshot
+ */
+class PageVersions {
+
+    /** A committed image of a page, valid for the snapshots before a commit. */
+    private static final class Version {
+        // the number of the commit that replaced the image
+        final long until;
+        final byte[] image;
+
+        Version(long until, byte[] image) {
+            this.until = until;
+            this.image = image;
+        }
+    }
+
+    final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+    // the number of the last commit; changed under the write lock
+    private volatile long clock;
+    // the snapshot each read-only transaction reads
+    private final ConcurrentHashMap<TransactionId, Long> snapshots = new ConcurrentHashMap<TransactionId, Long>();
+    // the number of transactions reading each snapshot; guarded by itself
+    private final TreeMap<Long, Integer> active = new TreeMap<Long, Integer>();
+    // the retained images of each page, oldest first; changed under the
+    // write lock and read under the read lock
+    private final ConcurrentHashMap<PageId, ArrayList<Version>> versions =
+            new ConcurrentHashMap<PageId, ArrayList<Version>>();
+    private volatile int retained;
+
+    /**
+     * Make tid read the snapshot as of the last commit.
+     *
+     * @return the snapshot
+     */
+    long begin(TransactionId tid) {
+        latch.readLock().lock();
+        try {
+            long snapshot = clock;
+            synchronized (active) {
+                Integer n = active.get(snapshot);
+                active.put(snapshot, n == null ? 1 : n + 1);
+            }
+            snapshots.put(tid, snapshot);
+            return snapshot;
+        } finally {
+            latch.readLock().unlock();
+        }
+    }
+
+    /** @return whether any transaction reads a snapshot */
+    boolean isEmpty() {
+        return snapshots.isEmpty();
+    }
+
+    /** @return the snapshot tid reads, or null if it does not read one */
+    Long snapshotOf(TransactionId tid) {
+        return tid == null ? null : snapshots.get(tid);
+    }
+
+    /**
+     * tid no longer reads its snapshot; drop the images only it needed.
+     *
+     * @return whether tid read a snapshot
+     */
+    boolean end(TransactionId tid) {
+        Long snapshot = snapshots.remove(tid);
+        if (snapshot == null) {
+            return false;
+        }
+        latch.writeLock().lock();
+        try {
+            synchronized (active) {
+                int n = active.get(snapshot);
+                if (n == 1) {
+                    active.remove(snapshot);
+                } else {
+                    active.put(snapshot, n - 1);
+                }
+            }
+            prune();
+        } finally {
+            latch.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Take the number of the next commit. The caller holds the write lock,
+     * and retains the images the commit replaces before letting it go.
+     */
+    long nextCommit() {
+        return ++clock;
+    }
+
+    /**
+     * @return whether a snapshot may read the image of pid that a commit
+     *         now replaces, which is when some snapshot was taken after the
+     *         commit that retained its last image. The caller holds the
+     *         write lock.
+     */
+    boolean needs(PageId pid) {
+        synchronized (active) {
+            if (active.isEmpty()) {
+                return false;
+            }
+            ArrayList<Version> chain = versions.get(pid);
+            return chain == null || active.lastKey() >= chain.get(chain.size() - 1).until;
+        }
+    }
+
+    /**
+     * Retain image as the image of pid until commit. The caller holds the
+     * write lock.
+     */
+    void retain(PageId pid, long commit, byte[] image) {
+        ArrayList<Version> chain = versions.get(pid);
+        if (chain == null) {
+            chain = new ArrayList<Version>();
+            versions.put(pid, chain);
+        }
+        chain.add(new Version(commit, image));
+        retained++;
+    }
+
+    /**
+     * @return the image of pid snapshot reads, or null if that is the
+     *         page's current committed image. The caller holds the read
+     *         lock.
+     */
+    byte[] imageAt(PageId pid, long snapshot) {
+        ArrayList<Version> chain = versions.get(pid);
+        if (chain != null) {
+            for (Version v : chain) {
+                if (v.until > snapshot) {
+                    return v.image;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drop the images no active snapshot reads: an image is read by the
+     * snapshots taken from the commit of the image before it until the
+     * commit that replaced it. The caller holds the write lock.
+     */
+    private void prune() {
+        if (retained == 0) {
+            return;
+        }
+        synchronized (active) {
+            Iterator<ArrayList<Version>> chains = versions.values().iterator();
+            while (chains.hasNext()) {
+                ArrayList<Version> chain = chains.next();
+                long from = Long.MIN_VALUE;
+                Iterator<Version> it = chain.iterator();
+                while (it.hasNext()) {
+                    Version v = it.next();
+                    Long reader = active.ceilingKey(from);
+                    from = v.until;
+                    if (reader == null || reader >= v.until) {
+                        it.remove();
+                        retained--;
+                    }
+                }
+                if (chain.isEmpty()) {
+                    chains.remove();
+                }
+            }
+        }
+    }
+
+    /** @return the number of page images retained for snapshots */
+    int size() {
+        return retained;
+    }
+}
@@ -607,6 +607,10 @@ public class Parser {
     protected void start(String[] argv) throws IOException {
         // first add tables to database
         Database.getCatalog().loadSchema(argv[0]);
+        String warmFile = System.getProperty(Database.WARM_RESTART_FILE);
+        if (warmFile != null) {
+            Database.warmRestart(new File(warmFile));
+        }
         TableStats.computeStatistics();
 
         String queryFile = null;
@@ -0,0 +1,47 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxFile is a HeapFile whose pages are PaxPages, which group the values of
+ * each column of the page together (the PAX layout of Ailamaki et al.). It
+ * suits wide tables that are scanned for a few columns at a time: a SeqScan
+ * given the fields a query uses (see {@link SeqScan#setProjection}) decodes
+ * only those columns of each page.
+ * <p>
+ * Pages hold as many tuples as the pages of a HeapFile of the same table,
+ * so the two formats take the same space on disk.
+ *
+ * @see PaxPage
+ */
+public class PaxFile extends HeapFile {
+
+    /**
+     * Constructs a PAX file backed by the specified file.
+     */
+    public PaxFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a PAX file backed by the specified file.
+     *
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+     */
+    public PaxFile(File f, TupleDesc td, boolean memoryMapped) {
+        super(f, td, memoryMapped);
+    }
+
+    /** Its pages are not HeapPages, so whole pages are locked. */
+    @Override
+    protected boolean locksTuples() {
+        return false;
+    }
+
+    @Override
+    protected TuplePage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+}
@@ -0,0 +1,272 @@
+package simpledb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * PaxPage is a page of a PaxFile. It holds as many tuples as a HeapPage of
+ * the same table, but instead of storing each tuple in a slot of its own it
+ * stores the values of each column together, in a "minipage":
+ * <pre>
+ *   header | field 0 of slots 0..n-1 | field 1 of slots 0..n-1 | ...
+ * </pre>
+ * The header is the same bitmap of used slots as a HeapPage's, and each
+ * value is encoded as in a HeapPage. A scan that reads a few columns of a
+ * wide table then only touches those columns' minipages, which are dense
+ * and contiguous, instead of striding over every tuple.
+ *
+ * @see PaxFile
+ * @see HeapPage
+ */
+public class PaxPage implements TuplePage {
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int numSlots;
+    // the page image, kept up to date by insertTuple and deleteTuple
+    final byte[] data;
+    final int headerSize;
+    // columnStart[i] is where the minipage of field i starts in data
+    final int[] columnStart;
+    int numEmptySlots;
+    TransactionId dirtier;
+    byte[] oldData;
+    private final Byte oldDataLock = new Byte((byte) 0);
+    // The HeapFile the page belongs to, whose free space map and zone map
+    // are kept up to date; null if the table is not a HeapFile.
+    final HeapFile file;
+
+    /**
+     * Create a PaxPage from a set of bytes of data read from disk, in the
+     * format described above.
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a PaxPage from the bytes between the position and the limit of
+     * a buffer; the buffer's position is not changed.
+     */
+    public PaxPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this.pid = id;
+        DbFile dbFile = Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.td = dbFile.getTupleDesc();
+        this.file = dbFile instanceof HeapFile ? (HeapFile) dbFile : null;
+        this.numSlots = (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+        this.headerSize = (numSlots + 7) / 8;
+        this.columnStart = new int[td.numFields()];
+        int offset = headerSize;
+        for (int i = 0; i < columnStart.length; i++) {
+            columnStart[i] = offset;
+            offset += numSlots * td.getFieldLen(i);
+        }
+
+        this.data = new byte[BufferPool.getPageSize()];
+        ByteBuffer src = data.duplicate();
+        src.get(this.data, 0, Math.min(this.data.length, src.remaining()));
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i))
+                numEmptySlots++;
+        }
+        synchronized (oldDataLock) {
+            oldData = this.data.clone();
+        }
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the number of tuples a page of this table holds.
+     */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * @return where the value of field i of slot slot starts in the page.
+     */
+    int valueOffset(int slot, int i) {
+        return columnStart[i] + slot * td.getFieldLen(i);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public PaxPage getBeforeImage() {
+        try {
+            byte[] oldDataRef;
+            synchronized (oldDataLock) {
+                oldDataRef = oldData;
+            }
+            return new PaxPage(pid, oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData();
+        }
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    /**
+     * @return the bytes of an empty PaxPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    public void insertTuple(Tuple t) throws DbException {
+        if (numEmptySlots == 0)
+            throw new DbException("insertTuple: the page is full");
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("insertTuple: TupleDesc is not matched");
+        int slot = 0;
+        while (isSlotUsed(slot))
+            slot++;
+        try {
+            td.encodeFields(t);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(td.getSize());
+            DataOutputStream dos = new DataOutputStream(baos);
+            for (int i = 0; i < td.numFields(); i++) {
+                baos.reset();
+                td.serializeField(i, t.getField(i), dos);
+                dos.flush();
+                System.arraycopy(baos.toByteArray(), 0, data, valueOffset(slot, i),
+                        Math.min(baos.size(), td.getFieldLen(i)));
+            }
+        } catch (IOException e) {
+            throw new DbException("insertTuple: can't encode tuple: " + e.getMessage());
+        }
+        markSlotUsed(slot, true);
+        t.setRecordId(new RecordId(pid, slot));
+        if (file != null) {
+            file.getFreeSpaceMap().update(pid.getPageNumber(), numEmptySlots);
+            file.getZoneMap().tupleInserted(this, t);
+        }
+    }
+
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("deleteTuple: tuple is not on this page");
+        int slot = rid.getTupleNumber();
+        if (slot < 0 || slot >= numSlots || !isSlotUsed(slot))
+            throw new DbException("deleteTuple: the tuple slot is already empty");
+        markSlotUsed(slot, false);
+        // clear the values so that the page image only depends on its tuples
+        for (int i = 0; i < td.numFields(); i++) {
+            int offset = valueOffset(slot, i);
+            Arrays.fill(data, offset, offset + td.getFieldLen(i), (byte) 0);
+        }
+        if (file != null)
+            file.getFreeSpaceMap().update(pid.getPageNumber(), numEmptySlots);
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        return numEmptySlots;
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getFreeSpace() {
+        return numEmptySlots;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        return numEmptySlots > 0;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return (data[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        if (isSlotUsed(i) == value)
+            return;
+        if (value) {
+            data[i / 8] |= (1 << (i % 8));
+            numEmptySlots--;
+        } else {
+            data[i / 8] &= ~(1 << (i % 8));
+            numEmptySlots++;
+        }
+    }
+
+    /**
+     * @return an iterator over all tuples on this page, with every field
+     *         set (calling remove on this iterator throws an
+     *         UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        int[] all = new int[td.numFields()];
+        for (int i = 0; i < all.length; i++)
+            all[i] = i;
+        return iterator(all);
+    }
+
+    /**
+     * Decodes the tuples of the page one column at a time, reading only
+     * the minipages of the given columns; the other fields of the returned
+     * tuples are null.
+     */
+    public Iterator<Tuple> iterator(int[] columns) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>(numSlots - numEmptySlots);
+        int[] slots = new int[numSlots - numEmptySlots];
+        for (int i = 0, n = 0; n < slots.length; i++) {
+            if (isSlotUsed(i)) {
+                slots[n++] = i;
+                Tuple t = new Tuple(td);
+                t.setRecordId(new RecordId(pid, i));
+                tuples.add(t);
+            }
+        }
+        for (int c : columns) {
+            int len = td.getFieldLen(c);
+            int start = columnStart[c];
+            if (td.getFieldType(c) == Type.INT_TYPE) {
+                for (int k = 0; k < slots.length; k++) {
+                    int o = start + slots[k] * len;
+                    tuples.get(k).setField(c, new IntField(((data[o] & 0xff) << 24)
+                            | ((data[o + 1] & 0xff) << 16) | ((data[o + 2] & 0xff) << 8)
+                            | (data[o + 3] & 0xff)));
+                }
+            } else {
+                for (int k = 0; k < slots.length; k++)
+                    tuples.get(k).setField(c, td.parseField(c, data, start + slots[k] * len));
+            }
+        }
+        return Collections.unmodifiableList(tuples).iterator();
+    }
+}
@@ -0,0 +1,38 @@
+package simpledb;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A PoolPartition is a share of the BufferPool's frames set aside for the
+ * tables the catalog assigns to it, with an eviction policy of its own. A
+ * page of such a table only ever evicts another page of the partition, so
+ * a large table in, say, a "scan" partition can not push the pages of a
+ * "hot" partition out of the pool.
+ * <p>
+ * Every BufferPool has a default partition, holding the frames not given
+ * to a named partition, for the tables that are not assigned to one.
+ * Partitions are only changed while holding the BufferPool monitor.
+ *
+ * @see BufferPool#addPartition
+ * @see Catalog#setPartition
+ */
+class PoolPartition {
+
+    final String name;
+    // only the default partition's changes, as named partitions are added
+    int capacity;
+    final EvictionPolicy policy;
+    // the resident pages of the partition, including those of rings
+    int resident;
+    final LongAdder evictions = new LongAdder();
+
+    PoolPartition(String name, int capacity, EvictionPolicy policy) {
+        this.name = name;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    boolean isFull() {
+        return resident >= capacity;
+    }
+}
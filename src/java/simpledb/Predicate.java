@@ -47,6 +47,11 @@ public class Predicate implements Serializable {
     int m_field;
     Op m_op;
     Field m_operand;
+    // m_operand as a field of the last dictionary seen in filter(), so that
+    // equality on a dictionary-encoded field compares codes
+    private transient StringDictionary m_dictionary;
+    private transient DictionaryField m_encoded;
+    private transient int m_dictionarySize;
     /**
      * Constructor.
      * 
@@ -98,7 +103,29 @@ public class Predicate implements Serializable {
      * @return true if the comparison is true, false otherwise.
      */
     public boolean filter(Tuple t) {
-        return t.getField(m_field).compare(m_op, m_operand);
+        if (m_operand instanceof IntField) {
+            return IntField.compare(m_op, t.getInt(m_field), ((IntField) m_operand).getValue());
+        }
+        Field f = t.getField(m_field);
+        if (f instanceof DictionaryField
+                && (m_op == Op.EQUALS || m_op == Op.NOT_EQUALS)
+                && m_operand instanceof StringField) {
+            StringDictionary dictionary = ((DictionaryField) f).getDictionary();
+            if (dictionary != null) {
+                // look again if the value may have been given a code since
+                if (dictionary != m_dictionary
+                        || (m_encoded == null && dictionary.size() != m_dictionarySize)) {
+                    m_dictionarySize = dictionary.size();
+                    m_encoded = dictionary.lookup(((StringField) m_operand).getValue());
+                    m_dictionary = dictionary;
+                }
+                // a value without a code equals no field of the dictionary
+                if (m_encoded == null)
+                    return m_op == Op.NOT_EQUALS;
+                return f.compare(m_op, m_encoded);
+            }
+        }
+        return f.compare(m_op, m_operand);
     }
 
     /**
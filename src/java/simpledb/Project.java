@@ -11,6 +11,7 @@ public class Project extends Operator {
     private OpIterator child;
     private TupleDesc td;
     private ArrayList<Integer> outFieldIds;
+    private final int[] fieldIds;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -33,12 +34,18 @@ public class Project extends Operator {
         this.child = child;
         outFieldIds = fieldList;
         String[] fieldAr = new String[fieldList.size()];
+        StringDictionary[] dictionaries = new StringDictionary[fieldList.size()];
         TupleDesc childtd = child.getTupleDesc();
+        fieldIds = new int[fieldList.size()];
 
         for (int i = 0; i < fieldAr.length; i++) {
+            fieldIds[i] = fieldList.get(i);
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
+            // keep the encoding so that projected tuples can be copied as bytes
+            if (types[i] == childtd.getFieldType(fieldIds[i]))
+                dictionaries[i] = childtd.getDictionary(fieldIds[i]);
         }
-        td = new TupleDesc(types, fieldAr);
+        td = new TupleDesc(types, fieldAr, dictionaries);
     }
 
     public TupleDesc getTupleDesc() {
@@ -70,12 +77,7 @@ public class Project extends Operator {
             TransactionAbortedException, DbException {
         while (child.hasNext()) {
             Tuple t = child.next();
-            Tuple newTuple = new Tuple(td);
-            newTuple.setRecordId(t.getRecordId());
-            for (int i = 0; i < td.numFields(); i++) {
-                newTuple.setField(i, t.getField(outFieldIds.get(i)));
-            }
-            return newTuple;
+            return Tuple.project(td, t, fieldIds);
         }
         return null;
     }
@@ -0,0 +1,120 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ReadAhead prefetches pages for one scan. The scan reports each page
+ * number it is about to read; once two in a row are consecutive, the next
+ * window pages are loaded into the BufferPool on a small pool of I/O
+ * threads while the scan works on the current one.
+ * <p>
+ * The window starts at MIN_WINDOW pages and doubles, up to MAX_WINDOW,
+ * every time the scan asks for a page whose prefetch has not finished yet,
+ * i.e. the scan consumes pages faster than they are read ahead. When the
+ * scan reads through a BufferRing the window is at most half the ring, so
+ * that prefetched pages are not recycled before the scan gets to them.
+ * <p>
+ * A ReadAhead is used by a single thread. A prefetch that only starts once
+ * the scan has asked for its page is skipped.
+ *
+ * @see BufferPool#prefetchPage
+ */
+abstract class ReadAhead {
+
+    static final int MIN_WINDOW = 2;
+    static final int MAX_WINDOW = 32;
+
+    private static final ExecutorService io = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ReadAhead");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final BufferRing ring;
+    private final int maxWindow;
+    private int window;
+    // the page the scan asked for last; read by the I/O threads
+    private volatile int lastPage = -2;
+    // the highest page number prefetched in the current sequential run
+    private int prefetched = -1;
+    // prefetches issued and not yet asked for, by page number
+    private final HashMap<Integer, Future<?>> pending = new HashMap<Integer, Future<?>>();
+
+    /**
+     * @param ring the ring the scan reads through, or null
+     */
+    ReadAhead(BufferRing ring) {
+        this.ring = ring;
+        this.maxWindow = ring == null ? MAX_WINDOW : Math.max(1, Math.min(MAX_WINDOW, ring.capacity() / 2));
+        this.window = Math.min(MIN_WINDOW, maxWindow);
+    }
+
+    /** @return the id of page pageNo of the file being scanned */
+    abstract PageId pageId(int pageNo);
+
+    /** @return the last page number that may be prefetched */
+    abstract int lastPageNo();
+
+    /** @return the number of pages currently prefetched ahead of the scan */
+    int window() {
+        return window;
+    }
+
+    /**
+     * @return false if the scan already asked for page pageNo: it read the
+     *         page itself, and a ring may already have recycled it.
+     */
+    boolean wanted(int pageNo) {
+        return pageNo > lastPage;
+    }
+
+    /**
+     * The scan is about to read page pageNo.
+     */
+    void pageRequested(int pageNo) {
+        Future<?> f = pending.remove(pageNo);
+        if (f != null && !f.isDone()) {
+            window = Math.min(2 * window, maxWindow);
+        }
+        if (pageNo != lastPage + 1) {
+            // not sequential (any more): forget the run
+            lastPage = pageNo;
+            prefetched = pageNo;
+            cancel();
+            return;
+        }
+        lastPage = pageNo;
+        int end = pageNo + window;
+        if (prefetched >= end) {
+            return;
+        }
+        end = Math.min(end, lastPageNo());
+        final BufferPool pool = Database.getBufferPool();
+        for (int p = Math.max(prefetched, pageNo) + 1; p <= end; p++) {
+            final PageId pid = pageId(p);
+            pending.put(p, io.submit(new Runnable() {
+                public void run() {
+                    pool.prefetchPage(pid, ring, ReadAhead.this);
+                }
+            }));
+        }
+        prefetched = Math.max(prefetched, end);
+    }
+
+    /**
+     * Cancel the prefetches that have not started; the scan is done or went
+     * elsewhere.
+     */
+    void cancel() {
+        for (Future<?> f : pending.values()) {
+            f.cancel(false);
+        }
+        pending.clear();
+    }
+}
@@ -14,6 +14,11 @@ public class SeqScan implements OpIterator {
     private int m_tableid;
     private String m_tableAlias;
     private DbFileIterator m_tupleIter;
+    // Conditions every returned tuple satisfies; see addPredicate.
+    private final ArrayList<Predicate> m_predicates = new ArrayList<Predicate>();
+    // The fields the consumer reads, or null for all; see setProjection.
+    private int[] m_columns;
+    private Tuple m_next;
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -76,7 +81,72 @@ public class SeqScan implements OpIterator {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
 
+    /**
+     * Push a predicate down into this scan: only tuples satisfying it are
+     * returned. On a HeapFile, pages whose zone map shows they cannot hold
+     * such a tuple are not read at all. Must be called before open().
+     *
+     * @param p
+     *            a predicate over the fields of the scanned table.
+     * @see ZoneMap
+     */
+    public void addPredicate(Predicate p) {
+        m_predicates.add(p);
+        updateIterator();
+    }
+
+    /**
+     * Tell this scan which fields of the table its consumer reads. The
+     * other fields of the returned tuples may be null; a {@link PaxFile}
+     * does not decode them at all. Fields that pushed-down predicates test
+     * are read as well. Must be called before open().
+     *
+     * @param fields
+     *            the indexes of the fields that are read, or null for all.
+     */
+    public void setProjection(int[] fields) {
+        m_columns = fields == null ? null : fields.clone();
+        updateIterator();
+    }
+
+    /**
+     * @return the fields set by setProjection, or null if every field is
+     *         read.
+     */
+    public int[] getProjection() {
+        return m_columns == null ? null : m_columns.clone();
+    }
+
+    private void updateIterator() {
+        DbFile file = Database.getCatalog().getDatabaseFile(m_tableid);
+        if (!(file instanceof HeapFile)) {
+            return;
+        }
+        int[] columns = m_columns;
+        if (columns != null && !m_predicates.isEmpty()) {
+            TreeSet<Integer> read = new TreeSet<Integer>();
+            for (int c : m_columns)
+                read.add(c);
+            for (Predicate p : m_predicates)
+                read.add(p.getField());
+            columns = new int[read.size()];
+            int i = 0;
+            for (int c : read)
+                columns[i++] = c;
+        }
+        m_tupleIter = ((HeapFile) file).iterator(m_tid,
+                m_predicates.isEmpty() ? null : m_predicates, columns);
+    }
+
+    /**
+     * @return the predicates pushed down into this scan.
+     */
+    public List<Predicate> getPredicates() {
+        return m_predicates;
+    }
+
     public void open() throws DbException, TransactionAbortedException {
+    	m_next = null;
     	m_tupleIter.open();
     }
 
@@ -106,20 +176,48 @@ public class SeqScan implements OpIterator {
     }
 
     public boolean hasNext() throws TransactionAbortedException, DbException {
-        return m_tupleIter.hasNext();
+    	if (m_predicates.isEmpty()) {
+    		return m_tupleIter.hasNext();
+    	}
+    	while (m_next == null && m_tupleIter.hasNext()) {
+    		Tuple t = m_tupleIter.next();
+    		if (matches(t)) {
+    			m_next = t;
+    		}
+    	}
+    	return m_next != null;
     }
 
     public Tuple next() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-    	return m_tupleIter.next();
+    	if (m_predicates.isEmpty()) {
+    		return m_tupleIter.next();
+    	}
+    	if (!hasNext()) {
+    		throw new NoSuchElementException();
+    	}
+    	Tuple t = m_next;
+    	m_next = null;
+    	return t;
+    }
+
+    private boolean matches(Tuple t) {
+    	for (Predicate p : m_predicates) {
+    		if (!p.filter(t)) {
+    			return false;
+    		}
+    	}
+    	return true;
     }
 
     public void close() {
+    	m_next = null;
     	m_tupleIter.close();
     }
 
     public void rewind() throws DbException, NoSuchElementException,
             TransactionAbortedException {
+    	m_next = null;
     	m_tupleIter.open();
     }
 }
@@ -4,6 +4,7 @@ import java.io.*;
 public class SimpleDb {
     public static void main (String args[])
             throws DbException, TransactionAbortedException, IOException {
+        BufferPoolMetrics.registerMBean();
         // convert a file
         if(args[0].equals("convert")) {
         try {
@@ -90,6 +91,13 @@ public class SimpleDb {
             }
 
         }
+        else if (args[0].equals("replay")) {
+            String[] newargs = new String[args.length-1];
+            for (int i = 1; i < args.length; ++i) {
+                newargs[i-1] = args[i];
+            }
+            EvictionReplay.main(newargs);
+        }
         else {
             System.err.println("Unknown command: " + args[0]);
             System.exit(1);
@@ -0,0 +1,50 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * SlottedHeapFile is a HeapFile whose pages are SlottedHeapPages: tuples
+ * take only the bytes they need rather than a fixed-size slot with every
+ * string padded to Type.STRING_LEN bytes. Tables whose strings are mostly
+ * short fit many more tuples per page this way, so scans read fewer pages.
+ * The file is still a sequence of fixed-size pages; only the layout within
+ * a page differs.
+ *
+ * @see SlottedHeapPage
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @see HeapFile#HeapFile(File, TupleDesc, boolean)
+     */
+    public SlottedHeapFile(File f, TupleDesc td, boolean memoryMapped) {
+        super(f, td, memoryMapped);
+    }
+
+    /** Its pages are not HeapPages, so whole pages are locked. */
+    @Override
+    protected boolean locksTuples() {
+        return false;
+    }
+
+    @Override
+    protected TuplePage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        return new SlottedHeapPage(pid, data);
+    }
+
+    @Override
+    protected int spaceNeeded(Tuple t) {
+        return SlottedHeapPage.spaceNeeded(getTupleDesc(), t);
+    }
+}
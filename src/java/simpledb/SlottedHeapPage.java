@@ -0,0 +1,415 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * SlottedHeapPage is a page of a SlottedHeapFile. Unlike HeapPage, which
+ * gives every tuple a fixed-size slot and pads every string to
+ * Type.STRING_LEN bytes, it stores each tuple in just the bytes it needs and
+ * finds tuples through an offset directory, so that many more tuples with
+ * short strings fit on a page.
+ * <p>
+ * The format of a SlottedHeapPage is:
+ * <pre>
+ *   short  number of directory entries (n)
+ *   short  offset of the first byte of tuple data (0 means the page size)
+ *   n x (short offset, short length) directory entries, offset 0 = empty
+ *   free space
+ *   tuple data, growing down from the end of the page
+ * </pre>
+ * All shorts are unsigned. A tuple is stored as its fields in order: an INT
+ * as 4 bytes, a STRING as a 2-byte length followed by its bytes, and a
+ * dictionary-encoded STRING as its 4-byte code. A page of all zeroes is an
+ * empty page.
+ * <p>
+ * A deleted tuple's bytes are reclaimed when an insert needs them, by
+ * moving the remaining tuples together. Tuples keep their directory entry,
+ * and hence their RecordId, when they move.
+ *
+ * @see SlottedHeapFile
+ * @see HeapPage
+ */
+public class SlottedHeapPage implements TuplePage {
+
+    private static final int HEADER_SIZE = 4;
+    private static final int ENTRY_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    // The HeapFile the page belongs to, whose free space map and zone map
+    // are kept up to date; null if the table is not a HeapFile.
+    final HeapFile file;
+
+    // the page as it would be written to disk
+    final byte[] data;
+    int numEntries;
+    int dataStart;
+    // bytes taken by the tuples on the page
+    int usedBytes;
+    byte[] oldData;
+    TransactionId m_tid;
+    private final Byte oldDataLock = new Byte((byte) 0);
+
+    /**
+     * Create a SlottedHeapPage from the bytes of a page read from disk, in
+     * the format described above. The bytes are copied.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a SlottedHeapPage from the bytes between the position and the
+     * limit of a buffer; the buffer's position is not changed.
+     */
+    public SlottedHeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this.pid = id;
+        DbFile dbFile = Database.getCatalog().getDatabaseFile(id.getTableId());
+        this.td = dbFile.getTupleDesc();
+        this.file = dbFile instanceof HeapFile ? (HeapFile) dbFile : null;
+
+        int pageSize = BufferPool.getPageSize();
+        this.data = new byte[pageSize];
+        ByteBuffer src = data.duplicate();
+        src.get(this.data, 0, Math.min(pageSize, src.remaining()));
+        numEntries = getShort(0);
+        dataStart = getShort(2);
+        if (dataStart == 0)
+            dataStart = pageSize;
+        if (HEADER_SIZE + numEntries * ENTRY_SIZE > dataStart || dataStart > pageSize)
+            throw new IOException("corrupt slotted page " + id);
+        for (int i = 0; i < numEntries; i++)
+            usedBytes += getShort(entry(i) + 2);
+
+        synchronized (oldDataLock) {
+            oldData = this.data.clone();
+        }
+    }
+
+    /**
+     * @return the bytes of an empty page.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /**
+     * @return the number of bytes a tuple takes on a page of a table with
+     *         schema td, not counting its directory entry.
+     */
+    public static int tupleSize(TupleDesc td, Tuple t) {
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE && td.getDictionary(i) == null)
+                size += 2 + ((StringField) t.getField(i)).getValue().length();
+            else
+                size += td.getFieldLen(i);
+        }
+        return size;
+    }
+
+    /**
+     * @return the free space a page of a table with schema td needs for
+     *         insertTuple(t) to succeed.
+     */
+    public static int spaceNeeded(TupleDesc td, Tuple t) {
+        return tupleSize(td, t) + ENTRY_SIZE;
+    }
+
+    private int getShort(int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private void putShort(int offset, int v) {
+        data[offset] = (byte) (v >> 8);
+        data[offset + 1] = (byte) v;
+    }
+
+    private static int entry(int slot) {
+        return HEADER_SIZE + slot * ENTRY_SIZE;
+    }
+
+    private int offsetOf(int slot) {
+        return getShort(entry(slot));
+    }
+
+    private int lengthOf(int slot) {
+        return getShort(entry(slot) + 2);
+    }
+
+    private void writeHeader() {
+        putShort(0, numEntries);
+        putShort(2, dataStart == data.length ? 0 : dataStart);
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the number of entries in the offset directory, used or not.
+     */
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * @return true if the directory entry holds a tuple.
+     */
+    public boolean isSlotUsed(int slot) {
+        return slot < numEntries && offsetOf(slot) != 0;
+    }
+
+    /**
+     * Returns the number of free bytes on this page, including the bytes of
+     * deleted tuples that have not been reclaimed yet.
+     */
+    public int getFreeSpace() {
+        return data.length - HEADER_SIZE - numEntries * ENTRY_SIZE - usedBytes;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        int needed = tupleSize(td, t);
+        if (firstEmptySlot() == numEntries)
+            needed += ENTRY_SIZE;
+        return needed <= getFreeSpace();
+    }
+
+    private int firstEmptySlot() {
+        for (int i = 0; i < numEntries; i++) {
+            if (offsetOf(i) == 0)
+                return i;
+        }
+        return numEntries;
+    }
+
+    /**
+     * Adds the specified tuple to the page; the tuple's RecordId is updated
+     * to reflect that it is now stored on this page.
+     * @throws DbException if the page does not have room for the tuple or
+     *         the tupledesc does not match.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("insertTuple: TupleDesc is not matched");
+        if (!hasRoomFor(t))
+            throw new DbException("insertTuple: the page is full");
+        try {
+            td.encodeFields(t);
+        } catch (IOException e) {
+            throw new DbException("insertTuple: can't encode tuple: " + e.getMessage());
+        }
+
+        int slot = firstEmptySlot();
+        int len = tupleSize(td, t);
+        int directoryEnd = entry(slot == numEntries ? numEntries + 1 : numEntries);
+        if (dataStart - len < directoryEnd)
+            compact();
+
+        dataStart -= len;
+        encode(t, dataStart);
+        putShort(entry(slot), dataStart);
+        putShort(entry(slot) + 2, len);
+        if (slot == numEntries)
+            numEntries++;
+        usedBytes += len;
+        writeHeader();
+
+        t.setRecordId(new RecordId(pid, slot));
+        markDirty(true, m_tid);
+        if (file != null) {
+            file.getFreeSpaceMap().update(pid.getPageNumber(), getFreeSpace());
+            file.getZoneMap().tupleInserted(this, t);
+        }
+    }
+
+    /**
+     * Delete the specified tuple from the page. Trailing empty directory
+     * entries are dropped; the tuple's bytes are reclaimed by a later
+     * insert.
+     * @throws DbException if this tuple is not on this page, or its slot is
+     *         already empty.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId()))
+            throw new DbException("deleteTuple: pid in the tuple is not matched");
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot))
+            throw new DbException("deleteTuple: the tuple slot is already empty");
+
+        usedBytes -= lengthOf(slot);
+        putShort(entry(slot), 0);
+        putShort(entry(slot) + 2, 0);
+        while (numEntries > 0 && offsetOf(numEntries - 1) == 0)
+            numEntries--;
+        if (usedBytes == 0)
+            dataStart = data.length;
+        writeHeader();
+
+        if (file != null)
+            file.getFreeSpaceMap().update(pid.getPageNumber(), getFreeSpace());
+    }
+
+    /**
+     * Move the tuples to the end of the page so that all free space is
+     * between the directory and the tuple data.
+     */
+    private void compact() {
+        byte[] copy = data.clone();
+        int end = data.length;
+        for (int i = 0; i < numEntries; i++) {
+            int off = getShort(copy, entry(i));
+            if (off == 0)
+                continue;
+            int len = getShort(copy, entry(i) + 2);
+            end -= len;
+            System.arraycopy(copy, off, data, end, len);
+            putShort(entry(i), end);
+        }
+        dataStart = end;
+        writeHeader();
+    }
+
+    private static int getShort(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    private void encode(Tuple t, int offset) {
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (td.getDictionary(i) != null) {
+                int code = ((DictionaryField) f).getCode();
+                data[offset++] = (byte) (code >> 24);
+                data[offset++] = (byte) (code >> 16);
+                data[offset++] = (byte) (code >> 8);
+                data[offset++] = (byte) code;
+            } else if (td.getFieldType(i) == Type.STRING_TYPE) {
+                String s = ((StringField) f).getValue();
+                putShort(offset, s.length());
+                offset += 2;
+                // one byte per char, as DataOutputStream.writeBytes does
+                for (int j = 0; j < s.length(); j++)
+                    data[offset++] = (byte) s.charAt(j);
+            } else {
+                int v = ((IntField) f).getValue();
+                data[offset++] = (byte) (v >> 24);
+                data[offset++] = (byte) (v >> 16);
+                data[offset++] = (byte) (v >> 8);
+                data[offset++] = (byte) v;
+            }
+        }
+    }
+
+    private Tuple decode(int slot) {
+        Tuple t = new Tuple(td);
+        int offset = offsetOf(slot);
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.STRING_TYPE && td.getDictionary(i) == null) {
+                int len = getShort(offset);
+                t.setField(i, new StringField(new String(data, offset + 2, len), Type.STRING_LEN));
+                offset += 2 + len;
+            } else {
+                t.setField(i, td.parseField(i, data, offset));
+                offset += td.getFieldLen(i);
+            }
+        }
+        t.setRecordId(new RecordId(pid, slot));
+        return t;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page, in the
+     * format read by the constructor.
+     */
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedHeapPage getBeforeImage() {
+        try {
+            byte[] oldDataRef = null;
+            synchronized (oldDataLock) {
+                oldDataRef = oldData;
+            }
+            return new SlottedHeapPage(pid, oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData();
+        }
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        m_tid = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return m_tid;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on
+     *         this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int slot = nextUsed(0);
+
+            private int nextUsed(int from) {
+                while (from < numEntries && offsetOf(from) == 0)
+                    from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < numEntries;
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Tuple t = decode(slot);
+                slot = nextUsed(slot + 1);
+                return t;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Tuples are decoded field by field as they are read, so this is the
+     * same as {@link #iterator()}.
+     */
+    public Iterator<Tuple> iterator(int[] columns) {
+        return iterator();
+    }
+}
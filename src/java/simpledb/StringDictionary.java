@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+/**
+ * StringDictionary assigns small integer codes to the distinct values of a
+ * dictionary-encoded string column, so that pages store a 4-byte code
+ * instead of a padded string, and equal values can be recognized by their
+ * codes. Codes are numbered from 0 in the order values are first seen and
+ * never change.
+ * <p>
+ * The dictionary of a table's column is created by the Catalog and lives
+ * in a file next to the table's (see {@link #sidecarFor}). New values are
+ * appended to the file as soon as they get a code, before any page holding
+ * the code can be written. Each entry is a 2-byte length followed by the
+ * string's bytes.
+ *
+ * @see DictionaryField
+ * @see TupleDesc#getDictionary
+ * @Threadsafe
+ */
+public class StringDictionary {
+
+    private final PageFileChannel file;
+    private final HashMap<String, DictionaryField> byValue = new HashMap<String, DictionaryField>();
+    // fields by code; decode() reads these without locking, so entries is
+    // replaced before size is increased
+    private volatile DictionaryField[] entries = new DictionaryField[16];
+    private volatile int size;
+    private long fileSize;
+
+    /**
+     * Create an empty dictionary that is not saved anywhere.
+     */
+    public StringDictionary() {
+        this.file = null;
+    }
+
+    /**
+     * Open the dictionary saved in f, creating it if f does not exist.
+     */
+    public StringDictionary(File f) throws IOException {
+        this.file = new PageFileChannel(f);
+        if (f.exists()) {
+            load();
+        }
+    }
+
+    /** @return the file that holds the dictionary of a heap file's column. */
+    public static File sidecarFor(File heapFile, int field) {
+        return new File(heapFile.getPath() + "." + field + ".dict");
+    }
+
+    private void load() throws IOException {
+        byte[] data = new byte[(int) file.size()];
+        file.read(0, data, data.length);
+        int offset = 0;
+        while (offset + 2 <= data.length) {
+            int len = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+            if (offset + 2 + len > data.length) {
+                // an entry cut short by a crash; no page can use its code
+                break;
+            }
+            add(new String(data, offset + 2, len));
+            offset += 2 + len;
+        }
+        fileSize = offset;
+    }
+
+    private DictionaryField add(String value) {
+        DictionaryField f = new DictionaryField(value, this, size);
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        entries[size] = f;
+        byValue.put(value, f);
+        size++;
+        return f;
+    }
+
+    /**
+     * @return the number of values in the dictionary.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the field for a code.
+     * @throws NoSuchElementException if the code is not in the dictionary.
+     */
+    public DictionaryField decode(int code) throws NoSuchElementException {
+        int n = size;
+        DictionaryField[] e = entries;
+        if (code < 0 || code >= n) {
+            throw new NoSuchElementException("no string with code " + code);
+        }
+        return e[code];
+    }
+
+    /**
+     * @return the field for a value, or null if the value has no code.
+     */
+    public synchronized DictionaryField lookup(String value) {
+        return byValue.get(value);
+    }
+
+    /**
+     * @return the field for a value, giving the value a new code (and
+     *         saving it) if it has none yet.
+     */
+    public synchronized DictionaryField encode(String value) throws IOException {
+        if (value.length() > Type.STRING_LEN) {
+            value = value.substring(0, Type.STRING_LEN);
+        }
+        DictionaryField f = byValue.get(value);
+        if (f != null) {
+            return f;
+        }
+        if (file != null) {
+            byte[] entry = new byte[2 + value.length()];
+            entry[0] = (byte) (value.length() >> 8);
+            entry[1] = (byte) value.length();
+            // one byte per char, as DataOutputStream.writeBytes does
+            for (int i = 0; i < value.length(); i++) {
+                entry[2 + i] = (byte) value.charAt(i);
+            }
+            file.write(fileSize, entry);
+            fileSize += entry.length;
+        }
+        return add(value);
+    }
+
+    /**
+     * @return the code of a StringField's value, giving it a new code if it
+     *         has none yet.
+     */
+    public int codeOf(Field f) throws IOException {
+        if (f instanceof DictionaryField && ((DictionaryField) f).getDictionary() == this) {
+            return ((DictionaryField) f).getCode();
+        }
+        return encode(((StringField) f).getValue()).getCode();
+    }
+
+    /** Close the dictionary's file; it is reopened if a value is added. */
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+}
@@ -9,10 +9,21 @@ import java.io.*;
 
 public class Transaction {
     private final TransactionId tid;
+    private final boolean readOnly;
     volatile boolean started = false;
 
     public Transaction() {
+        this(false);
+    }
+
+    /**
+     * @param readOnly whether the transaction only reads, from a snapshot
+     *        of the database taken when it starts
+     * @see BufferPool#beginSnapshot
+     */
+    public Transaction(boolean readOnly) {
         tid = new TransactionId();
+        this.readOnly = readOnly;
     }
 
     /** Start the transaction running */
@@ -23,12 +34,20 @@ public class Transaction {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (readOnly) {
+            Database.getBufferPool().beginSnapshot(tid);
+        }
     }
 
     public TransactionId getId() {
         return tid;
     }
 
+    /** @return whether the transaction only reads a snapshot */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
     /** Finish the transaction */
     public void commit() throws IOException {
         transactionComplete(false);
@@ -1,21 +1,36 @@
 package simpledb;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-//import java.util.Arrays;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Vector;
 
 /**
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * A tuple read from a page is backed by the page's bytes instead: its
+ * fields are only turned into Field objects when {@link #getField} asks for
+ * them, {@link #getInt} reads int fields without allocating anything, and
+ * {@link #merge} and {@link #project} build new tuples by copying bytes. A
+ * tuple stops being backed by bytes when one of its fields is set.
  */
 public class Tuple implements Serializable {
 
     private static final long serialVersionUID = 1L;
     private TupleDesc schema;
-    private Vector<Field> fields;
+    // The fields that were set or decoded so far; null until there are any.
+    private Field[] fields;
     private RecordId rid;
+    // The serialized tuple that unset fields are decoded from, or null.
+    private transient byte[] source;
+    private transient int sourceOffset;
+    // Where the tuple was read from, turned into a RecordId when asked for.
+    private transient PageId sourcePage;
+    private transient int sourceSlot;
+
     /**
      * Create a new tuple with the specified schema (type).
      *
@@ -27,13 +42,38 @@ public class Tuple implements Serializable {
     	if(td == null)
     		throw new IllegalArgumentException("TupleDesc must NOT be null!");
     	this.schema = td;
-    	this.fields = new Vector<Field>();
-    	for(int i = 0; i < td.numFields(); i++) {
-    		fields.add(null);
-    	}
+    	this.fields = new Field[td.numFields()];
     	this.rid = null;
     }
 
+    /**
+     * Create a tuple backed by a serialized tuple, whose fields are decoded
+     * the first time they are asked for, so that fields that are never read
+     * are never parsed. The bytes must not change while the tuple is in use.
+     *
+     * @param td
+     *            the schema of this tuple.
+     * @param data
+     *            the bytes holding the tuple, e.g. a page.
+     * @param offset
+     *            where the tuple starts in data.
+     */
+    Tuple(TupleDesc td, byte[] data, int offset) {
+    	this.schema = td;
+    	this.source = data;
+    	this.sourceOffset = offset;
+    }
+
+    /**
+     * Create a tuple backed by slot slot of a page, as above. Its RecordId
+     * is only created if it is asked for.
+     */
+    Tuple(TupleDesc td, byte[] data, int offset, PageId pid, int slot) {
+    	this(td, data, offset);
+    	this.sourcePage = pid;
+    	this.sourceSlot = slot;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -46,6 +86,9 @@ public class Tuple implements Serializable {
      *         be null.
      */
     public RecordId getRecordId() {
+    	if (rid == null && sourcePage != null) {
+    		rid = new RecordId(sourcePage, sourceSlot);
+    	}
         return this.rid;
     }
 
@@ -57,6 +100,7 @@ public class Tuple implements Serializable {
      */
     public void setRecordId(RecordId rid) {
     	this.rid = rid;
+    	this.sourcePage = null;
     }
 
     /**
@@ -68,7 +112,9 @@ public class Tuple implements Serializable {
      *            new value for the field.
      */
     public void setField(int i, Field f) {
-       this.fields.set(i, f);
+    	// the other fields can no longer be copied as bytes
+    	decodeAll();
+    	this.fields[i] = f;
     }
 
     /**
@@ -78,8 +124,118 @@ public class Tuple implements Serializable {
      *            field index to return. Must be a valid index.
      */
     public Field getField(int i) {
-        // some code goes here
-        return this.fields.get(i);
+        Field f = fields != null ? fields[i] : null;
+        if (f == null && source != null) {
+        	f = schema.parseField(i, source, sourceOffset + schema.getFieldOffset(i));
+        	if (fields == null)
+        		fields = new Field[schema.numFields()];
+        	fields[i] = f;
+        }
+        return f;
+    }
+
+    /**
+     * Returns the value of an int field. Unlike getField this allocates
+     * nothing if the tuple is backed by bytes.
+     *
+     * @param i
+     *            field index to return. Must be the index of an INT_TYPE
+     *            field that is set.
+     * @throws ClassCastException if field i is not an int
+     */
+    public int getInt(int i) {
+    	if (source != null && (fields == null || fields[i] == null)
+    			&& schema.getFieldType(i) == Type.INT_TYPE) {
+    		int o = sourceOffset + schema.getFieldOffset(i);
+    		byte[] b = source;
+    		return ((b[o] & 0xff) << 24) | ((b[o + 1] & 0xff) << 16)
+    				| ((b[o + 2] & 0xff) << 8) | (b[o + 3] & 0xff);
+    	}
+    	return ((IntField) getField(i)).getValue();
+    }
+
+    /**
+     * Returns a tuple of schema td holding the fields of t1 followed by the
+     * fields of t2, as a join outputs. If both tuples are backed by bytes
+     * laid out as td lays them out, the bytes are copied and no field is
+     * decoded.
+     */
+    public static Tuple merge(TupleDesc td, Tuple t1, Tuple t2) {
+    	int n1 = t1.schema.numFields();
+    	int n2 = t2.schema.numFields();
+    	if (t1.source != null && t2.source != null && sameLayout(td, 0, t1.schema, 0, n1)
+    			&& sameLayout(td, n1, t2.schema, 0, n2)) {
+    		int size1 = t1.schema.getSize();
+    		byte[] data = new byte[size1 + t2.schema.getSize()];
+    		System.arraycopy(t1.source, t1.sourceOffset, data, 0, size1);
+    		System.arraycopy(t2.source, t2.sourceOffset, data, size1, data.length - size1);
+    		return new Tuple(td, data, 0);
+    	}
+    	Tuple t = new Tuple(td);
+    	for (int i = 0; i < n1; i++)
+    		t.fields[i] = t1.getField(i);
+    	for (int i = 0; i < n2; i++)
+    		t.fields[n1 + i] = t2.getField(i);
+    	return t;
+    }
+
+    /**
+     * Returns a tuple of schema td whose field i is field fieldIds[i] of t,
+     * with t's RecordId. Bytes are copied rather than fields decoded, as
+     * in {@link #merge}.
+     */
+    public static Tuple project(TupleDesc td, Tuple t, int[] fieldIds) {
+    	Tuple out;
+    	boolean flat = t.source != null;
+    	for (int i = 0; flat && i < fieldIds.length; i++)
+    		flat = sameLayout(td, i, t.schema, fieldIds[i], 1);
+    	if (flat) {
+    		byte[] data = new byte[td.getSize()];
+    		for (int i = 0; i < fieldIds.length; i++) {
+    			System.arraycopy(t.source, t.sourceOffset + t.schema.getFieldOffset(fieldIds[i]),
+    					data, td.getFieldOffset(i), td.getFieldLen(i));
+    		}
+    		out = new Tuple(td, data, 0);
+    	} else {
+    		out = new Tuple(td);
+    		for (int i = 0; i < fieldIds.length; i++)
+    			out.fields[i] = t.getField(fieldIds[i]);
+    	}
+    	out.rid = t.getRecordId();
+    	return out;
+    }
+
+    /**
+     * @return true if n fields of a from field i on are stored like the n
+     *         fields of b from field j on.
+     */
+    private static boolean sameLayout(TupleDesc a, int i, TupleDesc b, int j, int n) {
+    	for (int k = 0; k < n; k++) {
+    		if (a.getFieldType(i + k) != b.getFieldType(j + k)
+    				|| a.getDictionary(i + k) != b.getDictionary(j + k))
+    			return false;
+    	}
+    	return true;
+    }
+
+    /**
+     * Decode every field that has not been decoded yet.
+     */
+    private void decodeAll() {
+    	if (source != null) {
+    		for (int i = 0; i < schema.numFields(); i++) {
+    			getField(i);
+    		}
+    		if (fields == null)
+    			fields = new Field[0];
+    		source = null;
+    	}
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+    	decodeAll();
+    	getRecordId();
+    	out.defaultWriteObject();
     }
 
     /**
@@ -91,12 +247,13 @@ public class Tuple implements Serializable {
      * where \t is any whitespace (except a newline)
      */
     public String toString() {
+    	decodeAll();
     	String sumStr = "";
-        for (int i = 0; i < this.fields.size() -1; i++) {
-        	sumStr += this.fields.get(i).toString() + '\t';
+        for (int i = 0; i < this.fields.length -1; i++) {
+        	sumStr += this.fields[i].toString() + '\t';
         }
-        if(this.fields.size() > 0)
-        	sumStr += this.fields.get(this.fields.size() - 1).toString();
+        if(this.fields.length > 0)
+        	sumStr += this.fields[this.fields.length - 1].toString();
         return sumStr;
     }
 
@@ -106,7 +263,8 @@ public class Tuple implements Serializable {
      * */
     public Iterator<Field> fields()
     {
-        return this.fields.iterator();
+        decodeAll();
+        return Arrays.asList(this.fields).iterator();
     }
 
     /**
@@ -115,6 +273,7 @@ public class Tuple implements Serializable {
     public void resetTupleDesc(TupleDesc td)
     {
     	this.schema = td;
-    	this.fields = new Vector<Field>(td.numFields());
+    	this.fields = new Field[td.numFields()];
+    	this.source = null;
     }
 }
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 
@@ -25,9 +27,19 @@ public class TupleDesc implements Serializable {
          * */
         public final String fieldName;
 
+        /**
+         * The dictionary of a dictionary-encoded string field, or null
+         * */
+        public final transient StringDictionary dictionary;
+
         public TDItem(Type t, String n) {
+            this(t, n, null);
+        }
+
+        public TDItem(Type t, String n, StringDictionary dictionary) {
             this.fieldName = n;
             this.fieldType = t;
+            this.dictionary = dictionary;
         }
 
         public String toString() {
@@ -38,6 +50,10 @@ public class TupleDesc implements Serializable {
     }
 
     private Vector<TDItem> items;
+    // offsets[i] is where field i starts in a serialized tuple
+    private transient int[] offsets;
+    // getSize(), or 0 if it has not been computed yet
+    private transient int size;
     
     /**
      * @return
@@ -68,6 +84,24 @@ public class TupleDesc implements Serializable {
         }
     }
 
+    /**
+     * Create a new TupleDesc like {@link #TupleDesc(Type[], String[])} whose
+     * string fields with a non-null entry in dictionaries are stored as
+     * codes of that dictionary rather than as padded strings.
+     *
+     * @param dictionaries
+     *            the dictionary of each field, or null for fields that are
+     *            not dictionary-encoded.
+     */
+    public TupleDesc(Type[] typeAr, String[] fieldAr, StringDictionary[] dictionaries) {
+        this.items = new Vector<TDItem>();
+        for(int i = 0; i < typeAr.length; i++) {
+        	if (dictionaries[i] != null && typeAr[i] != Type.STRING_TYPE)
+        		throw new IllegalArgumentException("only string fields can be dictionary-encoded");
+        	this.items.add(new TDItem(typeAr[i], fieldAr[i], dictionaries[i]));
+        }
+    }
+
     /**
      * Constructor. Create a new tuple desc with typeAr.length fields with
      * fields of the specified types, with anonymous (unnamed) fields.
@@ -123,6 +157,72 @@ public class TupleDesc implements Serializable {
         throw new NoSuchElementException();
     }
 
+    /**
+     * Gets the dictionary of the ith field of this TupleDesc.
+     *
+     * @param i
+     *            The index of the field. It must be a valid index.
+     * @return the dictionary whose codes the field is stored as, or null if
+     *         the field is not dictionary-encoded.
+     */
+    public StringDictionary getDictionary(int i) throws NoSuchElementException {
+    	if(i >= 0 && i < items.size()) {
+    		return this.items.get(i).dictionary;
+    	}
+        throw new NoSuchElementException();
+    }
+
+    /**
+     * @return the number of bytes field i takes in a serialized tuple.
+     */
+    int getFieldLen(int i) {
+    	TDItem item = items.get(i);
+    	return item.dictionary != null ? Type.INT_TYPE.getLen() : item.fieldType.getLen();
+    }
+
+    /**
+     * Parse field i of a serialized tuple.
+     *
+     * @param data
+     *            the bytes holding the field
+     * @param offset
+     *            where the field starts in data
+     */
+    Field parseField(int i, byte[] data, int offset) {
+    	StringDictionary dictionary = items.get(i).dictionary;
+    	if (dictionary != null) {
+    		return dictionary.decode(((IntField) Type.INT_TYPE.parse(data, offset)).getValue());
+    	}
+    	return items.get(i).fieldType.parse(data, offset);
+    }
+
+    /**
+     * Serialize f as field i of a tuple, in the format read by parseField.
+     * A value a dictionary-encoded field has not seen yet gets a new code.
+     */
+    void serializeField(int i, Field f, DataOutputStream dos) throws IOException {
+    	StringDictionary dictionary = items.get(i).dictionary;
+    	if (dictionary != null) {
+    		dos.writeInt(dictionary.codeOf(f));
+    	} else {
+    		f.serialize(dos);
+    	}
+    }
+
+    /**
+     * Replace the values of t's dictionary-encoded fields by the fields of
+     * their dictionaries, giving new values a code. Called before t is
+     * stored, so that a dictionary that cannot be saved fails the insert.
+     */
+    void encodeFields(Tuple t) throws IOException {
+    	for (int i = 0; i < items.size(); i++) {
+    		StringDictionary dictionary = items.get(i).dictionary;
+    		if (dictionary != null) {
+    			t.setField(i, dictionary.decode(dictionary.codeOf(t.getField(i))));
+    		}
+    	}
+    }
+
     /**
      * Find the index of the field with a given name.
      * 
@@ -146,15 +246,38 @@ public class TupleDesc implements Serializable {
     /**
      * @return The size (in bytes) of tuples corresponding to this TupleDesc.
      *         Note that tuples from a given TupleDesc are of a fixed size.
+     *         A dictionary-encoded field takes the size of its code.
      */
     public int getSize() {
-        int size = 0;
-        for (TDItem tdItem : items) {
-			size += tdItem.fieldType.getLen();
-		}
+        int size = this.size;
+        if (size == 0) {
+            size = 0;
+            for (int i = 0; i < items.size(); i++) {
+                size += getFieldLen(i);
+            }
+            this.size = size;
+        }
         return size;
     }
 
+    /**
+     * @return the offset in bytes of the ith field from the start of a
+     *         serialized tuple of this TupleDesc.
+     */
+    int getFieldOffset(int i) {
+        int[] off = offsets;
+        if (off == null) {
+            off = new int[items.size()];
+            int size = 0;
+            for (int j = 0; j < off.length; j++) {
+                off[j] = size;
+                size += getFieldLen(j);
+            }
+            offsets = off;
+        }
+        return off[i];
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -170,18 +293,22 @@ public class TupleDesc implements Serializable {
     	int td2Size = td2.numFields();
     	Type[] typeAr = new Type[td1Size + td2Size];
     	String[] fieldAr = new String[td1Size + td2Size];
+    	// kept so that joined tuples can be copied as bytes
+    	StringDictionary[] dictionaries = new StringDictionary[td1Size + td2Size];
     	
     	//TODO: Copy more efficiently.
     	for (int i = 0; i < td1Size; i++) {
     		typeAr[i] = td1.getFieldType(i);
     		fieldAr[i] = td1.getFieldName(i);
+    		dictionaries[i] = td1.getDictionary(i);
     	}
     	
     	for (int i = 0; i < td2Size; i++) {
     		typeAr[i + td1Size] = td2.getFieldType(i);
     		fieldAr[i + td1Size] = td2.getFieldName(i);
+    		dictionaries[i + td1Size] = td2.getDictionary(i);
     	}    	
-        return new TupleDesc(typeAr, fieldAr);
+        return new TupleDesc(typeAr, fieldAr, dictionaries);
     }
 
     /**
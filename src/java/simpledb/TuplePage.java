@@ -0,0 +1,54 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * TuplePage is the interface HeapFile uses for its pages. It is implemented
+ * by HeapPage, which stores tuples in fixed-size slots, by
+ * SlottedHeapPage, which stores variable-length tuples behind an offset
+ * directory, and by PaxPage, which stores the values of each column
+ * together.
+ *
+ * @see HeapFile
+ */
+public interface TuplePage extends Page {
+
+    /**
+     * Adds the specified tuple to the page and sets its RecordId.
+     * @throws DbException if the tuple does not fit on the page or its
+     *         TupleDesc does not match the page's.
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Deletes the specified tuple from the page.
+     * @throws DbException if the tuple is not on this page.
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return an iterator over the tuples on this page. Calling remove on
+     *         it throws an UnsupportedOperationException.
+     */
+    public Iterator<Tuple> iterator();
+
+    /**
+     * @param columns the fields the caller will read, in any order
+     * @return an iterator over the tuples on this page in which the fields
+     *         not in columns may be null. Pages that store each column apart
+     *         only decode the columns asked for.
+     */
+    public Iterator<Tuple> iterator(int[] columns);
+
+    /**
+     * @return the free space on this page, in the unit the page uses for
+     *         its entries in the FreeSpaceMap: empty slots for HeapPage,
+     *         bytes for SlottedHeapPage.
+     */
+    public int getFreeSpace();
+
+    /**
+     * @return true if insertTuple(t) would succeed.
+     */
+    public boolean hasRoomFor(Tuple t);
+}
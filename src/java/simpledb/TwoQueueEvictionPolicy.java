@@ -0,0 +1,132 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * TwoQueueEvictionPolicy implements the full 2Q algorithm of Johnson and
+ * Shasha. A page read for the first time goes to A1in, a small FIFO queue.
+ * Pages pushed out of A1in are remembered (by id only) in the ghost queue
+ * A1out; a page that is requested again while in A1out is considered hot and
+ * goes to Am, which is managed as LRU. A sequential scan therefore only
+ * cycles through A1in and never displaces the hot pages in Am.
+ * <p>
+ * All queues are LinkedHashSets whose iteration order runs from the oldest
+ * (or least recently used) page to the newest.
+ *
+ * @Threadsafe
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+
+    /** Default share of the frames reserved for A1in. */
+    public static final double DEFAULT_IN_RATIO = 0.25;
+    /** Default size of A1out, relative to the number of frames. */
+    public static final double DEFAULT_OUT_RATIO = 0.5;
+
+    private final LinkedHashSet<PageId> a1in;
+    private final LinkedHashSet<PageId> a1out;
+    private final LinkedHashSet<PageId> am;
+    private final double inRatio;
+    private final double outRatio;
+    private int kin;
+    private int kout;
+
+    public TwoQueueEvictionPolicy(int numPages) {
+        this(numPages, DEFAULT_IN_RATIO, DEFAULT_OUT_RATIO);
+    }
+
+    /**
+     * @param numPages the number of frames of the BufferPool
+     * @param inRatio the share of the frames A1in may hold before its pages
+     *        are evicted in preference to those of Am
+     * @param outRatio the number of evicted page ids A1out remembers,
+     *        relative to numPages
+     */
+    public TwoQueueEvictionPolicy(int numPages, double inRatio, double outRatio) {
+        a1in = new LinkedHashSet<PageId>();
+        a1out = new LinkedHashSet<PageId>();
+        am = new LinkedHashSet<PageId>();
+        this.inRatio = inRatio;
+        this.outRatio = outRatio;
+        resize(numPages);
+    }
+
+    public synchronized void pageAdded(PageId pid) {
+        if (a1in.contains(pid) || am.contains(pid)) {
+            pageAccessed(pid);
+        } else if (a1out.remove(pid)) {
+            am.add(pid);
+        } else {
+            a1in.add(pid);
+        }
+    }
+
+    public synchronized boolean pageAccessed(PageId pid) {
+        if (am.remove(pid)) {
+            am.add(pid);
+            return true;
+        }
+        // a hit in A1in is deliberately ignored: it is most likely
+        // correlated with the first reference.
+        return a1in.contains(pid);
+    }
+
+    public synchronized PageId chooseVictim(PageId incoming) {
+        if (!a1in.isEmpty() && (a1in.size() > kin || am.isEmpty())) {
+            return a1in.iterator().next();
+        }
+        if (!am.isEmpty()) {
+            return am.iterator().next();
+        }
+        return null;
+    }
+
+    public synchronized void pageRemoved(PageId pid, boolean evicted) {
+        if (a1in.remove(pid)) {
+            if (evicted) {
+                a1out.add(pid);
+                if (a1out.size() > kout) {
+                    Iterator<PageId> it = a1out.iterator();
+                    it.next();
+                    it.remove();
+                }
+            }
+        } else {
+            am.remove(pid);
+        }
+    }
+
+    /**
+     * The sizes of A1in and A1out are recomputed from the ratios, and A1out
+     * forgets its oldest ids beyond the new size.
+     */
+    public synchronized void resize(int numPages) {
+        kin = Math.max(1, (int) (numPages * inRatio));
+        kout = Math.max(1, (int) (numPages * outRatio));
+        Iterator<PageId> it = a1out.iterator();
+        while (a1out.size() > kout) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return a1in.size() + am.size();
+    }
+
+    /**
+     * @return the pages of Am, the most recently used first, then those of
+     *         A1in, the newest first.
+     */
+    public synchronized List<PageId> residentPages() {
+        ArrayList<PageId> in = new ArrayList<PageId>(a1in);
+        ArrayList<PageId> pages = new ArrayList<PageId>(am);
+        Collections.reverse(in);
+        Collections.reverse(pages);
+        pages.addAll(in);
+        return pages;
+    }
+}
@@ -0,0 +1,341 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ZoneMap keeps the smallest and largest value of every INT column on each
+ * page of a HeapFile, so that a scan with a range predicate can skip pages
+ * that cannot hold a matching tuple without reading them.
+ * <p>
+ * Unlike {@link FreeSpaceMap} a zone map must never be too narrow: a page
+ * whose range does not include a value it holds would be skipped wrongly.
+ * So a page's range is only made exact from the page itself, when it is
+ * read from or written to disk. Inserts widen the range; deletes leave it
+ * as it is, which may make it wider than needed until the page is written.
+ * Pages whose range is unknown are never skipped.
+ * <p>
+ * The ranges are saved in a sidecar file (the heap file's name plus ".zm")
+ * every time a page is written. Ranges learned from pages that were only
+ * read are saved along with the next write, or by {@link #flush} or
+ * {@link #close}, so that a cold scan does not write the sidecar once per
+ * page. The sidecar's header holds the number of pages and the heap file's
+ * modification time as of the last write; if either does not match when
+ * the HeapFile is opened, e.g. because the heap file was rewritten by
+ * another program, the sidecar is ignored.
+ *
+ * @Threadsafe
+ */
+public class ZoneMap {
+
+    private static final int HEADER_SIZE = 4 + 8;
+
+    private final PageFileChannel sidecar;
+    private final File heapFile;
+    // column[i] is the index of field i among the INT fields, or -1
+    private final int[] column;
+    private final int numColumns;
+    // ranges[p] holds min and max of each INT column of page p in turn, or
+    // is null if the range of page p is unknown
+    private int[][] ranges;
+    private int numPages;
+    // the number of pages and modification time in the sidecar's header
+    private int headerPages = -1;
+    private long headerModified = -1;
+    // the pages whose ranges were learned from reads and are not saved yet
+    private final BitSet unsaved = new BitSet();
+    // set once a write to the sidecar failed; it is not written again
+    private boolean unwritable;
+
+    /**
+     * Open the zone map of a heap file.
+     *
+     * @param sidecarFile the file the map is persisted in
+     * @param heapFile the heap file the map describes
+     * @param td the schema of the heap file
+     * @param numPages the number of pages the heap file has now
+     */
+    public ZoneMap(File sidecarFile, File heapFile, TupleDesc td, int numPages) {
+        this.sidecar = new PageFileChannel(sidecarFile);
+        this.heapFile = heapFile;
+        this.column = new int[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < column.length; i++) {
+            column[i] = td.getFieldType(i) == Type.INT_TYPE ? n++ : -1;
+        }
+        this.numColumns = n;
+        this.numPages = numPages;
+        this.ranges = new int[Math.max(numPages, 16)][];
+        if (numColumns > 0 && sidecarFile.exists()) {
+            load();
+        }
+    }
+
+    /** @return the sidecar file name used for a heap file. */
+    public static File sidecarFor(File heapFile) {
+        return new File(heapFile.getPath() + ".zm");
+    }
+
+    private int entrySize() {
+        return 4 + 8 * numColumns;
+    }
+
+    private void load() {
+        try {
+            byte[] header = new byte[HEADER_SIZE];
+            ByteBuffer hb = ByteBuffer.wrap(header);
+            long modified = heapFile.lastModified();
+            if (sidecar.read(0, header, HEADER_SIZE) < HEADER_SIZE
+                    || hb.getInt() != numPages || hb.getLong() != modified) {
+                // out of date: start over so stale ranges are never trusted
+                sidecar.channel().truncate(0);
+                return;
+            }
+            headerPages = numPages;
+            headerModified = modified;
+            byte[] data = new byte[numPages * entrySize()];
+            sidecar.read(HEADER_SIZE, data, data.length);
+            ByteBuffer bb = ByteBuffer.wrap(data);
+            for (int p = 0; p < numPages; p++) {
+                boolean known = bb.getInt() != 0;
+                int[] range = new int[2 * numColumns];
+                for (int i = 0; i < range.length; i++) {
+                    range[i] = bb.getInt();
+                }
+                ranges[p] = known ? range : null;
+            }
+        } catch (IOException e) {
+            // an unreadable map is as good as no map
+            Arrays.fill(ranges, null);
+        }
+    }
+
+    /**
+     * @return false if no tuple on the page can satisfy all of the
+     *         predicates, true if some might.
+     */
+    public synchronized boolean mayMatch(int pageNo, List<Predicate> predicates) {
+        int[] range = pageNo < numPages ? ranges[pageNo] : null;
+        if (range == null) {
+            return true;
+        }
+        if (numColumns > 0 && range[0] > range[1]) {
+            // the page is empty
+            return false;
+        }
+        for (Predicate p : predicates) {
+            int c = column[p.getField()];
+            if (c < 0 || !(p.getOperand() instanceof IntField)) {
+                continue;
+            }
+            int min = range[2 * c];
+            int max = range[2 * c + 1];
+            int v = ((IntField) p.getOperand()).getValue();
+            boolean may;
+            switch (p.getOp()) {
+            case EQUALS:
+            case LIKE:
+                may = min <= v && v <= max;
+                break;
+            case NOT_EQUALS:
+                may = !(min == v && max == v);
+                break;
+            case GREATER_THAN:
+                may = max > v;
+                break;
+            case GREATER_THAN_OR_EQ:
+                may = max >= v;
+                break;
+            case LESS_THAN:
+                may = min < v;
+                break;
+            case LESS_THAN_OR_EQ:
+                may = min <= v;
+                break;
+            default:
+                may = true;
+            }
+            if (!may) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the smallest and largest value of INT field i on a page, or
+     *         null if they are unknown. An empty page has min > max.
+     */
+    public synchronized int[] getRange(int pageNo, int i) {
+        int[] range = pageNo < numPages ? ranges[pageNo] : null;
+        if (range == null || column[i] < 0) {
+            return null;
+        }
+        return new int[] {range[2 * column[i]], range[2 * column[i] + 1]};
+    }
+
+    /**
+     * Widen the range of a page to include a tuple just inserted into it.
+     */
+    public synchronized void tupleInserted(TuplePage page, Tuple t) {
+        if (numColumns == 0) {
+            return;
+        }
+        int pageNo = page.getId().getPageNumber();
+        int[] range = pageNo < numPages ? ranges[pageNo] : null;
+        if (range == null) {
+            // the page holds more than t; only the whole page can tell
+            set(pageNo, summarize(page));
+            return;
+        }
+        for (int i = 0; i < column.length; i++) {
+            int c = column[i];
+            if (c >= 0) {
+                int v = ((IntField) t.getField(i)).getValue();
+                range[2 * c] = Math.min(range[2 * c], v);
+                range[2 * c + 1] = Math.max(range[2 * c + 1], v);
+            }
+        }
+    }
+
+    /**
+     * Record the range of a page just read from disk, unless it is already
+     * known; the copy in the BufferPool may have changed since. The range
+     * is saved later, see {@link #flush}.
+     */
+    public synchronized void pageRead(TuplePage page) {
+        int pageNo = page.getId().getPageNumber();
+        if (numColumns == 0 || (pageNo < numPages && ranges[pageNo] != null)) {
+            return;
+        }
+        set(pageNo, summarize(page));
+        unsaved.set(pageNo);
+    }
+
+    /**
+     * Record the exact range of a page just written to disk and save it.
+     */
+    public synchronized void pageWritten(TuplePage page) {
+        if (numColumns == 0) {
+            return;
+        }
+        int pageNo = page.getId().getPageNumber();
+        set(pageNo, summarize(page));
+        persist(pageNo, pageNo + 1);
+        flush();
+    }
+
+    /**
+     * Calls {@link #pageWritten} for each of pages, which are sorted by page
+     * number, but saves the ranges of each run of consecutive pages with one
+     * write.
+     */
+    public synchronized void pagesWritten(List<TuplePage> pages) {
+        if (numColumns == 0 || pages.isEmpty()) {
+            return;
+        }
+        int start = pages.get(0).getId().getPageNumber();
+        int end = start;
+        for (TuplePage page : pages) {
+            int pageNo = page.getId().getPageNumber();
+            set(pageNo, summarize(page));
+            if (pageNo != end) {
+                persist(start, end);
+                start = pageNo;
+            }
+            end = pageNo + 1;
+        }
+        persist(start, end);
+        flush();
+    }
+
+    /**
+     * Save the ranges learned from reads since they were last saved, with
+     * one write for each run of consecutive pages.
+     */
+    public synchronized void flush() {
+        int from = unsaved.nextSetBit(0);
+        while (from >= 0) {
+            int end = unsaved.nextClearBit(from);
+            persist(from, end);
+            from = unsaved.nextSetBit(end);
+        }
+    }
+
+    /**
+     * Save the ranges not saved yet and close the sidecar file; it is
+     * reopened if the map is used again.
+     */
+    public void close() throws IOException {
+        flush();
+        sidecar.close();
+    }
+
+    private int[] summarize(TuplePage page) {
+        int[] range = new int[2 * numColumns];
+        for (int c = 0; c < numColumns; c++) {
+            range[2 * c] = Integer.MAX_VALUE;
+            range[2 * c + 1] = Integer.MIN_VALUE;
+        }
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            for (int i = 0; i < column.length; i++) {
+                int c = column[i];
+                if (c >= 0) {
+                    int v = t.getInt(i);
+                    range[2 * c] = Math.min(range[2 * c], v);
+                    range[2 * c + 1] = Math.max(range[2 * c + 1], v);
+                }
+            }
+        }
+        return range;
+    }
+
+    private void set(int pageNo, int[] range) {
+        if (pageNo >= ranges.length) {
+            ranges = Arrays.copyOf(ranges, Math.max(pageNo + 1, ranges.length * 2));
+        }
+        if (pageNo >= numPages) {
+            numPages = pageNo + 1;
+        }
+        ranges[pageNo] = range;
+    }
+
+    /**
+     * Save the ranges of pages from up to end and the header. Once a write
+     * fails the sidecar is left as it is, so that its header keeps the
+     * heap file's modification time from before and it is ignored the next
+     * time the heap file is opened.
+     */
+    private void persist(int from, int end) {
+        if (unwritable) {
+            return;
+        }
+        try {
+            ByteBuffer entries = ByteBuffer.allocate((end - from) * entrySize());
+            for (int pageNo = from; pageNo < end; pageNo++) {
+                int[] range = ranges[pageNo];
+                entries.putInt(range != null ? 1 : 0);
+                for (int i = 0; i < 2 * numColumns; i++) {
+                    entries.putInt(range != null ? range[i] : 0);
+                }
+            }
+            unsaved.clear(from, end);
+            sidecar.write(HEADER_SIZE + (long) from * entrySize(), entries.array());
+            long modified = heapFile.lastModified();
+            if (headerPages != numPages || headerModified != modified) {
+                sidecar.write(0, ByteBuffer.allocate(HEADER_SIZE).putInt(numPages).putLong(modified).array());
+                headerPages = numPages;
+                headerModified = modified;
+            }
+        } catch (IOException e) {
+            unwritable = true;
+        }
+    }
+}
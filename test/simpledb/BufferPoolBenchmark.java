@@ -0,0 +1,77 @@
+package simpledb;
+
+import java.util.Random;
+
+/**
+ * Measures the latency of BufferPool.getPage on the hit path for increasing
+ * pool sizes. Every page requested is resident, so the numbers reflect only
+ * the cost of the lookup and the replacement bookkeeping; they should stay
+ * flat as the pool grows.
+ *
+ * Run with: ant runbench -Dbench=BufferPoolBenchmark
+ */
+public class BufferPoolBenchmark {
+
+    private static final int[] POOL_SIZES = {1000, 10000, 50000};
+    private static final int LOOKUPS = 2000000;
+
+    /** A page that carries no data, so that readPage is essentially free. */
+    static class BenchPage implements Page {
+        private final PageId pid;
+
+        BenchPage(PageId pid) {
+            this.pid = pid;
+        }
+
+        public PageId getId() { return pid; }
+        public TransactionId isDirty() { return null; }
+        public void markDirty(boolean dirty, TransactionId tid) { }
+        public byte[] getPageData() { return new byte[0]; }
+        public Page getBeforeImage() { return this; }
+        public void setBeforeImage() { }
+    }
+
+    /** A table of BenchPages that never touches the disk. */
+    static class BenchFile extends TestUtil.SkeletonFile {
+        BenchFile(int tableid) {
+            super(tableid, Utility.getTupleDesc(1));
+        }
+
+        @Override
+        public Page readPage(PageId id) {
+            return new BenchPage(id);
+        }
+
+        @Override
+        public void writePage(Page p) {
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int numPages : POOL_SIZES) {
+            Database.reset();
+            BenchFile file = new BenchFile(42);
+            Database.getCatalog().addTable(file, "bench");
+            BufferPool bp = Database.resetBufferPool(numPages);
+            for (int i = 0; i < numPages; i++)
+                bp.getPage(tid, new HeapPageId(file.getId(), i), Permissions.READ_ONLY);
+
+            int[] order = new int[LOOKUPS];
+            Random rand = new Random(numPages);
+            for (int i = 0; i < LOOKUPS; i++)
+                order[i] = rand.nextInt(numPages);
+
+            // one untimed pass to let the JIT settle
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++)
+                    bp.getPage(tid, new HeapPageId(file.getId(), order[i]), Permissions.READ_ONLY);
+                long elapsed = System.nanoTime() - start;
+                if (round == 1)
+                    System.out.printf("numPages=%6d  hit latency %6.1f ns/getPage%n",
+                            numPages, (double) elapsed / LOOKUPS);
+            }
+        }
+    }
+}
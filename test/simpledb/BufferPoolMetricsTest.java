@@ -0,0 +1,125 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferPoolMetricsTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 5;
+
+    private HeapFile f;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        f = SystemTestUtil.createRandomHeapFile(2, 10 * 504, null, null);
+        tid = new TransactionId();
+        Database.resetBufferPool(POOL_PAGES).setReadAhead(false);
+    }
+
+    private Page get(int pageNo) throws Exception {
+        return Database.getBufferPool().getPage(tid, new HeapPageId(f.getId(), pageNo), Permissions.READ_ONLY);
+    }
+
+    /**
+     * Unit test for LatencyHistogram: percentiles are within a factor of
+     * two of the durations recorded.
+     */
+    @Test public void histogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.snapshot().getP99Nanos());
+        for (int i = 1; i <= 100; i++)
+            h.record(i * 1000);
+        LatencyHistogram.Snapshot s = h.snapshot();
+        assertEquals(100, s.getCount());
+        assertEquals(50500, s.getMeanNanos());
+        assertEquals(100000, s.getMaxNanos());
+        assertTrue(s.getP50Nanos() >= 50000 && s.getP50Nanos() < 100000);
+        assertTrue(s.getP99Nanos() >= 99000 && s.getP99Nanos() <= 100000);
+        h.reset();
+        assertEquals(0, h.snapshot().getCount());
+    }
+
+    /**
+     * Hits, misses and evictions are counted overall and for the table.
+     */
+    @Test public void hitsAndMisses() throws Exception {
+        for (int i = 0; i < POOL_PAGES; i++)
+            get(i);
+        get(0);
+        get(1);
+        get(POOL_PAGES);
+
+        BufferPoolMetrics.Snapshot s = Database.getBufferPool().snapshotMetrics();
+        assertEquals(2, s.getHits());
+        assertEquals(POOL_PAGES + 1, s.getMisses());
+        assertEquals(1, s.getEvictions());
+        assertEquals(POOL_PAGES, s.getResidentPages());
+        assertEquals(POOL_PAGES, s.getCapacityPages());
+        assertEquals(0, s.getDirtyPages());
+
+        BufferPoolMetrics.TableSnapshot t = s.getTable(f.getId());
+        assertEquals(2, t.getHits());
+        assertEquals(POOL_PAGES + 1, t.getMisses());
+        assertEquals(POOL_PAGES + 1, t.getReads().getCount());
+        assertEquals(Database.getCatalog().getTableName(f.getId()), t.getTableName());
+
+        Database.getBufferPool().getMetrics().reset();
+        assertEquals(0, Database.getBufferPool().snapshotMetrics().getMisses());
+    }
+
+    /**
+     * Dirty pages are counted until they are written.
+     */
+    @Test public void dirtyPages() throws Exception {
+        Page p = get(0);
+        p.markDirty(true, tid);
+        get(1).markDirty(true, tid);
+        assertEquals(2, Database.getBufferPool().snapshotMetrics().getDirtyPages());
+
+        Database.getBufferPool().flushPages(tid);
+        BufferPoolMetrics.Snapshot s = Database.getBufferPool().snapshotMetrics();
+        assertEquals(0, s.getDirtyPages());
+        assertEquals(2, s.getPagesWritten());
+        assertEquals(1, s.getTable(f.getId()).getWrites().getCount());
+    }
+
+    /**
+     * The JMX bean reports the current buffer pool.
+     */
+    @Test public void mbean() throws Exception {
+        BufferPoolMetrics.registerMBean();
+        BufferPoolMetrics.registerMBean();
+        get(0);
+        get(0);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(BufferPoolMetrics.OBJECT_NAME);
+        assertEquals(1L, server.getAttribute(name, "Hits"));
+        assertEquals(1L, server.getAttribute(name, "Misses"));
+        assertEquals(0.5, (Double) server.getAttribute(name, "HitRatio"), 1e-9);
+        assertEquals(1, ((Object[]) server.getAttribute(name, "Tables")).length);
+
+        Database.resetBufferPool(POOL_PAGES);
+        assertEquals(0L, server.getAttribute(name, "Hits"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolMetricsTest.class);
+    }
+}
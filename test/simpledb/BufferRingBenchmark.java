@@ -0,0 +1,83 @@
+package simpledb;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures the hit ratio of point lookups on a hot set of pages while a
+ * table four times the size of the buffer pool is scanned, once with the
+ * scan reading every page through BufferPool.getPage like any other reader
+ * and once through a HeapFile iterator, which reads through a BufferRing.
+ *
+ * Run with: ant runbench -Dbench=BufferRingBenchmark
+ */
+public class BufferRingBenchmark {
+
+    private static final int POOL_PAGES = 500;
+    private static final int HOT_PAGES = 200;
+    private static final int SCAN_PAGES = 4 * POOL_PAGES;
+    // one lookup per this many scanned pages
+    private static final int PAGES_PER_LOOKUP = 2;
+
+    /** A HeapFile that counts the pages the BufferPool reads from it. */
+    static class CountingHeapFile extends HeapFile {
+        int reads;
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads++;
+            return super.readPage(pid);
+        }
+    }
+
+    private static CountingHeapFile create(int pages, String name) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, pages * 504, 1000, null, null);
+        f.deleteOnExit();
+        CountingHeapFile hf = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, name);
+        return hf;
+    }
+
+    public static void main(String[] args) throws Exception {
+        CountingHeapFile hot = create(HOT_PAGES, "hot");
+        CountingHeapFile big = create(SCAN_PAGES, "big");
+        System.out.printf("pool: %d pages, hot set: %d pages, scanned table: %d pages%n",
+                POOL_PAGES, HOT_PAGES, SCAN_PAGES);
+
+        for (boolean ring : new boolean[] {false, true}) {
+            BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < HOT_PAGES; i++)
+                bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+            hot.reads = 0;
+
+            Random r = new Random(42);
+            int lookups = 0;
+            DbFileIterator it = big.iterator(tid);
+            it.open();
+            for (int page = 0; page < SCAN_PAGES; page++) {
+                if (ring) {
+                    for (int i = 0; i < 504; i++)
+                        it.next();
+                    it.hasNext();
+                } else {
+                    bp.getPage(tid, new HeapPageId(big.getId(), page), Permissions.READ_ONLY);
+                }
+                if (page % PAGES_PER_LOOKUP == 0) {
+                    bp.getPage(tid, new HeapPageId(hot.getId(), r.nextInt(HOT_PAGES)), Permissions.READ_ONLY);
+                    lookups++;
+                }
+            }
+            it.close();
+            System.out.printf("%-12s hot set hit ratio %5.1f%% (%d misses in %d lookups)%n",
+                    ring ? "ring" : "shared pool", 100.0 * (lookups - hot.reads) / lookups,
+                    hot.reads, lookups);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferRingTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 50;
+
+    /** A HeapFile that counts the pages the BufferPool reads from it. */
+    static class CountingHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            return super.readPage(pid);
+        }
+    }
+
+    private CountingHeapFile hot;
+    private CountingHeapFile big;
+    private TransactionId tid;
+
+    private static CountingHeapFile create(int pages) throws Exception {
+        int rows = pages * 504;
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, rows, 1000, null, null);
+        CountingHeapFile hf = new CountingHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        Database.resetBufferPool(POOL_PAGES);
+        hot = create(10);
+        big = create(200);
+        tid = new TransactionId();
+    }
+
+    private void readAll(HeapFile f) throws Exception {
+        for (int i = 0; i < f.numPages(); i++) {
+            Database.getBufferPool().getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    /**
+     * Only tables larger than a fraction of the pool are read through a ring.
+     */
+    @Test public void bulkReadRing() {
+        BufferPool bp = Database.getBufferPool();
+        assertNull(bp.bulkReadRing(POOL_PAGES * BufferPool.BULK_READ_PERCENT / 100));
+        BufferRing ring = bp.bulkReadRing(POOL_PAGES);
+        assertEquals(POOL_PAGES / 8, ring.capacity());
+        assertEquals(BufferPool.RING_PAGES, new BufferPool(10000).bulkReadRing(10000).capacity());
+    }
+
+    /**
+     * A scan of a table four times the size of the pool leaves the pages
+     * read before it resident.
+     */
+    @Test public void hotPagesSurviveScan() throws Exception {
+        readAll(hot);
+        assertEquals(10, hot.reads.get());
+
+        SeqScan scan = new SeqScan(tid, big.getId(), "");
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        assertEquals(200 * 504, n);
+        assertEquals(200, big.reads.get());
+
+        readAll(hot);
+        assertEquals(10, hot.reads.get());
+    }
+
+    /**
+     * A ring page that another reader asks for stays in the pool after the
+     * scan is done.
+     */
+    @Test public void sharedPageLeavesRing() throws Exception {
+        DbFileIterator it = big.iterator(tid);
+        it.open();
+        assertTrue(it.hasNext());
+        HeapPageId first = new HeapPageId(big.getId(), 0);
+        Database.getBufferPool().getPage(tid, first, Permissions.READ_ONLY);
+        assertEquals(1, big.reads.get());
+        it.close();
+
+        Database.getBufferPool().getPage(tid, first, Permissions.READ_ONLY);
+        assertEquals(1, big.reads.get());
+        // the pages only the scan read are gone
+        Database.getBufferPool().getPage(tid, new HeapPageId(big.getId(), 1), Permissions.READ_ONLY);
+        assertEquals(2, big.reads.get());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferRingTest.class);
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.NoSuchElementException;
 import java.util.Random;
@@ -73,6 +74,36 @@ public class CatalogTest extends SimpleDbTestBase {
         assertEquals(id1, f.getId());
     }
     
+    /**
+     * Unit test for Catalog.loadSchema()
+     */
+    @Test public void loadSchema() throws Exception {
+        java.io.File schema = java.io.File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        java.io.PrintWriter out = new java.io.PrintWriter(schema);
+        out.println("plain (a int pk, b string)");
+        out.println("mapped (a int, b int) mmap");
+        out.println("packed (a int, b string) slotted mmap");
+        out.println("archive (a int, b int) compressed");
+        out.println("wide (a int, b int) pax");
+        out.close();
+
+        Database.getCatalog().loadSchema(schema.getAbsolutePath());
+        HeapFile plain = (HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("plain"));
+        HeapFile mapped = (HeapFile) Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("mapped"));
+        assertEquals(false, plain.isMemoryMapped());
+        assertEquals(true, mapped.isMemoryMapped());
+        assertEquals("a", Database.getCatalog().getPrimaryKey(plain.getId()));
+        assertTrue(Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("packed")) instanceof SlottedHeapFile);
+        assertTrue(Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("archive")) instanceof CompressedHeapFile);
+        assertTrue(Database.getCatalog().getDatabaseFile(
+                Database.getCatalog().getTableId("wide")) instanceof PaxFile);
+    }
+
     /**
      * Check that duplicate names are handled correctly
      */
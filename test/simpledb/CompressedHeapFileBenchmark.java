@@ -0,0 +1,61 @@
+package simpledb;
+
+import java.io.File;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the disk footprint and SeqScan throughput of the same table
+ * stored as a HeapFile and as a CompressedHeapFile, with the buffer pool
+ * much smaller than the table. Both files are in the OS page cache, so the
+ * scan numbers show the CPU cost of inflating pages; on a cold cache the
+ * compressed table reads proportionally fewer bytes from disk.
+ *
+ * Run with: ant runbench -Dbench=CompressedHeapFileBenchmark
+ */
+public class CompressedHeapFileBenchmark {
+
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 252 * 2000;
+    private static final int POOL_PAGES = 64;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        // values below 2^16, so half of every int is zero bytes
+        File f = SystemTestUtil.createRandomHeapFileUnopened(COLUMNS, ROWS, 1 << 16, null, null);
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS));
+        Database.getCatalog().addTable(hf, "plain");
+        File cfFile = File.createTempFile("bench", ".dat");
+        cfFile.deleteOnExit();
+        cfFile.delete();
+        FreeSpaceMap.sidecarFor(cfFile).deleteOnExit();
+        ZoneMap.sidecarFor(cfFile).deleteOnExit();
+        CompressedHeapFile cf = CompressedHeapFile.compress(hf, cfFile);
+        Database.getCatalog().addTable(cf, "compressed");
+        System.out.printf("table: %d pages, %d bytes plain, %d bytes compressed (%.0f%%), buffer pool: %d pages%n",
+                hf.numPages(), f.length(), cf.diskSize(), 100.0 * cf.diskSize() / f.length(), POOL_PAGES);
+
+        for (HeapFile table : new HeapFile[] {hf, cf, hf, cf}) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                Database.resetBufferPool(POOL_PAGES);
+                long start = System.nanoTime();
+                SeqScan scan = new SeqScan(new TransactionId(), table.getId(), "t");
+                scan.open();
+                int n = 0;
+                while (scan.hasNext()) {
+                    scan.next();
+                    n++;
+                }
+                scan.close();
+                best = Math.min(best, System.nanoTime() - start);
+                if (n != ROWS)
+                    throw new IllegalStateException("scanned " + n + " rows");
+            }
+            double secs = best / 1e9;
+            System.out.printf("%-10s %8.1f MB/s %10.0f tuples/s%n", table == cf ? "compressed" : "plain",
+                    f.length() / secs / (1 << 20), ROWS / secs);
+        }
+    }
+}
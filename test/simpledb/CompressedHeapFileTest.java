@@ -0,0 +1,125 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+
+    private File file;
+
+    @Before public void setUp() throws Exception {
+        file = File.createTempFile("compressed", ".dat");
+        file.deleteOnExit();
+        file.delete();
+        FreeSpaceMap.sidecarFor(file).deleteOnExit();
+        ZoneMap.sidecarFor(file).deleteOnExit();
+    }
+
+    private CompressedHeapFile open() throws IOException {
+        CompressedHeapFile cf = new CompressedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        return cf;
+    }
+
+    /**
+     * Unit test for CompressedHeapFile.compress(): the copy holds the same
+     * tuples and takes less disk.
+     */
+    @Test public void compress() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 2000, 100, null, tuples);
+        CompressedHeapFile cf = CompressedHeapFile.compress(hf, file);
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        assertEquals(hf.numPages(), cf.numPages());
+        assertEquals(file.length(), cf.diskSize());
+        assertTrue(cf.diskSize() < hf.getFile().length() / 2);
+        SystemTestUtil.matchTuples(cf, tuples);
+
+        // and again after the page table is rebuilt
+        cf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        SystemTestUtil.matchTuples(open(), tuples);
+    }
+
+    /**
+     * Pages written through the BufferPool are rewritten in place while
+     * they fit their extent and moved to the end of the file when they don't.
+     */
+    @Test public void insertAndReopen() throws Exception {
+        CompressedHeapFile cf = open();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++) {
+            Tuple t = Utility.getHeapTuple(new int[] {i, i * 7919});
+            Database.getBufferPool().insertTuple(tid, cf.getId(), t);
+            tuples.add(SystemTestUtil.tupleToList(t));
+        }
+        Database.getBufferPool().flushAllPages();
+        assertEquals(2, cf.numPages());
+        long size = cf.diskSize();
+        // the empty pages written by insertTuple have been moved
+        assertTrue(size > 2 * CompressedHeapFile.EXTENT_ALIGN);
+
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(cf.getId(), 0), Permissions.READ_WRITE);
+        page.deleteTuple(page.iterator().next());
+        cf.writePage(page);
+        assertEquals(size, cf.diskSize());
+        tuples.remove(0);
+
+        cf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        cf = open();
+        assertEquals(2, cf.numPages());
+        assertEquals(size, cf.diskSize());
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /**
+     * An extent cut short at the end of the file is ignored and overwritten.
+     */
+    @Test public void tornExtent() throws Exception {
+        CompressedHeapFile cf = open();
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, cf.getId(), Utility.getHeapTuple(new int[] {1, 2}));
+        Database.getBufferPool().flushAllPages();
+        long size = cf.diskSize();
+        cf.close();
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] {0, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 10, 1, 2, 3});
+        out.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        cf = open();
+        assertEquals(1, cf.numPages());
+        assertEquals(size, cf.diskSize());
+        Database.getBufferPool().insertTuple(tid, cf.getId(), Utility.getHeapTuple(new int[] {3, 4}));
+        Database.getBufferPool().flushAllPages();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        tuples.add(SystemTestUtil.tupleToList(Utility.getHeapTuple(new int[] {1, 2})));
+        tuples.add(SystemTestUtil.tupleToList(Utility.getHeapTuple(new int[] {3, 4})));
+        SystemTestUtil.matchTuples(open(), tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,205 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class EvictionPolicyTest {
+
+    private static PageId pid(int i) {
+        return new HeapPageId(1, i);
+    }
+
+    private static EvictionPolicy filled(EvictionPolicy policy, int n) {
+        for (int i = 0; i < n; i++)
+            policy.pageAdded(pid(i));
+        return policy;
+    }
+
+    /**
+     * Unit test for LruEvictionPolicy
+     */
+    @Test public void lru() {
+        EvictionPolicy lru = filled(new LruEvictionPolicy(), 3);
+        assertEquals(pid(0), lru.chooseVictim(null));
+        assertTrue(lru.pageAccessed(pid(0)));
+        assertEquals(pid(1), lru.chooseVictim(null));
+        assertFalse(lru.pageAccessed(pid(7)));
+        lru.pageRemoved(pid(1), true);
+        lru.pageRemoved(pid(2), true);
+        assertEquals(pid(0), lru.chooseVictim(null));
+        lru.pageRemoved(pid(0), false);
+        assertNull(lru.chooseVictim(null));
+        assertEquals(0, lru.size());
+    }
+
+    /**
+     * Unit test for ClockEvictionPolicy: a referenced page gets a second
+     * chance.
+     */
+    @Test public void clock() {
+        EvictionPolicy clock = filled(new ClockEvictionPolicy(3), 3);
+        // every bit is set, so the first sweep clears them and returns page 0
+        assertEquals(pid(0), clock.chooseVictim(null));
+        clock.pageRemoved(pid(0), true);
+        clock.pageAdded(pid(3));
+        clock.pageAccessed(pid(1));
+        assertEquals(pid(2), clock.chooseVictim(null));
+        assertEquals(3, clock.size());
+        // the ring grows if it is overfilled
+        clock.pageAdded(pid(4));
+        assertEquals(4, clock.size());
+    }
+
+    /**
+     * Unit test for TwoQueueEvictionPolicy: a page seen again after eviction
+     * from A1in is promoted and survives a scan.
+     */
+    @Test public void twoQueue() {
+        EvictionPolicy q = new TwoQueueEvictionPolicy(4);
+        filled(q, 4);
+        assertEquals(pid(0), q.chooseVictim(pid(4)));
+        q.pageRemoved(pid(0), true);
+        q.pageAdded(pid(4));
+        // page 0 is remembered in A1out, so it goes to Am this time
+        PageId victim = q.chooseVictim(pid(0));
+        assertEquals(pid(1), victim);
+        q.pageRemoved(victim, true);
+        q.pageAdded(pid(0));
+        for (int i = 100; i < 120; i++) {
+            victim = q.chooseVictim(pid(i));
+            assertFalse(pid(0).equals(victim));
+            q.pageRemoved(victim, true);
+            q.pageAdded(pid(i));
+        }
+    }
+
+    /**
+     * Unit test for ArcEvictionPolicy: a miss on a page in B1 grows T1.
+     */
+    @Test public void arc() {
+        ArcEvictionPolicy arc = new ArcEvictionPolicy(2);
+        filled(arc, 2);
+        arc.pageAccessed(pid(1));
+        assertEquals(pid(0), arc.chooseVictim(pid(2)));
+        arc.pageRemoved(pid(0), true);
+        arc.pageAdded(pid(2));
+        assertEquals(0, arc.getTarget());
+        PageId victim = arc.chooseVictim(pid(0));
+        assertEquals(1, arc.getTarget());
+        arc.pageRemoved(victim, true);
+        arc.pageAdded(pid(0));
+        assertEquals(1, arc.getTarget());
+        assertEquals(2, arc.size());
+    }
+
+    /**
+     * A policy resized to fewer frames keeps its target within them.
+     */
+    @Test public void arcResize() {
+        ArcEvictionPolicy arc = new ArcEvictionPolicy(4);
+        filled(arc, 4);
+        arc.pageAccessed(pid(3));
+        // each miss on a page of B1 grows the target of T1 by one
+        for (int i = 4; i < 7; i++) {
+            PageId incoming = i == 4 ? pid(4) : pid(i - 5);
+            PageId victim = arc.chooseVictim(incoming);
+            arc.pageRemoved(victim, true);
+            arc.pageAdded(incoming);
+        }
+        assertEquals(2, arc.getTarget());
+        arc.resize(1);
+        assertEquals(1, arc.getTarget());
+        assertEquals(4, arc.size());
+    }
+
+    /**
+     * Unit test for EvictionReplay: scan resistance shows in the hit ratios.
+     */
+    @Test public void replay() {
+        // a hot set of 8 pages, each read twice, interleaved with a long
+        // one-off scan; LRU only gets the back-to-back hits
+        ArrayList<PageId> trace = new ArrayList<PageId>();
+        int scan = 1000;
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 8; i++) {
+                trace.add(new HeapPageId(2, i));
+                trace.add(new HeapPageId(2, i));
+            }
+            for (int i = 0; i < 10; i++)
+                trace.add(new HeapPageId(3, scan++));
+        }
+        double lru = EvictionReplay.hitRatio(trace, 12, new LruEvictionPolicy());
+        double twoQ = EvictionReplay.hitRatio(trace, 12, new TwoQueueEvictionPolicy(12, 0.25, 2.0));
+        double arc = EvictionReplay.hitRatio(trace, 12, new ArcEvictionPolicy(12));
+        assertTrue(twoQ > lru);
+        assertTrue(arc > lru);
+        for (String name : EvictionReplay.POLICIES) {
+            EvictionPolicy p = EvictionReplay.createPolicy(name, 12);
+            double ratio = EvictionReplay.hitRatio(trace, 12, p);
+            assertTrue(ratio >= 0.0 && ratio <= 1.0);
+            assertTrue(p.size() <= 12);
+        }
+    }
+
+    /**
+     * Every policy keeps the BufferPool within its capacity and returns the
+     * right pages.
+     */
+    @Test public void bufferPool() throws Exception {
+        HeapFile hf = simpledb.systemtest.SystemTestUtil.createRandomHeapFile(2, 504 * 6, null, null);
+        TransactionId tid = new TransactionId();
+        for (String name : EvictionReplay.POLICIES) {
+            BufferPool bp = new BufferPool(3, EvictionReplay.createPolicy(name, 3));
+            HashSet<PageId> seen = new HashSet<PageId>();
+            for (int i = 0; i < 20; i++) {
+                PageId pid = new HeapPageId(hf.getId(), i % 6);
+                Page p = bp.getPage(tid, pid, Permissions.READ_ONLY);
+                assertEquals(pid, p.getId());
+                seen.add(pid);
+                assertTrue(bp.getEvictionPolicy().size() <= 3);
+            }
+            assertEquals(6, seen.size());
+        }
+    }
+
+    /**
+     * Every policy lists its resident pages with its next victim last.
+     */
+    @Test public void residentPages() {
+        EvictionPolicy lru = filled(new LruEvictionPolicy(), 3);
+        lru.pageAccessed(pid(0));
+        assertEquals(Arrays.asList(pid(0), pid(2), pid(1)), lru.residentPages());
+        for (String name : EvictionReplay.POLICIES) {
+            EvictionPolicy p = filled(EvictionReplay.createPolicy(name, 8), 8);
+            p.pageAccessed(pid(3));
+            List<PageId> pages = p.residentPages();
+            assertEquals(8, pages.size());
+            assertEquals(8, new HashSet<PageId>(pages).size());
+            assertEquals(p.chooseVictim(null), pages.get(pages.size() - 1));
+        }
+    }
+
+    @Test public void parseAccess() {
+        assertEquals(new HeapPageId(5, 6), EvictionReplay.parseAccess("5 6"));
+        assertEquals(new BTreePageId(5, 6, BTreePageId.LEAF),
+                EvictionReplay.parseAccess(" 5 6 " + BTreePageId.LEAF));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(EvictionPolicyTest.class);
+    }
+}
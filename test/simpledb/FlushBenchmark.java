@@ -0,0 +1,69 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures the time to flush 10k dirty pages of one table, written one
+ * page at a time in hash order as flushAllPages used to, and by
+ * flushAllPages, which sorts them and writes each run of consecutive pages
+ * with one gathering write. Every other page of the table is dirty in the
+ * "sparse" case, so runs are single pages and only the sorting helps.
+ *
+ * Run with: ant runbench -Dbench=FlushBenchmark
+ */
+public class FlushBenchmark {
+
+    private static final int PAGES = 10000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 2 * PAGES * 504, 1000, null, null);
+        f.deleteOnExit();
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, "t");
+        System.out.printf("%d dirty pages of a %d page table%n", PAGES, table.numPages());
+
+        for (int stride : new int[] {1, 2}) {
+            long perPage = Long.MAX_VALUE;
+            long sorted = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                BufferPool bp = Database.resetBufferPool(PAGES);
+                ArrayList<Page> dirty = dirty(bp, table, stride);
+                // what flushAllPages did: a write per page, in the pool's order
+                Collections.shuffle(dirty, new Random(run));
+                long start = System.nanoTime();
+                for (Page p : dirty) {
+                    table.writePage(p);
+                    p.markDirty(false, null);
+                }
+                table.channel.channel().force(false);
+                perPage = Math.min(perPage, System.nanoTime() - start);
+
+                dirty(bp, table, stride);
+                start = System.nanoTime();
+                bp.flushAllPages();
+                table.channel.channel().force(false);
+                sorted = Math.min(sorted, System.nanoTime() - start);
+            }
+            System.out.printf("%-6s page at a time %7.1f ms, sorted and coalesced %7.1f ms%n",
+                    stride == 1 ? "dense" : "sparse", perPage / 1e6, sorted / 1e6);
+        }
+    }
+
+    /** Read PAGES pages of table, stride apart, and mark them dirty. */
+    private static ArrayList<Page> dirty(BufferPool bp, HeapFile table, int stride) throws Exception {
+        TransactionId tid = new TransactionId();
+        ArrayList<Page> pages = new ArrayList<Page>();
+        for (int i = 0; i < PAGES; i++) {
+            Page p = bp.getPage(tid, new HeapPageId(table.getId(), i * stride), Permissions.READ_WRITE);
+            p.markDirty(true, tid);
+            pages.add(p);
+        }
+        return pages;
+    }
+}
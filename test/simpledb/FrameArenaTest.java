@@ -0,0 +1,130 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class FrameArenaTest extends SimpleDbTestBase {
+
+    private static final int POOL_PAGES = 10;
+
+    private HeapFile f;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        f = SystemTestUtil.createRandomHeapFile(2, 20 * 504, null, null);
+        tid = new TransactionId();
+    }
+
+    private static ArrayList<Integer> values(Page page) {
+        ArrayList<Integer> out = new ArrayList<Integer>();
+        Iterator<Tuple> it = ((HeapPage) page).iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            out.add(t.getInt(0));
+            out.add(t.getInt(1));
+        }
+        return out;
+    }
+
+    /**
+     * Unit test for FrameArena: frames are handed out until the arena is
+     * full and can be reused once freed.
+     */
+    @Test public void allocateAndFree() {
+        FrameArena arena = new FrameArena(3 * 4096 + 100, 4096);
+        assertEquals(3, arena.capacity());
+        FrameArena.Frame a = arena.allocate();
+        FrameArena.Frame b = arena.allocate();
+        FrameArena.Frame c = arena.allocate();
+        assertNull(arena.allocate());
+        assertEquals(3, arena.size());
+
+        byte[] image = new byte[4096];
+        Arrays.fill(image, (byte) 7);
+        b.store(image);
+        byte[] read = new byte[4096];
+        b.buffer().get(read);
+        assertTrue(Arrays.equals(image, read));
+        assertEquals(0, a.buffer().get(0));
+        assertEquals(0, c.buffer().get(4095));
+
+        arena.free(b);
+        assertTrue(b.isFreed());
+        assertFalse(a.isFreed());
+        arena.free(b);
+        assertEquals(2, arena.size());
+        FrameArena.Frame d = arena.allocate();
+        assertNotSame(b, d);
+        assertFalse(d.isFreed());
+        assertNull(arena.allocate());
+    }
+
+    /**
+     * A pool sized in bytes holds as many pages as fit and decodes a new
+     * copy of a page every time it is read.
+     */
+    @Test public void decodeOnAccess() throws Exception {
+        BufferPool bp = Database.resetBufferPoolBytes(POOL_PAGES * BufferPool.getPageSize());
+        assertTrue(bp.isOffHeap());
+        assertEquals(POOL_PAGES, bp.getNumPages());
+
+        HeapPageId pid = new HeapPageId(f.getId(), 3);
+        Page first = bp.getPage(tid, pid, Permissions.READ_ONLY);
+        Page again = bp.getPage(tid, pid, Permissions.READ_ONLY);
+        assertNotSame(first, again);
+        assertEquals(values(f.readPage(pid)), values(again));
+
+        // more pages than fit are evicted as usual
+        for (int i = 0; i < 20; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        assertEquals(values(f.readPage(pid)), values(bp.getPage(tid, pid, Permissions.READ_ONLY)));
+    }
+
+    /**
+     * A page that may be changed stays on the heap until it is written out,
+     * and the change is seen by later readers after that.
+     */
+    @Test public void writesStayOnHeapUntilFlushed() throws Exception {
+        BufferPool bp = Database.resetBufferPoolBytes(POOL_PAGES * BufferPool.getPageSize());
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+        assertSame(page, bp.getPage(tid, pid, Permissions.READ_WRITE));
+        assertSame(page, bp.getPage(tid, pid, Permissions.READ_ONLY));
+
+        Tuple t = page.iterator().next();
+        page.deleteTuple(t);
+        page.markDirty(true, tid);
+        assertSame(page, bp.getPage(tid, pid, Permissions.READ_ONLY));
+
+        bp.flushPages(tid);
+        HeapPage decoded = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+        assertNotSame(page, decoded);
+        assertNull(decoded.isDirty());
+        assertEquals(1, decoded.getNumEmptySlots());
+        assertEquals(values(page), values(decoded));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FrameArenaTest.class);
+    }
+}
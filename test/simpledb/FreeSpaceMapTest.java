@@ -0,0 +1,105 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FreeSpaceMapTest extends TestUtil.CreateHeapFile {
+
+    private File file;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("fsm", ".fsm");
+        file.deleteOnExit();
+        file.delete();
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for FreeSpaceMap.findPage() and update()
+     */
+    @Test public void findPage() {
+        FreeSpaceMap fsm = new FreeSpaceMap(file, 3);
+        assertEquals(FreeSpaceMap.UNKNOWN, fsm.getFreeSlots(1));
+        assertEquals(0, fsm.findPage());
+        fsm.update(0, 0);
+        fsm.update(1, 0);
+        assertEquals(2, fsm.findPage());
+        fsm.update(2, 0);
+        assertEquals(-1, fsm.findPage());
+        fsm.update(1, 4);
+        assertEquals(1, fsm.findPage());
+        assertEquals(4, fsm.getFreeSlots(1));
+
+        // pages past the end are added
+        fsm.update(1, 0);
+        fsm.update(40, 0);
+        assertEquals(41, fsm.numPages());
+        assertEquals(3, fsm.findPage());
+    }
+
+    /**
+     * Persisted counts are read back when the map is opened again, unless
+     * the heap file has a different number of pages.
+     */
+    @Test public void persist() throws Exception {
+        FreeSpaceMap fsm = new FreeSpaceMap(file, 2);
+        fsm.persist(0, 0);
+        fsm.persist(1, 7);
+        fsm.update(1, 0);
+        fsm.close();
+
+        fsm = new FreeSpaceMap(file, 2);
+        assertEquals(0, fsm.getFreeSlots(0));
+        assertEquals(7, fsm.getFreeSlots(1));
+        assertEquals(1, fsm.findPage());
+        fsm.close();
+
+        fsm = new FreeSpaceMap(file, 3);
+        assertEquals(FreeSpaceMap.UNKNOWN, fsm.getFreeSlots(0));
+        assertEquals(0, fsm.findPage());
+        fsm.close();
+        assertEquals(0, file.length());
+    }
+
+    /**
+     * HeapFile.insertTuple() goes back to a page once a delete frees a slot.
+     */
+    @Test public void heapFileReusesSpace() throws Exception {
+        Tuple first = null;
+        for (int i = 0; i < 504 * 3; ++i) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            empty.insertTuple(tid, t);
+            if (i == 0) {
+                first = t;
+            }
+        }
+        assertEquals(3, empty.numPages());
+        assertEquals(-1, empty.getFreeSpaceMap().findPage());
+
+        empty.deleteTuple(tid, first);
+        assertEquals(0, empty.getFreeSpaceMap().findPage());
+        empty.insertTuple(tid, Utility.getHeapTuple(1, 2));
+        assertEquals(3, empty.numPages());
+        assertEquals(-1, empty.getFreeSpaceMap().findPage());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -121,6 +121,32 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         it.close();
     }
 
+    /**
+     * A memory-mapped HeapFile returns the same tuples as a regular one and
+     * sees pages appended after it was first mapped.
+     */
+    @Test
+    public void memoryMapped() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        java.io.File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1000,
+                1 << 16, null, tuples);
+        HeapFile mapped = new HeapFile(f, td, true);
+        Database.getCatalog().addTable(mapped, SystemTestUtil.getUUID());
+        assertTrue(mapped.isMemoryMapped());
+        assertEquals(2, mapped.numPages());
+        SystemTestUtil.matchTuples(mapped, tuples);
+
+        // fill the second page and spill onto a third
+        for (int i = 0; i < 504 * 2 - 1000 + 1; i++) {
+            Tuple t = Utility.getHeapTuple(i, 2);
+            Database.getBufferPool().insertTuple(tid, mapped.getId(), t);
+        }
+        assertEquals(3, mapped.numPages());
+        Database.getBufferPool().flushAllPages();
+        HeapPage page = (HeapPage) mapped.readPage(new HeapPageId(mapped.getId(), 2));
+        assertEquals(503, page.getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
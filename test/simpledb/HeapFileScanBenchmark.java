@@ -0,0 +1,53 @@
+package simpledb;
+
+import java.io.File;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares SeqScan throughput over a table several times larger than the
+ * buffer pool, reading pages through the FileChannel and through a memory
+ * mapping of the same file. The file is in the OS page cache for both, so
+ * the difference is the cost of copying pages out of the kernel.
+ *
+ * Run with: ant runbench -Dbench=HeapFileScanBenchmark
+ */
+public class HeapFileScanBenchmark {
+
+    private static final int COLUMNS = 2;
+    private static final int ROWS = 504 * 2000;
+    private static final int POOL_PAGES = 64;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(COLUMNS, ROWS, 1 << 16, null, null);
+        f.deleteOnExit();
+        System.out.println("table: " + (f.length() / BufferPool.getPageSize()) + " pages, buffer pool: "
+                + POOL_PAGES + " pages");
+
+        for (boolean mapped : new boolean[] {false, true, false, true}) {
+            Database.reset();
+            HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS), mapped);
+            Database.getCatalog().addTable(hf, "bench");
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                Database.resetBufferPool(POOL_PAGES);
+                long start = System.nanoTime();
+                SeqScan scan = new SeqScan(new TransactionId(), hf.getId(), "t");
+                scan.open();
+                int n = 0;
+                while (scan.hasNext()) {
+                    scan.next();
+                    n++;
+                }
+                scan.close();
+                best = Math.min(best, System.nanoTime() - start);
+                if (n != ROWS)
+                    throw new IllegalStateException("scanned " + n + " rows");
+            }
+            double secs = best / 1e9;
+            System.out.printf("%-8s %8.1f MB/s %10.0f tuples/s%n", mapped ? "mmap" : "channel",
+                    f.length() / secs / (1 << 20), ROWS / secs);
+        }
+    }
+}
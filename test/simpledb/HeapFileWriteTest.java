@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.util.ArrayList;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +45,28 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.writePages(): runs of consecutive pages and
+     * pages on their own, given in any order, all reach the disk.
+     */
+    @Test public void writePages() throws Exception {
+        ArrayList<Page> pages = new ArrayList<Page>();
+        for (int pageNo : new int[] {4, 1, 0, 2, 6}) {
+            HeapPage page = new HeapPage(new HeapPageId(empty.getId(), pageNo), HeapPage.createEmptyPageData());
+            for (int i = 0; i <= pageNo; i++)
+                page.insertTuple(Utility.getHeapTuple(i, 2));
+            pages.add(page);
+        }
+        empty.writePages(pages);
+        assertEquals(7 * BufferPool.getPageSize(), empty.getFile().length());
+        for (int pageNo : new int[] {0, 1, 2, 4, 6}) {
+            HeapPage page = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), pageNo));
+            assertEquals(504 - pageNo - 1, page.getNumEmptySlots());
+        }
+        HeapPage gap = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), 5));
+        assertEquals(504, gap.getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,67 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Measures the heap used by cached HeapPages and how fast pages can be
+ * parsed and scanned when only one column of each tuple is read, as by a
+ * Filter or a single-column projection.
+ *
+ * Run with: ant runbench -Dbench=HeapPageBenchmark
+ */
+public class HeapPageBenchmark {
+
+    private static final int COLUMNS = 4;
+    private static final int PAGES = 2000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        TupleDesc td = Utility.getTupleDesc(COLUMNS);
+        Database.getCatalog().addTable(new TestUtil.SkeletonFile(1, td), "bench");
+
+        // one full page of random tuples, parsed many times below
+        HeapPage full = new HeapPage(new HeapPageId(1, 0), HeapPage.createEmptyPageData());
+        Random r = new Random(42);
+        while (full.getNumEmptySlots() > 0) {
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < COLUMNS; i++)
+                t.setField(i, new IntField(r.nextInt()));
+            full.insertTuple(t);
+        }
+        byte[] data = full.getPageData();
+        int perPage = full.numSlots;
+
+        HeapPage[] pages = new HeapPage[PAGES];
+        long before = usedHeap();
+        for (int i = 0; i < PAGES; i++)
+            pages[i] = new HeapPage(new HeapPageId(1, i), data);
+        long after = usedHeap();
+        System.out.printf("%d tuples/page, %.0f bytes of heap per cached page%n",
+                perPage, (after - before) / (double) PAGES);
+        pages = null;
+
+        long best = Long.MAX_VALUE;
+        long sum = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < PAGES; i++) {
+                Iterator<Tuple> it = new HeapPage(new HeapPageId(1, i), data).iterator();
+                while (it.hasNext())
+                    sum += ((IntField) it.next().getField(0)).getValue();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double secs = best / 1e9;
+        System.out.printf("parse and read one column: %.1f MB/s %.0f tuples/s (%d)%n",
+                PAGES * (double) BufferPool.getPageSize() / secs / (1 << 20),
+                PAGES * (double) perPage / secs, sum);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,53 @@
+package simpledb;
+
+import java.io.File;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures a locking scan of a large table with the default escalation
+ * limits and with escalation turned off, reporting the scan rate and how
+ * many locks the scanning transaction holds at the end.
+ *
+ * Run with: ant runbench -Dbench=LockEscalationBenchmark
+ */
+public class LockEscalationBenchmark {
+
+    private static final int ROWS = 600000;
+    private static final int SCANS = 5;
+
+    private static void run(HeapFile hf, int tupleLocksPerPage, int locksPerTable, String label)
+            throws Exception {
+        long nanos = 0;
+        int locks = 0;
+        for (int i = 0; i < SCANS; i++) {
+            BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            bp.setTupleLocksPerPage(tupleLocksPerPage);
+            bp.setLocksPerTable(locksPerTable);
+            TransactionId tid = new TransactionId();
+            long start = System.nanoTime();
+            DbFileIterator it = hf.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+            }
+            it.close();
+            nanos += System.nanoTime() - start;
+            locks = bp.getLockManager().heldKeys(tid).size();
+            bp.transactionComplete(tid, true);
+        }
+        System.out.printf("%-15s %10.0f tuples/s, %7d locks held%n", label,
+                (double) ROWS * SCANS * 1e9 / nanos, locks);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, ROWS, 1000, null, null);
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, "rows");
+        System.out.printf("scanning %d tuples%n", ROWS);
+        run(hf, Integer.MAX_VALUE, Integer.MAX_VALUE, "no escalation:");
+        run(hf, BufferPool.TUPLE_LOCKS_PER_PAGE, Integer.MAX_VALUE, "to pages:");
+        run(hf, BufferPool.TUPLE_LOCKS_PER_PAGE, BufferPool.LOCKS_PER_TABLE, "to pages/table:");
+    }
+}
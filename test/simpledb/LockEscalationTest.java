@@ -0,0 +1,131 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SystemTestUtil;
+
+public class LockEscalationTest {
+
+    private HeapFile hf;
+    private BufferPool bp;
+    private LockManager lm;
+    private Object table;
+    private TransactionId tid1;
+    private TransactionId tid2;
+
+    /** A table of six pages. */
+    @Before public void setUp() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(2, 2600, null, null);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        lm = bp.getLockManager();
+        table = LockManager.tableKey(hf.getId());
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+    }
+
+    private PageId page(int i) {
+        return new HeapPageId(hf.getId(), i);
+    }
+
+    private int scan(TransactionId tid) throws Exception {
+        int n = 0;
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    /**
+     * A scan past the limit of locks on a table ends up holding one shared
+     * lock on the table and no page or tuple locks.
+     */
+    @Test public void scanLocksTable() throws Exception {
+        bp.setLocksPerTable(4);
+        assertEquals(2600, scan(tid1));
+        assertEquals(LockManager.Mode.S, lm.heldMode(tid1, table));
+        assertTrue(lm.heldKeys(tid1).contains(table));
+        assertEquals(1, lm.heldKeys(tid1).size());
+        assertTrue(bp.holdsLock(tid1, page(5)));
+        assertTrue(bp.snapshotMetrics().getLockEscalations() >= 1);
+
+        // the table lock keeps writers out
+        lm.setTimeoutMillis(100);
+        try {
+            bp.getPage(tid2, page(0), Permissions.READ_WRITE);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+        }
+    }
+
+    /**
+     * Page locks for changing escalate to an exclusive table lock.
+     */
+    @Test public void writesLockTableExclusively() throws Exception {
+        bp.setLocksPerTable(2);
+        for (int i = 0; i < 3; i++) {
+            bp.getPage(tid1, page(i), Permissions.READ_WRITE);
+        }
+        assertEquals(LockManager.Mode.X, lm.heldMode(tid1, table));
+        assertTrue(lm.lockedPages(tid1).isEmpty());
+        assertEquals(1, lm.getEscalations());
+    }
+
+    /**
+     * While another transaction holds a conflicting lock on the table,
+     * escalating is skipped without waiting, and tried again once as many
+     * locks again as the limit have been taken.
+     */
+    @Test public void escalationRetried() throws Exception {
+        bp.setLocksPerTable(2);
+        lm.acquire(tid2, table, LockManager.Mode.IX);
+        for (int i = 0; i < 3; i++) {
+            bp.getPage(tid1, page(i), Permissions.READ_ONLY);
+        }
+        assertEquals(LockManager.Mode.IS, lm.heldMode(tid1, table));
+        assertEquals(3, lm.lockedPages(tid1).size());
+        assertEquals(0, lm.getEscalations());
+
+        lm.releaseAll(tid2);
+        bp.getPage(tid1, page(3), Permissions.READ_ONLY);
+        assertEquals(LockManager.Mode.IS, lm.heldMode(tid1, table));
+        bp.getPage(tid1, page(4), Permissions.READ_ONLY);
+        assertEquals(LockManager.Mode.S, lm.heldMode(tid1, table));
+        assertTrue(lm.lockedPages(tid1).isEmpty());
+        assertEquals(1, lm.getEscalations());
+    }
+
+    /**
+     * Locking a table up front gives back the page locks it covers, and
+     * later reads of the table take no locks of their own.
+     */
+    @Test public void lockTable() throws Exception {
+        bp.getPage(tid1, page(0), Permissions.READ_ONLY);
+        bp.lockTable(tid1, hf.getId(), Permissions.READ_ONLY);
+        assertEquals(LockManager.Mode.S, lm.heldMode(tid1, table));
+        assertNull(lm.heldMode(tid1, page(0)));
+        assertEquals(2600, scan(tid1));
+        assertEquals(1, lm.heldKeys(tid1).size());
+
+        // another reader still gets in
+        assertEquals(2600, scan(tid2));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockEscalationTest.class);
+    }
+}
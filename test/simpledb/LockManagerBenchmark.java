@@ -0,0 +1,56 @@
+package simpledb;
+
+/**
+ * Measures the cost of uncontended page locks: each thread locks pages of
+ * its own table, shared or exclusively, and completes its transaction
+ * every PAGES_PER_TRANSACTION pages, with 1 to THREADS threads at once.
+ *
+ * Run with: ant runbench -Dbench=LockManagerBenchmark
+ */
+public class LockManagerBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int PAGES_PER_TRANSACTION = 100;
+    private static final int TRANSACTIONS = 20000;
+
+    private static long run(final LockManager lm, int threads) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int table = t;
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < TRANSACTIONS; i++) {
+                            TransactionId tid = new TransactionId();
+                            for (int p = 0; p < PAGES_PER_TRANSACTION; p++) {
+                                lm.acquire(tid, new HeapPageId(table, p), p % 4 == 0);
+                            }
+                            lm.releaseAll(tid);
+                        }
+                    } catch (TransactionAbortedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LockManager lm = new LockManager();
+        run(lm, THREADS);
+        for (int threads = 1; threads <= THREADS; threads *= 2) {
+            long nanos = run(lm, threads);
+            long locks = (long) threads * TRANSACTIONS * PAGES_PER_TRANSACTION;
+            System.out.printf("%d threads: %6.1f M locks and releases/s%n",
+                    threads, locks * 1e3 / nanos);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LockManagerTest {
+
+    private LockManager lm;
+    private PageId p0;
+    private PageId p1;
+    private TransactionId tid1;
+    private TransactionId tid2;
+    private TransactionId tid3;
+
+    @Before public void setUp() {
+        lm = new LockManager();
+        lm.setTimeoutMillis(5000);
+        p0 = new HeapPageId(1, 0);
+        p1 = new HeapPageId(1, 1);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+        tid3 = new TransactionId();
+    }
+
+    /** A thread that takes one lock, recording the order locks are granted in. */
+    private class Grabber extends Thread {
+        private final TransactionId tid;
+        private final boolean exclusive;
+        final List<TransactionId> granted;
+        volatile boolean aborted;
+
+        Grabber(TransactionId tid, boolean exclusive, List<TransactionId> granted) {
+            this.tid = tid;
+            this.exclusive = exclusive;
+            this.granted = granted;
+            start();
+        }
+
+        public void run() {
+            try {
+                lm.acquire(tid, p0, exclusive);
+                granted.add(tid);
+            } catch (TransactionAbortedException e) {
+                aborted = true;
+            }
+        }
+    }
+
+    @Test public void sharedAndExclusive() throws Exception {
+        lm.setTimeoutMillis(200);
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid2, p0, false);
+        assertTrue(lm.holdsLock(tid1, p0));
+        assertFalse(lm.holdsExclusive(tid1, p0));
+        assertFalse(lm.holdsLock(tid1, p1));
+        try {
+            lm.acquire(tid3, p0, true);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+        }
+        assertFalse(lm.holdsLock(tid3, p0));
+        assertTrue(lm.lockedPages(tid3).isEmpty());
+
+        lm.releaseAll(tid1);
+        lm.releaseAll(tid2);
+        lm.acquire(tid3, p0, true);
+        assertTrue(lm.holdsExclusive(tid3, p0));
+        // an exclusive lock covers reads too
+        lm.acquire(tid3, p0, false);
+        assertTrue(lm.holdsExclusive(tid3, p0));
+    }
+
+    /**
+     * The only holder of a shared lock can upgrade it, and a sharer that
+     * upgrades goes ahead of transactions that queued before.
+     */
+    @Test public void upgrade() throws Exception {
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid1, p0, true);
+        assertTrue(lm.holdsExclusive(tid1, p0));
+        lm.release(tid1, p0);
+        assertFalse(lm.holdsLock(tid1, p0));
+
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<TransactionId>());
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid2, p0, false);
+        Grabber writer = new Grabber(tid3, true, granted);
+        Thread.sleep(50);
+        Grabber upgrader = new Grabber(tid2, true, granted);
+        Thread.sleep(50);
+        lm.release(tid1, p0);
+        upgrader.join();
+        assertEquals(tid2, granted.get(0));
+        lm.releaseAll(tid2);
+        writer.join();
+        assertEquals(tid3, granted.get(1));
+    }
+
+    /**
+     * Waiters are granted the lock in the order they asked, and a reader
+     * does not overtake a queued writer.
+     */
+    @Test public void firstComeFirstServed() throws Exception {
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<TransactionId>());
+        lm.acquire(tid1, p0, true);
+        Grabber writer = new Grabber(tid2, true, granted);
+        Thread.sleep(50);
+        Grabber reader = new Grabber(tid3, false, granted);
+        Thread.sleep(50);
+        assertTrue(granted.isEmpty());
+        lm.releaseAll(tid1);
+        writer.join();
+        Thread.sleep(50);
+        assertEquals(1, granted.size());
+        lm.releaseAll(tid2);
+        reader.join();
+        assertEquals(tid2, granted.get(0));
+        assertEquals(tid3, granted.get(1));
+    }
+
+    /**
+     * A waiter that times out leaves the queue, and keeps the locks it had.
+     */
+    @Test public void timeout() throws Exception {
+        lm.setTimeoutMillis(200);
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<TransactionId>());
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid2, p0, false);
+        Grabber upgrader = new Grabber(tid1, true, granted);
+        upgrader.join();
+        assertTrue(upgrader.aborted);
+        assertTrue(lm.holdsLock(tid1, p0));
+        assertFalse(lm.holdsExclusive(tid1, p0));
+        // the queue is empty again, so another reader gets in
+        lm.acquire(tid3, p0, false);
+    }
+
+    /**
+     * Of two transactions that wait for each other, the younger is aborted
+     * at once, and the older gets its lock when the younger completes.
+     */
+    @Test public void deadlockAbortsYoungest() throws Exception {
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<TransactionId>());
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid2, p1, true);
+        Grabber older = new Grabber(tid1, true, granted) {
+            public void run() {
+                try {
+                    lm.acquire(tid1, p1, false);
+                    granted.add(tid1);
+                } catch (TransactionAbortedException e) {
+                    aborted = true;
+                }
+            }
+        };
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        try {
+            lm.acquire(tid2, p0, true);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+        }
+        assertTrue(System.nanoTime() - start < 1000000000L);
+        assertTrue(lm.holdsExclusive(tid2, p1));
+        lm.releaseAll(tid2);
+        older.join();
+        assertFalse(older.aborted);
+        assertTrue(lm.holdsLock(tid1, p1));
+        assertEquals(1, lm.getDeadlocks());
+        assertEquals(1, lm.getDetectionLatency().getCount());
+    }
+
+    /**
+     * Two sharers that both upgrade deadlock; the younger one is aborted
+     * even though it asked first.
+     */
+    @Test public void upgradeDeadlock() throws Exception {
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<TransactionId>());
+        lm.acquire(tid1, p0, false);
+        lm.acquire(tid2, p0, false);
+        Grabber younger = new Grabber(tid2, true, granted);
+        Thread.sleep(50);
+        Grabber older = new Grabber(tid1, true, granted);
+        younger.join();
+        assertTrue(younger.aborted);
+        lm.releaseAll(tid2);
+        older.join();
+        assertEquals(tid1, granted.get(0));
+        assertEquals(1, lm.getDeadlocks());
+        assertEquals(2, lm.getWaits());
+    }
+
+    /**
+     * A request that could share the lock with the waiters ahead of it
+     * still waits for them, and a cycle through such a wait is a deadlock.
+     */
+    @Test public void deadlockBehindWaiter() throws Exception {
+        final Object table = LockManager.tableKey(1);
+        lm.acquire(tid1, table, LockManager.Mode.IX);
+        lm.acquire(tid3, p0, true);
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    lm.acquire(tid2, table, LockManager.Mode.S);
+                } catch (TransactionAbortedException e) {
+                }
+            }
+        };
+        reader.start();
+        Thread.sleep(50);
+        // IS is compatible with IX and S but queues behind tid2's S
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<TransactionId>());
+        Grabber queued = new Grabber(tid3, false, granted) {
+            public void run() {
+                try {
+                    lm.acquire(tid3, table, LockManager.Mode.IS);
+                    granted.add(tid3);
+                } catch (TransactionAbortedException e) {
+                    aborted = true;
+                }
+            }
+        };
+        Thread.sleep(50);
+        Grabber older = new Grabber(tid1, true, granted);
+        queued.join();
+        assertTrue(queued.aborted);
+        assertEquals(1, lm.getDeadlocks());
+        lm.releaseAll(tid3);
+        older.join();
+        assertFalse(older.aborted);
+        lm.releaseAll(tid1);
+        reader.join();
+        assertTrue(lm.holdsLock(tid2, table));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
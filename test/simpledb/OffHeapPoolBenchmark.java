@@ -0,0 +1,78 @@
+package simpledb;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Random;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a buffer pool that keeps its pages on the heap with one of the
+ * same size whose page images live in a FrameArena: the heap the pool
+ * retains once full, the time of a full collection with the pool full, and
+ * the time spent collecting garbage while random pages are read and their
+ * tuples iterated over.
+ *
+ * Run with: ant runbench -Dbench=OffHeapPoolBenchmark
+ */
+public class OffHeapPoolBenchmark {
+
+    private static final int POOL_PAGES = 25000;
+    private static final int READS = 400000;
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            total += gc.getCollectionTime();
+        return total;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, POOL_PAGES * 504, 1000, null, null);
+        f.deleteOnExit();
+        HeapFile table = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, "t");
+        System.out.printf("pool and table: %d pages (%d MB)%n", POOL_PAGES,
+                (long) POOL_PAGES * BufferPool.getPageSize() >> 20);
+
+        for (boolean offHeap : new boolean[] {false, true, false, true}) {
+            Database.resetBufferPool(1);
+            System.gc();
+            System.gc();
+            long before = usedHeap();
+            BufferPool bp = offHeap
+                    ? Database.resetBufferPoolBytes((long) POOL_PAGES * BufferPool.getPageSize())
+                    : Database.resetBufferPool(POOL_PAGES);
+            TransactionId tid = new TransactionId();
+            for (int i = 0; i < POOL_PAGES; i++)
+                bp.getPage(tid, new HeapPageId(table.getId(), i), Permissions.READ_ONLY);
+
+            long start = System.nanoTime();
+            System.gc();
+            long fullGc = System.nanoTime() - start;
+            long retained = usedHeap() - before;
+
+            Random r = new Random(42);
+            long gcBefore = gcMillis();
+            start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < READS; i++) {
+                Page p = bp.getPage(tid, new HeapPageId(table.getId(), r.nextInt(POOL_PAGES)), Permissions.READ_ONLY);
+                Iterator<Tuple> it = ((HeapPage) p).iterator();
+                while (it.hasNext())
+                    sum += it.next().getInt(0);
+            }
+            long readMillis = (System.nanoTime() - start) / 1000000;
+            System.out.printf("%-8s retained heap %4d MB, full gc %4d ms, %d reads in %5d ms, %4d ms of it in gc (%d)%n",
+                    offHeap ? "off-heap" : "heap", retained >> 20, fullGc / 1000000, READS, readMillis,
+                    gcMillis() - gcBefore, sum % 10);
+        }
+    }
+}
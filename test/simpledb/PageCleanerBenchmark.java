@@ -0,0 +1,76 @@
+package simpledb;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures getPage latency for a reader that mostly misses while writer
+ * threads keep dirtying and committing pages, with and without the
+ * background page cleaner. Without it, most misses evict a dirty page and
+ * write it first.
+ *
+ * Run with: ant runbench -Dbench=PageCleanerBenchmark
+ */
+public class PageCleanerBenchmark {
+
+    private static final int POOL_PAGES = 256;
+    private static final int TABLE_PAGES = 4096;
+    private static final int WRITERS = 2;
+    private static final int READS = 200000;
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, TABLE_PAGES * 504, 1000, null, null);
+        f.deleteOnExit();
+        final HeapFile table = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, "t");
+        System.out.printf("pool: %d pages, table: %d pages, %d writers%n", POOL_PAGES, TABLE_PAGES, WRITERS);
+
+        for (boolean clean : new boolean[] {false, true, false, true}) {
+            final BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+            if (clean)
+                bp.startPageCleaner(200000, 64);
+            final AtomicBoolean stop = new AtomicBoolean();
+            Thread[] writers = new Thread[WRITERS];
+            for (int w = 0; w < WRITERS; w++) {
+                final Random r = new Random(w);
+                writers[w] = new Thread() {
+                    public void run() {
+                        try {
+                            while (!stop.get()) {
+                                TransactionId tid = new TransactionId();
+                                Page p = bp.getPage(tid, new HeapPageId(table.getId(), r.nextInt(TABLE_PAGES)), null);
+                                p.markDirty(true, tid);
+                                bp.transactionComplete(tid, true);
+                                Thread.sleep(0, 20000);
+                            }
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                writers[w].start();
+            }
+
+            Random r = new Random(42);
+            TransactionId tid = new TransactionId();
+            long[] latency = new long[READS];
+            for (int i = 0; i < READS; i++) {
+                long start = System.nanoTime();
+                bp.getPage(tid, new HeapPageId(table.getId(), r.nextInt(TABLE_PAGES)), Permissions.READ_ONLY);
+                latency[i] = System.nanoTime() - start;
+            }
+            stop.set(true);
+            for (Thread w : writers)
+                w.join();
+            bp.stopPageCleaner();
+
+            Arrays.sort(latency);
+            System.out.printf("%-10s p50 %6.1f us  p99 %7.1f us  p99.9 %7.1f us%n", clean ? "cleaner" : "no cleaner",
+                    latency[READS / 2] / 1e3, latency[READS * 99 / 100] / 1e3, latency[READS * 999 / 1000] / 1e3);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PageCleanerTest extends TestUtil.CreateHeapFile {
+
+    private TransactionId tid1;
+    private TransactionId tid2;
+    private HeapPageId page0;
+    private HeapPageId page1;
+
+    /**
+     * Fill page 0 on behalf of tid1 and put one tuple on page 1 on behalf
+     * of tid2, leaving both pages dirty.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+        for (int i = 0; i < 504; i++)
+            Database.getBufferPool().insertTuple(tid1, empty.getId(), Utility.getHeapTuple(i, 2));
+        Database.getBufferPool().insertTuple(tid2, empty.getId(), Utility.getHeapTuple(0, 2));
+        page0 = new HeapPageId(empty.getId(), 0);
+        page1 = new HeapPageId(empty.getId(), 1);
+    }
+
+    @After public void tearDown() {
+        Database.getBufferPool().stopPageCleaner();
+    }
+
+    private Page cached(TransactionId tid, PageId pid) throws Exception {
+        return Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+    }
+
+    /**
+     * Unit test for BufferPool.cleanPages(): only pages of committed
+     * transactions are written.
+     */
+    @Test public void cleanPages() throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        // slow enough that the thread does not get in the way
+        bp.startPageCleaner(1, 1);
+        assertEquals(0, bp.cleanPages(10));
+
+        // committing writes the transaction's pages itself
+        bp.transactionComplete(tid1, true);
+        assertNull(cached(tid1, page0).isDirty());
+        assertEquals(0, ((HeapPage) empty.readPage(page0)).getNumEmptySlots());
+
+        // a page left dirty by a committed transaction is written
+        cached(tid2, page0).markDirty(true, tid1);
+        assertEquals(1, bp.cleanPages(10));
+        assertNull(cached(tid1, page0).isDirty());
+        assertEquals(tid2, cached(tid2, page1).isDirty());
+        assertEquals(0, bp.cleanPages(10));
+
+        // aborted transactions are never written; their tuple changes are undone
+        bp.transactionComplete(tid2, false);
+        assertEquals(0, bp.cleanPages(10));
+        assertEquals(504, ((HeapPage) cached(tid1, page1)).getNumEmptySlots());
+        assertEquals(504, ((HeapPage) empty.readPage(page1)).getNumEmptySlots());
+    }
+
+    /**
+     * The background thread writes committed pages on its own.
+     */
+    @Test public void backgroundThread() throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        bp.startPageCleaner(1000, 10);
+        // committing writes page0, so dirty it again before the cleaner looks
+        synchronized (bp) {
+            bp.transactionComplete(tid1, true);
+            cached(tid2, page0).markDirty(true, tid1);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cached(tid1, page0).isDirty() != null && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertNull(cached(tid1, page0).isDirty());
+        assertEquals(tid2, cached(tid2, page1).isDirty());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCleanerTest.class);
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PageFileChannelTest {
+
+    private File file;
+    private PageFileChannel channel;
+
+    @Before public void setUp() throws Exception {
+        file = File.createTempFile("channel", ".dat");
+        file.deleteOnExit();
+        channel = new PageFileChannel(file);
+    }
+
+    /**
+     * Unit test for PageFileChannel.write() and read()
+     */
+    @Test public void writeRead() throws Exception {
+        channel.write(4, new byte[] {1, 2, 3});
+        assertEquals(7, channel.size());
+        assertEquals(7, file.length());
+
+        byte[] buf = new byte[] {9, 9, 9, 9, 9};
+        assertEquals(3, channel.read(4, buf, 4));
+        assertEquals(1, buf[0]);
+        assertEquals(3, buf[2]);
+        // past the end of the file
+        assertEquals(0, buf[3]);
+        // beyond len, untouched
+        assertEquals(9, buf[4]);
+    }
+
+    /**
+     * The channel reopens itself after close().
+     */
+    @Test public void reopen() throws Exception {
+        channel.write(0, new byte[] {5});
+        channel.close();
+        channel.close();
+        byte[] buf = new byte[1];
+        assertEquals(1, channel.read(0, buf, 1));
+        assertEquals(5, buf[0]);
+    }
+
+    /**
+     * Unit test for the gathering PageFileChannel.write()
+     */
+    @Test public void gatheringWrite() throws Exception {
+        channel.write(0, new byte[] {7});
+        channel.write(2, new byte[][] {{1, 2}, {3}, {4, 5}});
+        assertEquals(7, channel.size());
+        byte[] buf = new byte[7];
+        channel.read(0, buf, 7);
+        assertArrayEquals(new byte[] {7, 0, 1, 2, 3, 4, 5}, buf);
+        // positional reads and writes are unaffected by the channel position
+        channel.write(1, new byte[] {6});
+        channel.read(0, buf, 2);
+        assertEquals(6, buf[1]);
+    }
+
+    /**
+     * Unit test for PageFileChannel.buffer()
+     */
+    @Test public void buffer() {
+        byte[] small = PageFileChannel.buffer(16);
+        assertEquals(small, PageFileChannel.buffer(8));
+        byte[] big = PageFileChannel.buffer(64);
+        assertEquals(64, big.length);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageFileChannelTest.class);
+    }
+}
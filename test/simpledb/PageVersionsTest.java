@@ -0,0 +1,84 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PageVersionsTest {
+
+    private PageVersions versions;
+    private PageId p0;
+    private TransactionId tid1;
+    private TransactionId tid2;
+
+    @Before public void setUp() {
+        versions = new PageVersions();
+        p0 = new HeapPageId(1, 0);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+    }
+
+    /** Commit the replacement of image for p0, as BufferPool does. */
+    private void commit(byte[] image) {
+        versions.latch.writeLock().lock();
+        try {
+            long commit = versions.nextCommit();
+            if (versions.needs(p0)) {
+                versions.retain(p0, commit, image);
+            }
+        } finally {
+            versions.latch.writeLock().unlock();
+        }
+    }
+
+    /** Images are only retained while a snapshot may read them. */
+    @Test public void retainedWhileNeeded() {
+        byte[] a = new byte[] { 1 };
+        byte[] b = new byte[] { 2 };
+        commit(a);
+        assertEquals(0, versions.size());
+
+        assertEquals(1, versions.begin(tid1));
+        commit(a);
+        assertSame(a, versions.imageAt(p0, 1));
+        assertEquals(2, versions.begin(tid2));
+        assertNull(versions.imageAt(p0, 2));
+        commit(b);
+        assertSame(a, versions.imageAt(p0, 1));
+        assertSame(b, versions.imageAt(p0, 2));
+        assertEquals(2, versions.size());
+
+        // only tid2 reads b now
+        assertTrue(versions.end(tid1));
+        assertEquals(1, versions.size());
+        assertSame(b, versions.imageAt(p0, 2));
+        assertTrue(versions.end(tid2));
+        assertEquals(0, versions.size());
+        assertFalse(versions.end(tid2));
+    }
+
+    /** A commit need not retain an image that no snapshot can read. */
+    @Test public void notNeededBeforeLastImage() {
+        versions.begin(tid1);
+        commit(new byte[] { 1 });
+        commit(new byte[] { 2 });
+        assertEquals(1, versions.size());
+        versions.begin(tid2);
+        commit(new byte[] { 3 });
+        assertEquals(2, versions.size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageVersionsTest.class);
+    }
+}
@@ -0,0 +1,61 @@
+package simpledb;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures the hit ratio of point lookups on a small table while a large
+ * table is read page by page through the same buffer pool, one lookup per
+ * page read, as by ad hoc queries that do not use a scan ring. The pool is first shared by both
+ * tables, then split into a "hot" partition for the small table and the
+ * default one for the large one.
+ *
+ * Run with: ant runbench -Dbench=PartitionBenchmark
+ */
+public class PartitionBenchmark {
+
+    private static final int HOT_PAGES = 500;
+    private static final int BIG_PAGES = 10000;
+    private static final int POOL_PAGES = 1000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        File hotFile = SystemTestUtil.createRandomHeapFileUnopened(2, HOT_PAGES * 504, 1000, null, null);
+        File bigFile = SystemTestUtil.createRandomHeapFileUnopened(2, BIG_PAGES * 504, 1000, null, null);
+        hotFile.deleteOnExit();
+        bigFile.deleteOnExit();
+        HeapFile hot = new HeapFile(hotFile, Utility.getTupleDesc(2));
+        HeapFile big = new HeapFile(bigFile, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hot, "hot");
+        Database.getCatalog().addTable(big, "big");
+        Database.getCatalog().setPartition(hot.getId(), "hot");
+        System.out.printf("hot table: %d pages, big table: %d pages, pool: %d pages%n",
+                HOT_PAGES, BIG_PAGES, POOL_PAGES);
+
+        for (boolean partitioned : new boolean[] {false, true}) {
+            BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+            if (partitioned) {
+                bp.addPartition("hot", HOT_PAGES, new LruEvictionPolicy());
+            }
+            TransactionId tid = new TransactionId();
+            Random r = new Random(1);
+            long start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = 0; i < BIG_PAGES; i++) {
+                    bp.getPage(tid, new HeapPageId(big.getId(), i), Permissions.READ_ONLY);
+                    bp.getPage(tid, new HeapPageId(hot.getId(), r.nextInt(HOT_PAGES)),
+                            Permissions.READ_ONLY);
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            BufferPoolMetrics.Snapshot s = bp.snapshotMetrics();
+            BufferPoolMetrics.TableSnapshot h = s.getTable(hot.getId());
+            System.out.printf("%-12s hot table hit ratio %5.1f%% (%d misses), pool %5.1f%%, %.0f ms%n",
+                    partitioned ? "partitioned:" : "shared:",
+                    100.0 * h.getHits() / (h.getHits() + h.getMisses()), h.getMisses(),
+                    100 * s.getHitRatio(), nanos / 1e6);
+        }
+    }
+}
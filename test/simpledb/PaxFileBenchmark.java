@@ -0,0 +1,73 @@
+package simpledb;
+
+import java.io.File;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares a scan that reads 3 of 20 columns over the same table stored as
+ * a HeapFile and as a PaxFile, with the whole table in the buffer pool so
+ * that only the cost of getting the values out of the pages is measured.
+ *
+ * Run with: ant runbench -Dbench=PaxFileBenchmark
+ */
+public class PaxFileBenchmark {
+
+    private static final int COLUMNS = 20;
+    private static final int ROWS = 200000;
+    private static final int[] READ = {2, 9, 17};
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(COLUMNS, ROWS, 1 << 16, null, null);
+        f.deleteOnExit();
+        // the pages of both formats hold the same tuples, so the PaxFile is
+        // filled by inserting them
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS));
+        Database.getCatalog().addTable(hf, "rows");
+        File pfFile = File.createTempFile("bench", ".dat");
+        pfFile.deleteOnExit();
+        FreeSpaceMap.sidecarFor(pfFile).deleteOnExit();
+        ZoneMap.sidecarFor(pfFile).deleteOnExit();
+        PaxFile pf = new PaxFile(pfFile, Utility.getTupleDesc(COLUMNS));
+        Database.getCatalog().addTable(pf, "pax");
+        Database.resetBufferPool(2 * hf.numPages() + 16);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            Tuple copy = new Tuple(t.getTupleDesc());
+            for (int i = 0; i < COLUMNS; i++)
+                copy.setField(i, t.getField(i));
+            pf.insertTuple(tid, copy);
+        }
+        it.close();
+        System.out.println("table: " + hf.numPages() + " pages of " + COLUMNS + " columns, reading "
+                + READ.length);
+
+        for (HeapFile table : new HeapFile[] {hf, pf, hf, pf}) {
+            long best = Long.MAX_VALUE;
+            long sum = 0;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                SeqScan scan = new SeqScan(tid, table.getId(), "t");
+                scan.setProjection(READ);
+                scan.open();
+                int n = 0;
+                while (scan.hasNext()) {
+                    Tuple t = scan.next();
+                    for (int c : READ)
+                        sum += ((IntField) t.getField(c)).getValue();
+                    n++;
+                }
+                scan.close();
+                best = Math.min(best, System.nanoTime() - start);
+                if (n != ROWS)
+                    throw new IllegalStateException("scanned " + n + " rows");
+            }
+            double secs = best / 1e9;
+            System.out.printf("%-5s %10.0f tuples/s (%d)%n", table == pf ? "pax" : "rows", ROWS / secs, sum);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE}, new String[] {"a", "b", "c"});
+
+    private HeapPageId pid;
+
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, 0);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int a, String b, int c) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(a));
+        t.setField(1, new StringField(b, Type.STRING_LEN));
+        t.setField(2, new IntField(c));
+        return t;
+    }
+
+    /**
+     * Unit test for PaxPage.insertTuple(), deleteTuple() and iterator(),
+     * and that getPageData() can be read back.
+     */
+    @Test public void insertDeleteRead() throws Exception {
+        PaxPage page = new PaxPage(pid, PaxPage.createEmptyPageData());
+        int slots = page.getNumSlots();
+        assertEquals(new HeapPage(pid, HeapPage.createEmptyPageData()).getNumEmptySlots(), slots);
+        for (int i = 0; i < slots; i++)
+            page.insertTuple(tuple(i, "s" + i, -i));
+        assertEquals(0, page.getNumEmptySlots());
+        try {
+            page.insertTuple(tuple(0, "", 0));
+            fail("page should be full");
+        } catch (DbException e) {
+            // expected
+        }
+        Iterator<Tuple> it = page.iterator();
+        it.next();
+        page.deleteTuple(it.next());
+        assertEquals(1, page.getFreeSpace());
+
+        PaxPage copy = new PaxPage(pid, page.getPageData());
+        assertEquals(1, copy.getNumEmptySlots());
+        it = copy.iterator();
+        for (int i = 0; i < slots; i++) {
+            if (i == 1)
+                continue;
+            Tuple t = it.next();
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals("s" + i, ((StringField) t.getField(1)).getValue());
+            assertEquals(new IntField(-i), t.getField(2));
+        }
+        assertTrue(!it.hasNext());
+        Tuple t = tuple(100, "x", 100);
+        copy.insertTuple(t);
+        assertEquals(new RecordId(pid, 1), t.getRecordId());
+    }
+
+    /**
+     * Only the columns asked for are decoded.
+     */
+    @Test public void projection() throws Exception {
+        PaxPage page = new PaxPage(pid, PaxPage.createEmptyPageData());
+        page.insertTuple(tuple(1, "one", 10));
+        page.insertTuple(tuple(2, "two", 20));
+        Iterator<Tuple> it = page.iterator(new int[] {2});
+        Tuple t = it.next();
+        assertNull(t.getField(0));
+        assertNull(t.getField(1));
+        assertEquals(new IntField(10), t.getField(2));
+        assertEquals(new IntField(20), it.next().getField(2));
+    }
+
+    /**
+     * A PaxFile loaded through the catalog, scanned by a SeqScan with a
+     * projection and a pushed-down predicate.
+     */
+    @Test public void paxFileScan() throws Exception {
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.sidecarFor(f).deleteOnExit();
+        ZoneMap.sidecarFor(f).deleteOnExit();
+        PaxFile pf = new PaxFile(f, TD);
+        Database.getCatalog().addTable(pf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++)
+            Database.getBufferPool().insertTuple(tid, pf.getId(), tuple(i, "s" + i, i % 10));
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        SeqScan scan = new SeqScan(tid, pf.getId(), "t");
+        scan.setProjection(new int[] {0});
+        scan.addPredicate(new Predicate(2, Predicate.Op.EQUALS, new IntField(3)));
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals(3, ((IntField) t.getField(0)).getValue() % 10);
+            assertNull(t.getField(1));
+            n++;
+        }
+        scan.close();
+        assertEquals(100, n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxPageTest.class);
+    }
+}
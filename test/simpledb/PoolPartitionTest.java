@@ -0,0 +1,134 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PoolPartitionTest extends SimpleDbTestBase {
+
+    private HeapFile hot;
+    private HeapFile big;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hot = SystemTestUtil.createRandomHeapFile(2, 5 * 504, null, null);
+        big = SystemTestUtil.createRandomHeapFile(2, 40 * 504, null, null);
+        tid = new TransactionId();
+    }
+
+    private void read(BufferPool bp, HeapFile f, int pages) throws Exception {
+        for (int i = 0; i < pages; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+    }
+
+    /**
+     * Reading a table larger than the pool evicts pages of its own
+     * partition only.
+     */
+    @Test public void hotPartitionSurvivesScan() throws Exception {
+        BufferPool bp = Database.resetBufferPool(20);
+        bp.addPartition("hot", 5, new LruEvictionPolicy());
+        Database.getCatalog().setPartition(hot.getId(), "hot");
+        read(bp, hot, 5);
+        read(bp, big, 40);
+        read(bp, hot, 5);
+
+        BufferPoolMetrics.Snapshot s = bp.snapshotMetrics();
+        assertEquals(5, s.getTable(hot.getId()).getMisses());
+        assertEquals(5, s.getTable(hot.getId()).getHits());
+        BufferPoolMetrics.PartitionSnapshot p = s.getPartition("hot");
+        assertEquals(5, p.getCapacityPages());
+        assertEquals(5, p.getResidentPages());
+        assertEquals(5, p.getHits());
+        assertEquals(0, p.getEvictions());
+        BufferPoolMetrics.PartitionSnapshot d = s.getPartition(BufferPool.DEFAULT_PARTITION);
+        assertEquals(15, d.getCapacityPages());
+        assertEquals(15, d.getResidentPages());
+        assertEquals(40, d.getMisses());
+        assertEquals(25, d.getEvictions());
+        assertEquals(BufferPool.DEFAULT_PARTITION, s.getPartitions().get(0).getName());
+    }
+
+    /**
+     * Without partitions the same reads push the small table out.
+     */
+    @Test public void sharedPoolEvictsHotPages() throws Exception {
+        BufferPool bp = Database.resetBufferPool(20);
+        read(bp, hot, 5);
+        read(bp, big, 40);
+        read(bp, hot, 5);
+        assertEquals(10, bp.snapshotMetrics().getTable(hot.getId()).getMisses());
+    }
+
+    /**
+     * Tables assigned to a partition the pool does not have, or to none,
+     * use the default partition.
+     */
+    @Test public void unknownPartitionIsDefault() throws Exception {
+        BufferPool bp = Database.resetBufferPool(20);
+        bp.addPartition("hot", 5, new LruEvictionPolicy());
+        Database.getCatalog().setPartition(hot.getId(), "cold");
+        read(bp, hot, 5);
+        BufferPoolMetrics.Snapshot s = bp.snapshotMetrics();
+        assertEquals(0, s.getPartition("hot").getResidentPages());
+        assertEquals(5, s.getPartition(BufferPool.DEFAULT_PARTITION).getResidentPages());
+
+        Database.getCatalog().setPartition(hot.getId(), BufferPool.DEFAULT_PARTITION);
+        assertEquals(null, Database.getCatalog().getPartition(hot.getId()));
+    }
+
+    /**
+     * A partition takes its frames from the default one, evicting pages
+     * the default one no longer has room for, and discarded pages leave
+     * their partition.
+     */
+    @Test public void addPartitionShrinksDefault() throws Exception {
+        BufferPool bp = Database.resetBufferPool(20);
+        read(bp, big, 20);
+        bp.addPartition("hot", 8, new LruEvictionPolicy());
+        Database.getCatalog().setPartition(hot.getId(), "hot");
+        BufferPoolMetrics.Snapshot s = bp.snapshotMetrics();
+        assertEquals(12, s.getPartition(BufferPool.DEFAULT_PARTITION).getResidentPages());
+        assertEquals(12, s.getResidentPages());
+
+        read(bp, hot, 5);
+        bp.discardPage(new HeapPageId(hot.getId(), 0));
+        s = bp.snapshotMetrics();
+        assertEquals(4, s.getPartition("hot").getResidentPages());
+        assertEquals(16, s.getResidentPages());
+        assertEquals(12, bp.getEvictionPolicy().residentPages().size());
+    }
+
+    @Test public void addPartitionChecksCapacity() throws Exception {
+        BufferPool bp = Database.resetBufferPool(20);
+        bp.addPartition("hot", 10, new LruEvictionPolicy());
+        try {
+            bp.addPartition("hot", 1, new LruEvictionPolicy());
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            bp.addPartition("scan", 10, new LruEvictionPolicy());
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+        bp.addPartition("scan", 9, new LruEvictionPolicy());
+        assertEquals(1, bp.snapshotMetrics().getPartition(BufferPool.DEFAULT_PARTITION)
+                .getCapacityPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PoolPartitionTest.class);
+    }
+}
@@ -0,0 +1,60 @@
+package simpledb;
+
+import java.io.File;
+import java.util.concurrent.locks.LockSupport;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures SeqScan time over a table whose pages each take READ_MICROS to
+ * read, as from a disk that is not in the OS page cache, with and without
+ * read-ahead. The scan spends some CPU on every tuple, so with read-ahead
+ * the reads overlap with the work on the page before.
+ *
+ * Run with: ant runbench -Dbench=ReadAheadBenchmark
+ */
+public class ReadAheadBenchmark {
+
+    private static final int PAGES = 1000;
+    private static final int READ_MICROS = 200;
+    private static final int POOL_PAGES = 256;
+
+    /** A HeapFile whose reads take READ_MICROS longer. */
+    static class SlowHeapFile extends HeapFile {
+        SlowHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            LockSupport.parkNanos(READ_MICROS * 1000L);
+            return super.readPage(pid);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, PAGES * 504, 1000, null, null);
+        f.deleteOnExit();
+        HeapFile table = new SlowHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, "t");
+        System.out.printf("table: %d pages, %d us per read, pool: %d pages%n", PAGES, READ_MICROS, POOL_PAGES);
+
+        for (boolean ahead : new boolean[] {false, true, false, true}) {
+            BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+            bp.setReadAhead(ahead);
+            long start = System.nanoTime();
+            SeqScan scan = new SeqScan(new TransactionId(), table.getId(), "t");
+            scan.open();
+            long sum = 0;
+            while (scan.hasNext()) {
+                Tuple t = scan.next();
+                // some work per tuple, e.g. a predicate and an aggregate
+                for (int i = 0; i < 20; i++)
+                    sum += t.getInt(0) * 31 + t.getInt(1) ^ i;
+            }
+            scan.close();
+            double ms = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%-14s %8.1f ms (%d)%n", ahead ? "read-ahead" : "no read-ahead", ms, sum % 10);
+        }
+    }
+}
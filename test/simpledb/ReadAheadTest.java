@@ -0,0 +1,140 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    /** A HeapFile that counts page reads and takes delayMillis for each. */
+    static class SlowHeapFile extends HeapFile {
+        final AtomicInteger reads = new AtomicInteger();
+        final long delayMillis;
+
+        SlowHeapFile(File f, TupleDesc td, long delayMillis) {
+            super(f, td);
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            reads.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.readPage(pid);
+        }
+    }
+
+    private SlowHeapFile table;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 40 * 504, 1000, null, null);
+        table = new SlowHeapFile(f, Utility.getTupleDesc(2), 5);
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        Database.resetBufferPool(100);
+        tid = new TransactionId();
+    }
+
+    private ReadAhead readAhead() {
+        return new ReadAhead(null) {
+            PageId pageId(int pageNo) {
+                return new HeapPageId(table.getId(), pageNo);
+            }
+
+            int lastPageNo() {
+                return table.numPages() - 1;
+            }
+        };
+    }
+
+    private void read(ReadAhead ra, int pageNo) throws Exception {
+        ra.pageRequested(pageNo);
+        Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), pageNo), Permissions.READ_ONLY);
+    }
+
+    private void awaitReads(int n) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (table.reads.get() < n && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        // let the last prefetch add its page to the pool
+        Thread.sleep(20);
+    }
+
+    /**
+     * Two consecutive pages start read-ahead of the next window pages,
+     * which the scan then finds resident.
+     */
+    @Test public void sequential() throws Exception {
+        ReadAhead ra = readAhead();
+        read(ra, 0);
+        read(ra, 1);
+        awaitReads(2 + ReadAhead.MIN_WINDOW);
+        assertEquals(2 + ReadAhead.MIN_WINDOW, table.reads.get());
+        Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), 2), Permissions.READ_ONLY);
+        Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), 3), Permissions.READ_ONLY);
+        assertEquals(2 + ReadAhead.MIN_WINDOW, table.reads.get());
+        ra.cancel();
+    }
+
+    /**
+     * Pages read out of order are not prefetched.
+     */
+    @Test public void random() throws Exception {
+        ReadAhead ra = readAhead();
+        for (int pageNo : new int[] {5, 3, 9, 20, 7})
+            read(ra, pageNo);
+        Thread.sleep(50);
+        assertEquals(5, table.reads.get());
+    }
+
+    /**
+     * A scan that catches up with its prefetches makes the window grow,
+     * and the window never passes the last page.
+     */
+    @Test public void adaptiveWindow() throws Exception {
+        ReadAhead ra = readAhead();
+        for (int pageNo = 0; pageNo < table.numPages(); pageNo++)
+            read(ra, pageNo);
+        assertTrue(ra.window() > ReadAhead.MIN_WINDOW);
+        awaitReads(table.numPages());
+        assertEquals(table.numPages(), table.reads.get());
+    }
+
+    /**
+     * A ring scan with read-ahead returns every tuple once.
+     */
+    @Test public void ringScan() throws Exception {
+        Database.resetBufferPool(20);
+        SeqScan scan = new SeqScan(tid, table.getId(), "");
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        assertEquals(40 * 504, n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,166 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.STRING_TYPE}, new String[] {"id", "name"});
+
+    private HeapPageId pid;
+
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, 0);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int id, String name) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private static ArrayList<Tuple> tuples(TuplePage page) {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            result.add(it.next());
+        return result;
+    }
+
+    /**
+     * Unit test for SlottedHeapPage.insertTuple() and iterator(), and that
+     * getPageData() can be read back.
+     */
+    @Test public void insertAndRead() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1, "one"));
+        page.insertTuple(tuple(2, ""));
+        page.insertTuple(tuple(3, "three"));
+        assertEquals(BufferPool.getPageSize() - 4 - 3 * 4 - (9 + 6 + 11),
+                page.getFreeSpace());
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        ArrayList<Tuple> read = tuples(copy);
+        assertEquals(3, read.size());
+        assertEquals("1\tone", read.get(0).toString());
+        assertEquals("2\t", read.get(1).toString());
+        assertEquals("3\tthree", read.get(2).toString());
+        assertEquals(new RecordId(pid, 2), read.get(2).getRecordId());
+    }
+
+    /**
+     * Deleted tuples leave their slot to the next insert, and their bytes
+     * are reclaimed once the page runs out of contiguous space.
+     */
+    @Test public void deleteAndReuse() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.hasRoomFor(tuple(n, "name " + n)))
+            page.insertTuple(tuple(n, "name " + n++));
+        assertEquals(n, tuples(page).size());
+
+        // delete every other tuple, then fill the page up again
+        ArrayList<Tuple> before = tuples(page);
+        for (int i = 0; i < before.size(); i += 2)
+            page.deleteTuple(before.get(i));
+        assertEquals(n / 2, tuples(page).size());
+        Tuple t = tuple(-1, "name -1");
+        page.insertTuple(t);
+        assertEquals(new RecordId(pid, 0), t.getRecordId());
+        int m = 0;
+        while (page.hasRoomFor(tuple(m, "name " + m)))
+            page.insertTuple(tuple(m, "name " + m++));
+        assertTrue(m > 1);
+
+        // the tuples that were not deleted are intact and kept their slots
+        ArrayList<Tuple> after = tuples(new SlottedHeapPage(pid, page.getPageData()));
+        for (int i = 1; i < before.size(); i += 2)
+            assertEquals(before.get(i).toString(), after.get(i).toString());
+
+        try {
+            page.deleteTuple(before.get(1));
+            page.deleteTuple(before.get(1));
+            fail("deleted a tuple twice");
+        } catch (DbException expected) {
+        }
+    }
+
+    /**
+     * Short strings fit many more tuples on a page than fixed-size slots.
+     */
+    @Test public void density() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.hasRoomFor(tuple(n, "twelve chars")))
+            page.insertTuple(tuple(n++, "twelve chars"));
+        int fixed = BufferPool.getPageSize() * 8 / (TD.getSize() * 8 + 1);
+        assertTrue(n + " vs " + fixed, n > 5 * fixed);
+        assertFalse(page.hasRoomFor(tuple(n, "twelve chars")));
+        try {
+            page.insertTuple(tuple(n, "twelve chars"));
+            fail("inserted into a full page");
+        } catch (DbException expected) {
+        }
+    }
+
+    /**
+     * A SlottedHeapFile fills pages through its free space map and reads
+     * them back after it is reopened.
+     */
+    @Test public void slottedHeapFile() throws Exception {
+        File f = File.createTempFile("slotted", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.sidecarFor(f).deleteOnExit();
+        ZoneMap.sidecarFor(f).deleteOnExit();
+        SlottedHeapFile hf = new SlottedHeapFile(f, TD);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++)
+            hf.insertTuple(tid, tuple(i, "row " + i));
+        Database.getBufferPool().flushAllPages();
+        int pages = hf.numPages();
+        assertTrue(pages < 1000 * TD.getSize() / BufferPool.getPageSize() / 4);
+
+        Database.reset();
+        hf = new SlottedHeapFile(f, TD);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertEquals(pages, hf.numPages());
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t");
+        scan.addPredicate(new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(990)));
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals("row " + ((IntField) t.getField(0)).getValue(),
+                    ((StringField) t.getField(1)).getValue());
+            n++;
+        }
+        scan.close();
+        assertEquals(10, n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
@@ -0,0 +1,120 @@
+package simpledb;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures readers scanning a table while writers keep updating tuples of
+ * it, with readers that lock the tuples they read and with readers that
+ * read a snapshot. Each writer repeatedly deletes its own tuple and inserts
+ * its new value, and commits; each reader repeatedly scans the table in a
+ * transaction of its own. Scans that saw other than the table's number of
+ * tuples, which never changes at a commit, are counted as inconsistent.
+ *
+ * Run with: ant runbench -Dbench=SnapshotReadBenchmark
+ */
+public class SnapshotReadBenchmark {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int ROWS = 2000;
+    private static final long MILLIS = 3000;
+
+    private static void run(final HeapFile hf, final boolean snapshots, String label) throws Exception {
+        final BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        final DbFileIterator it = hf.iterator(null);
+        final Tuple[] rows = new Tuple[WRITERS];
+        it.open();
+        for (int t = 0; t < WRITERS; t++) {
+            it.hasNext();
+            rows[t] = it.next();
+        }
+        it.close();
+        final long end = System.currentTimeMillis() + MILLIS;
+        final AtomicLong updates = new AtomicLong();
+        final AtomicLong scans = new AtomicLong();
+        final AtomicLong aborts = new AtomicLong();
+        final AtomicLong inconsistent = new AtomicLong();
+        Thread[] threads = new Thread[WRITERS + READERS];
+        for (int t = 0; t < WRITERS; t++) {
+            final int me = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; System.currentTimeMillis() < end; i++) {
+                            TransactionId tid = new TransactionId();
+                            try {
+                                bp.deleteTuple(tid, rows[me]);
+                                Tuple next = Utility.getHeapTuple(new int[] { me, i });
+                                bp.insertTuple(tid, hf.getId(), next);
+                                bp.flushPages(tid);
+                                bp.transactionComplete(tid, true);
+                                rows[me] = next;
+                                updates.incrementAndGet();
+                            } catch (TransactionAbortedException e) {
+                                aborts.incrementAndGet();
+                                bp.transactionComplete(tid, false);
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+        for (int t = WRITERS; t < WRITERS + READERS; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < end) {
+                            TransactionId tid = new TransactionId();
+                            if (snapshots) {
+                                bp.beginSnapshot(tid);
+                            }
+                            DbFileIterator scan = hf.iterator(tid);
+                            try {
+                                scan.open();
+                                int n = 0;
+                                while (scan.hasNext()) {
+                                    scan.next();
+                                    n++;
+                                }
+                                scans.incrementAndGet();
+                                if (n != ROWS) {
+                                    inconsistent.incrementAndGet();
+                                }
+                            } catch (TransactionAbortedException e) {
+                                aborts.incrementAndGet();
+                            }
+                            scan.close();
+                            bp.transactionComplete(tid, true);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        System.out.printf("%-16s %6.0f updates/s, %6.0f scans/s (%d inconsistent), %6d lock waits, %4d aborts%n",
+                label, updates.get() * 1000.0 / MILLIS, scans.get() * 1000.0 / MILLIS, inconsistent.get(),
+                bp.getLockManager().getWaits(), aborts.get());
+    }
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, ROWS, 1000, null, null);
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, "rows");
+        System.out.printf("%d writers and %d readers of a %d-tuple table%n", WRITERS, READERS, ROWS);
+        run(hf, false, "locking readers:");
+        run(hf, true, "snapshot reads:");
+    }
+}
@@ -0,0 +1,198 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SystemTestUtil;
+
+public class SnapshotReadTest {
+
+    private HeapFile hf;
+    private BufferPool bp;
+    private List<String> original;
+    private List<Tuple> tuples;
+    private TransactionId writer;
+    private TransactionId reader;
+
+    /** A one-page table of 10 tuples. */
+    @Before public void setUp() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        start();
+    }
+
+    private void start() throws Exception {
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        // a reader that waited for a lock would fail rather than hang
+        bp.getLockManager().setTimeoutMillis(100);
+        tuples = new ArrayList<Tuple>();
+        DbFileIterator it = hf.iterator(null);
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        original = scan(null);
+        writer = new TransactionId();
+        reader = new TransactionId();
+    }
+
+    private List<String> scan(TransactionId tid) throws Exception {
+        List<String> result = new ArrayList<String>();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            result.add(it.next().toString());
+        }
+        it.close();
+        return result;
+    }
+
+    private void commit(TransactionId tid) throws Exception {
+        bp.flushPages(tid);
+        bp.transactionComplete(tid, true);
+    }
+
+    /**
+     * A snapshot reader neither waits for nor sees the changes of a writer
+     * that has not committed, and takes no locks.
+     */
+    @Test public void readerIgnoresUncommitted() throws Exception {
+        bp.deleteTuple(writer, tuples.get(0));
+        bp.insertTuple(writer, hf.getId(), Utility.getHeapTuple(new int[] { -1, -1 }));
+        bp.beginSnapshot(reader);
+        assertEquals(original, scan(reader));
+        assertTrue(bp.getLockManager().heldKeys(reader).isEmpty());
+    }
+
+    /**
+     * A snapshot keeps reading the tuples as they were when it was taken
+     * after a writer commits, from a retained image that is dropped once
+     * the snapshot ends.
+     */
+    @Test public void snapshotOlderThanCommit() throws Exception {
+        bp.beginSnapshot(reader);
+        bp.deleteTuple(writer, tuples.get(0));
+        commit(writer);
+        assertEquals(original, scan(reader));
+        assertEquals(1, bp.getRetainedVersions());
+
+        TransactionId later = new TransactionId();
+        bp.beginSnapshot(later);
+        List<String> after = scan(later);
+        assertEquals(9, after.size());
+        assertFalse(after.contains(tuples.get(0).toString()));
+
+        bp.transactionComplete(reader, true);
+        assertEquals(0, bp.getRetainedVersions());
+        assertEquals(after, scan(later));
+    }
+
+    /** The changes of a writer that aborts are never seen. */
+    @Test public void abortedWriter() throws Exception {
+        bp.deleteTuple(writer, tuples.get(0));
+        bp.beginSnapshot(reader);
+        assertEquals(original, scan(reader));
+        bp.transactionComplete(writer, false);
+        assertEquals(original, scan(reader));
+        assertEquals(0, bp.getRetainedVersions());
+    }
+
+    /** Pages changed under page locks are read as they were before. */
+    @Test public void pageLockedTable() throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 10, 1000, null, null);
+        f.deleteOnExit();
+        hf = new HeapFile(f, Utility.getTupleDesc(2)) {
+            protected boolean locksTuples() {
+                return false;
+            }
+        };
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        start();
+
+        bp.deleteTuple(writer, tuples.get(0));
+        bp.beginSnapshot(reader);
+        assertEquals(original, scan(reader));
+        commit(writer);
+        assertEquals(original, scan(reader));
+        TransactionId later = new TransactionId();
+        bp.beginSnapshot(later);
+        assertEquals(9, scan(later).size());
+    }
+
+    /**
+     * Pages of other formats, which are always locked whole, are read
+     * without locks too.
+     */
+    @Test public void otherFormats() throws Exception {
+        File slotted = emptyFile();
+        readPageLockedTable(new SlottedHeapFile(slotted, Utility.getTupleDesc(2)));
+        File pax = emptyFile();
+        readPageLockedTable(new PaxFile(pax, Utility.getTupleDesc(2)));
+    }
+
+    private static File emptyFile() throws Exception {
+        File f = File.createTempFile("snapshot", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.sidecarFor(f).deleteOnExit();
+        ZoneMap.sidecarFor(f).deleteOnExit();
+        return f;
+    }
+
+    private void readPageLockedTable(HeapFile f) throws Exception {
+        hf = f;
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 10; i++) {
+            hf.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().transactionComplete(tid, true);
+        start();
+
+        bp.deleteTuple(writer, tuples.get(0));
+        bp.insertTuple(writer, hf.getId(), Utility.getHeapTuple(new int[] { -1, -1 }));
+        bp.beginSnapshot(reader);
+        assertEquals(original, scan(reader));
+        assertTrue(bp.getLockManager().heldKeys(reader).isEmpty());
+        commit(writer);
+        assertEquals(original, scan(reader));
+        TransactionId later = new TransactionId();
+        bp.beginSnapshot(later);
+        List<String> after = scan(later);
+        assertEquals(10, after.size());
+        assertFalse(after.contains(tuples.get(0).toString()));
+    }
+
+    /** A snapshot reader may not change anything. */
+    @Test public void readOnly() throws Exception {
+        Transaction t = new Transaction(true);
+        t.start();
+        assertTrue(bp.isSnapshot(t.getId()));
+        try {
+            bp.deleteTuple(t.getId(), tuples.get(0));
+            fail("expected DbException");
+        } catch (DbException e) {
+        }
+        assertEquals(original, scan(t.getId()));
+        t.commit();
+        assertFalse(bp.isSnapshot(t.getId()));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SnapshotReadTest.class);
+    }
+}
@@ -0,0 +1,141 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class StringDictionaryTest extends SimpleDbTestBase {
+
+    private File file;
+
+    @Before public void setUp() throws Exception {
+        file = File.createTempFile("strings", ".dict");
+        file.deleteOnExit();
+        file.delete();
+    }
+
+    /**
+     * Unit test for StringDictionary.encode(), decode() and lookup()
+     */
+    @Test public void encodeDecode() throws Exception {
+        StringDictionary dict = new StringDictionary(file);
+        assertEquals(0, dict.encode("fr").getCode());
+        assertEquals(1, dict.encode("de").getCode());
+        assertSame(dict.encode("fr"), dict.lookup("fr"));
+        assertNull(dict.lookup("it"));
+        assertEquals("de", dict.decode(1).getValue());
+        assertEquals(2, dict.size());
+        assertEquals(1, dict.codeOf(new StringField("de", Type.STRING_LEN)));
+        dict.close();
+
+        // reopened, with a partly written last entry
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] {0, 5, 'a'});
+        out.close();
+        dict = new StringDictionary(file);
+        assertEquals(2, dict.size());
+        assertEquals("fr", dict.decode(0).getValue());
+        assertEquals(2, dict.encode("it").getCode());
+        dict.close();
+        assertEquals(2, new StringDictionary(file).lookup("it").getCode());
+    }
+
+    /**
+     * DictionaryFields compare by code within a dictionary and by value
+     * otherwise, and hash like StringFields.
+     */
+    @Test public void fields() throws Exception {
+        StringDictionary dict = new StringDictionary();
+        StringDictionary other = new StringDictionary();
+        DictionaryField fr = dict.encode("fr");
+        StringField plain = new StringField("fr", Type.STRING_LEN);
+        assertTrue(fr.equals(plain));
+        assertTrue(plain.equals(fr));
+        assertEquals(plain.hashCode(), fr.hashCode());
+        assertTrue(fr.equals(other.encode("fr")));
+        assertFalse(fr.equals(dict.encode("de")));
+        assertTrue(fr.compare(Predicate.Op.NOT_EQUALS, dict.decode(1)));
+        assertTrue(fr.compare(Predicate.Op.GREATER_THAN, dict.decode(1)));
+
+        HashMap<Field, Integer> groups = new HashMap<Field, Integer>();
+        groups.put(fr, 1);
+        assertEquals(Integer.valueOf(1), groups.get(plain));
+        assertEquals(Integer.valueOf(1), groups.get(other.lookup("fr")));
+    }
+
+    /**
+     * A dictionary-encoded column is stored as codes, and predicates on it
+     * are answered from the codes.
+     */
+    @Test public void encodedTable() throws Exception {
+        File f = File.createTempFile("dict", ".dat");
+        f.deleteOnExit();
+        FreeSpaceMap.sidecarFor(f).deleteOnExit();
+        ZoneMap.sidecarFor(f).deleteOnExit();
+        File dictFile = StringDictionary.sidecarFor(f, 1);
+        dictFile.deleteOnExit();
+        dictFile.delete();
+        TupleDesc td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE},
+                new String[] {"id", "country"},
+                new StringDictionary[] {null, new StringDictionary(dictFile)});
+        assertEquals(8, td.getSize());
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertSame(td.getDictionary(1), Database.getCatalog().getDictionary(hf.getId(), 1));
+
+        String[] countries = {"fr", "de", "it"};
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 600; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(countries[i % 3], Type.STRING_LEN));
+            hf.insertTuple(tid, t);
+        }
+        assertEquals(2, hf.numPages());
+        assertEquals(3, td.getDictionary(1).size());
+        Database.getBufferPool().flushAllPages();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("de", Type.STRING_LEN)), new SeqScan(tid, hf.getId(), "t"));
+        filter.open();
+        int n = 0;
+        while (filter.hasNext()) {
+            Tuple t = filter.next();
+            assertTrue(t.getField(1) instanceof DictionaryField);
+            assertEquals(1, ((IntField) t.getField(0)).getValue() % 3);
+            n++;
+        }
+        filter.close();
+        assertEquals(200, n);
+
+        Predicate none = new Predicate(1, Predicate.Op.EQUALS, new StringField("es", Type.STRING_LEN));
+        Tuple t = new Tuple(td);
+        t.setField(1, td.getDictionary(1).decode(0));
+        assertFalse(none.filter(t));
+        td.getDictionary(1).encode("es");
+        t.setField(1, td.getDictionary(1).lookup("es"));
+        assertTrue(none.filter(t));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StringDictionaryTest.class);
+    }
+}
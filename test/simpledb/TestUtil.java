@@ -380,6 +380,8 @@ public class TestUtil {
                 throw new RuntimeException(e);
             }
             emptyFile.deleteOnExit();
+            FreeSpaceMap.sidecarFor(emptyFile).deleteOnExit();
+            ZoneMap.sidecarFor(emptyFile).deleteOnExit();
         }
 
         protected void setUp() throws Exception {
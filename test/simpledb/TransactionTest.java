@@ -1,10 +1,12 @@
 package simpledb;
 
+import java.io.File;
 import java.util.*;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import junit.framework.JUnit4TestAdapter;
+import simpledb.systemtest.SystemTestUtil;
 
 public class TransactionTest extends TestUtil.CreateHeapFile {
   private PageId p0, p1, p2;
@@ -112,6 +114,35 @@ public class TransactionTest extends TestUtil.CreateHeapFile {
     testTransactionComplete(false);
   }
 
+  /**
+   * Unit test for BufferPool.transactionComplete() assuming commit, on a
+   * table whose pages are locked: the committed tuple survives another
+   * transaction aborting after changing the same page.
+   */
+  @Test public void commitSurvivesLaterAbort() throws Exception {
+    File f = File.createTempFile("slotted", ".dat");
+    f.deleteOnExit();
+    FreeSpaceMap.sidecarFor(f).deleteOnExit();
+    ZoneMap.sidecarFor(f).deleteOnExit();
+    SlottedHeapFile hf = new SlottedHeapFile(f, Utility.getTupleDesc(2));
+    Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+
+    bp.insertTuple(tid1, hf.getId(), Utility.getHeapTuple(new int[] { 6, 830 }));
+    bp.transactionComplete(tid1, true);
+    bp.insertTuple(tid2, hf.getId(), Utility.getHeapTuple(new int[] { 7, 830 }));
+    bp.transactionComplete(tid2, false);
+
+    DbFileIterator it = hf.iterator(null);
+    it.open();
+    int n = 0;
+    while (it.hasNext()) {
+      assertEquals(6, ((IntField) it.next().getField(0)).getValue());
+      n++;
+    }
+    it.close();
+    assertEquals(1, n);
+  }
+
   /**
    * JUnit suite target
    */
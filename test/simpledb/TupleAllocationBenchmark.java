@@ -0,0 +1,65 @@
+package simpledb;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures the bytes allocated per tuple and the throughput of a buffered
+ * SeqScan feeding a Filter, a Project of two columns and a COUNT aggregate,
+ * as in SELECT COUNT(b) FROM t WHERE a < x. The allocation counts come from
+ * the JVM's per-thread allocation counter.
+ *
+ * Run with: ant runbench -Dbench=TupleAllocationBenchmark
+ */
+public class TupleAllocationBenchmark {
+
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 1000000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(COLUMNS, ROWS, 1000, null, null);
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(COLUMNS));
+        Database.getCatalog().addTable(hf, "t");
+        Database.resetBufferPool(hf.numPages() + 16);
+        com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        for (String query : new String[] {"scan+filter", "filter+project+count"}) {
+            long best = Long.MAX_VALUE;
+            long bytes = 0;
+            int n = 0;
+            for (int run = 0; run < RUNS; run++) {
+                OpIterator plan = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(500)),
+                        new SeqScan(new TransactionId(), hf.getId(), "t"));
+                if (query.startsWith("filter+project")) {
+                    java.util.ArrayList<Integer> fields = new java.util.ArrayList<Integer>();
+                    java.util.ArrayList<Type> types = new java.util.ArrayList<Type>();
+                    fields.add(0);
+                    fields.add(1);
+                    types.add(Type.INT_TYPE);
+                    types.add(Type.INT_TYPE);
+                    plan = new Aggregate(new Project(fields, types, plan), 1, Aggregator.NO_GROUPING,
+                            Aggregator.Op.COUNT);
+                }
+                long before = mx.getThreadAllocatedBytes(tid);
+                long start = System.nanoTime();
+                plan.open();
+                n = 0;
+                while (plan.hasNext()) {
+                    plan.next();
+                    n++;
+                }
+                plan.close();
+                best = Math.min(best, System.nanoTime() - start);
+                bytes = mx.getThreadAllocatedBytes(tid) - before;
+            }
+            System.out.printf("%-22s %6.1f bytes/row %10.0f rows/s (%d out)%n", query,
+                    bytes / (double) ROWS, ROWS / (best / 1e9), n);
+        }
+    }
+}
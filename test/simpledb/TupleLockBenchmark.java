@@ -0,0 +1,87 @@
+package simpledb;
+
+import java.io.File;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures updates to different tuples of one page by concurrent
+ * transactions, with tuple locks and with page locks. Each thread
+ * repeatedly deletes its own tuple and inserts its new value, yielding in
+ * between as if it did other work, and commits.
+ *
+ * Run with: ant runbench -Dbench=TupleLockBenchmark
+ */
+public class TupleLockBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int UPDATES = 5000;
+
+    private static void run(final HeapFile hf, String label) throws Exception {
+        final BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        final DbFileIterator it = hf.iterator(null);
+        final Tuple[] rows = new Tuple[THREADS];
+        it.open();
+        for (int t = 0; t < THREADS; t++) {
+            it.hasNext();
+            rows[t] = it.next();
+        }
+        it.close();
+        final long[] aborts = new long[1];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int me = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < UPDATES; i++) {
+                            TransactionId tid = new TransactionId();
+                            try {
+                                bp.deleteTuple(tid, rows[me]);
+                                Thread.yield();
+                                Tuple next = Utility.getHeapTuple(new int[] { me, i });
+                                bp.insertTuple(tid, hf.getId(), next);
+                                bp.transactionComplete(tid, true);
+                                rows[me] = next;
+                            } catch (TransactionAbortedException e) {
+                                synchronized (aborts) {
+                                    aborts[0]++;
+                                }
+                                bp.transactionComplete(tid, false);
+                            }
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        long nanos = System.nanoTime() - start;
+        LockManager lm = bp.getLockManager();
+        System.out.printf("%-13s %8.0f updates/s, %6d lock waits, %4d aborts%n", label,
+                THREADS * UPDATES * 1e9 / nanos, lm.getWaits(), aborts[0]);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, THREADS, 1000, null, null);
+        f.deleteOnExit();
+        HeapFile rows = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(rows, "rows");
+        HeapFile pages = new HeapFile(f, Utility.getTupleDesc(2)) {
+            protected boolean locksTuples() {
+                return false;
+            }
+        };
+        System.out.printf("%d threads updating their own tuple of one page%n", THREADS);
+        run(rows, "tuple locks:");
+        Database.getCatalog().addTable(pages, "pages");
+        run(pages, "page locks:");
+    }
+}
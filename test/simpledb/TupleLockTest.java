@@ -0,0 +1,188 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SystemTestUtil;
+
+public class TupleLockTest {
+
+    private HeapFile hf;
+    private BufferPool bp;
+    private List<Tuple> tuples;
+    private TransactionId tid1;
+    private TransactionId tid2;
+
+    /** A one-page table of 10 tuples. */
+    @Before public void setUp() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tuples = scan(null);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+    }
+
+    private List<Tuple> scan(TransactionId tid) throws Exception {
+        List<Tuple> result = new ArrayList<Tuple>();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            result.add(it.next());
+        }
+        it.close();
+        return result;
+    }
+
+    private static Tuple tuple(int a, int b) {
+        return Utility.getHeapTuple(new int[] { a, b });
+    }
+
+    /**
+     * Two transactions delete different tuples of one page without waiting
+     * for each other, holding only intention locks on the page.
+     */
+    @Test public void writersOfOnePage() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        bp.deleteTuple(tid1, tuples.get(0));
+        bp.deleteTuple(tid2, tuples.get(1));
+        LockManager lm = bp.getLockManager();
+        assertEquals(LockManager.Mode.IX, lm.heldMode(tid1, pid));
+        assertEquals(LockManager.Mode.IX, lm.heldMode(tid2, pid));
+        assertEquals(LockManager.Mode.IX, lm.heldMode(tid1, LockManager.tableKey(hf.getId())));
+        assertEquals(LockManager.Mode.X, lm.heldMode(tid1, tuples.get(0).getRecordId()));
+        assertNull(lm.heldMode(tid1, tuples.get(1).getRecordId()));
+
+        Tuple t1 = tuple(-1, -1);
+        Tuple t2 = tuple(-2, -2);
+        bp.insertTuple(tid1, hf.getId(), t1);
+        bp.insertTuple(tid2, hf.getId(), t2);
+        // each reused the slot it freed, which the other could not lock
+        assertEquals(tuples.get(0).getRecordId(), t1.getRecordId());
+        assertEquals(tuples.get(1).getRecordId(), t2.getRecordId());
+        assertEquals(10, scan(null).size());
+    }
+
+    /**
+     * An aborted transaction's changes are undone tuple by tuple, and those
+     * of a transaction that changed the same page and commits are kept.
+     */
+    @Test public void abortUndoesOnlyItsTuples() throws Exception {
+        bp.deleteTuple(tid1, tuples.get(0));
+        bp.insertTuple(tid1, hf.getId(), tuple(-1, -1));
+        bp.deleteTuple(tid2, tuples.get(1));
+        bp.transactionComplete(tid1, false);
+        bp.flushPages(tid2);
+        bp.transactionComplete(tid2, true);
+
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        List<String> after = new ArrayList<String>();
+        for (Tuple t : scan(null)) {
+            after.add(t.toString());
+        }
+        assertEquals(9, after.size());
+        assertTrue(after.contains(tuples.get(0).toString()));
+        assertFalse(after.contains(tuples.get(1).toString()));
+        assertFalse(after.contains(tuple(-1, -1).toString()));
+    }
+
+    /**
+     * A commit writes the page it shares with a transaction still running
+     * without that transaction's changes, which are written when it
+     * commits in turn.
+     */
+    @Test public void commitWritesOnlyCommitted() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        bp.insertTuple(tid2, hf.getId(), tuple(-2, -2));
+        bp.deleteTuple(tid2, tuples.get(1));
+        bp.insertTuple(tid1, hf.getId(), tuple(-1, -1));
+        bp.transactionComplete(tid1, true);
+
+        List<String> onDisk = onDisk(pid);
+        assertEquals(11, onDisk.size());
+        assertTrue(onDisk.contains(tuple(-1, -1).toString()));
+        assertTrue(onDisk.contains(tuples.get(1).toString()));
+        assertFalse(onDisk.contains(tuple(-2, -2).toString()));
+        assertEquals(tid2, bp.getPage(null, pid, Permissions.READ_ONLY).isDirty());
+
+        bp.transactionComplete(tid2, true);
+        onDisk = onDisk(pid);
+        assertEquals(11, onDisk.size());
+        assertTrue(onDisk.contains(tuple(-2, -2).toString()));
+        assertFalse(onDisk.contains(tuples.get(1).toString()));
+    }
+
+    private List<String> onDisk(HeapPageId pid) {
+        List<String> result = new ArrayList<String>();
+        Iterator<Tuple> it = ((HeapPage) hf.readPage(pid)).iterator();
+        while (it.hasNext()) {
+            result.add(it.next().toString());
+        }
+        return result;
+    }
+
+    /**
+     * A scan waits for the transaction that deleted a tuple, and sees the
+     * tuple if that transaction aborts.
+     */
+    @Test public void scanWaitsForDeleter() throws Exception {
+        bp.deleteTuple(tid1, tuples.get(0));
+        final List<Tuple> seen = new ArrayList<Tuple>();
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    seen.addAll(scan(tid2));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        reader.start();
+        reader.join(200);
+        assertTrue(reader.isAlive());
+        bp.transactionComplete(tid1, false);
+        reader.join();
+        assertEquals(10, seen.size());
+    }
+
+    /**
+     * Past the limit of tuple locks on a page, a scan locks the page and
+     * gives its tuple locks back.
+     */
+    @Test public void escalation() throws Exception {
+        bp.setTupleLocksPerPage(4);
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        assertEquals(10, scan(tid1).size());
+        LockManager lm = bp.getLockManager();
+        assertEquals(LockManager.Mode.S, lm.heldMode(tid1, pid));
+        for (Tuple t : tuples) {
+            assertNull(lm.heldMode(tid1, t.getRecordId()));
+        }
+
+        // a writer of another tuple now waits for the page
+        lm.setTimeoutMillis(100);
+        try {
+            bp.deleteTuple(tid2, tuples.get(5));
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TupleLockTest.class);
+    }
+}
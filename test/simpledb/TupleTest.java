@@ -29,6 +29,63 @@ public class TupleTest extends SimpleDbTestBase {
         assertEquals(new IntField(37), tup.getField(1));
     }
 
+    /**
+     * A tuple built over serialized bytes decodes its fields on demand, and
+     * fields that were set are not decoded.
+     */
+    @Test public void lazyFields() {
+        TupleDesc td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+        byte[] data = new byte[2 + td.getSize()];
+        // 7, "ab", -2 at offset 2
+        data[5] = 7;
+        data[9] = 2;
+        data[10] = 'a';
+        data[11] = 'b';
+        int last = 2 + Type.INT_TYPE.getLen() + Type.STRING_TYPE.getLen();
+        for (int i = 0; i < 4; i++)
+            data[last + i] = (byte) 0xFF;
+        data[last + 3] = (byte) 0xFE;
+
+        Tuple tup = new Tuple(td, data, 2);
+        tup.setField(0, new IntField(1));
+        assertEquals(new IntField(-2), tup.getField(2));
+        assertEquals(new IntField(1), tup.getField(0));
+        assertEquals(new StringField("ab", Type.STRING_LEN), tup.getField(1));
+        assertEquals("1\tab\t-2", tup.toString());
+    }
+
+    /**
+     * Unit test for Tuple.getInt(), merge() and project() on tuples backed
+     * by bytes and on tuples whose fields were set.
+     */
+    @Test public void flatTuples() {
+        TupleDesc td = Utility.getTupleDesc(2);
+        byte[] data = new byte[2 * td.getSize()];
+        data[3] = 1;
+        data[7] = 2;
+        data[11] = 3;
+        data[15] = 4;
+        Tuple t1 = new Tuple(td, data, 0, new HeapPageId(1, 0), 0);
+        Tuple t2 = new Tuple(td, data, td.getSize(), new HeapPageId(1, 0), 1);
+        assertEquals(2, t1.getInt(1));
+        assertEquals(new RecordId(new HeapPageId(1, 0), 1), t2.getRecordId());
+
+        TupleDesc merged = TupleDesc.merge(td, td);
+        Tuple m = Tuple.merge(merged, t1, t2);
+        assertEquals("1\t2\t3\t4", m.toString());
+        Tuple p = Tuple.project(Utility.getTupleDesc(2), t2, new int[] {1, 0});
+        assertEquals(4, p.getInt(0));
+        assertEquals(new IntField(3), p.getField(1));
+        assertEquals(t2.getRecordId(), p.getRecordId());
+
+        // set fields win over the bytes
+        t1.setField(0, new IntField(9));
+        assertEquals(9, t1.getInt(0));
+        assertEquals(2, t1.getInt(1));
+        assertEquals("9\t2\t3\t4", Tuple.merge(merged, t1, t2).toString());
+        assertEquals("2\t9", Tuple.project(td, t1, new int[] {1, 0}).toString());
+    }
+
     /**
      * Unit test for Tuple.getTupleDesc()
      */
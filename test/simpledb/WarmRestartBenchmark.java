@@ -0,0 +1,88 @@
+package simpledb;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures how fast a restarted buffer pool gets back to its hit ratio.
+ * A skewed point lookup workload first runs long enough to fill the pool,
+ * whose resident pages are then saved. The pool is then replaced by an
+ * empty one, as after a restart, and the same workload runs again: once
+ * on the cold pool and once while warmUp reloads the saved pages in the
+ * background. Page reads take READ_MICROS, as from a disk that is not in
+ * the OS page cache.
+ *
+ * Run with: ant runbench -Dbench=WarmRestartBenchmark
+ */
+public class WarmRestartBenchmark {
+
+    private static final int TABLE_PAGES = 8000;
+    private static final int POOL_PAGES = 2000;
+    // 90% of the lookups go to this many pages
+    private static final int HOT_PAGES = 1500;
+    private static final int READ_MICROS = 200;
+    private static final int LOOKUPS = 20000;
+    private static final int WINDOW = 2000;
+
+    /** A HeapFile whose reads take READ_MICROS longer. */
+    static class SlowHeapFile extends HeapFile {
+        SlowHeapFile(File f, TupleDesc td) {
+            super(f, td);
+        }
+
+        @Override
+        public Page readPage(PageId pid) {
+            LockSupport.parkNanos(READ_MICROS * 1000L);
+            return super.readPage(pid);
+        }
+    }
+
+    private static void lookups(BufferPool bp, HeapFile table, Random r, int n, boolean report)
+            throws Exception {
+        TransactionId tid = new TransactionId();
+        long start = System.nanoTime();
+        long misses = bp.snapshotMetrics().getMisses();
+        for (int i = 1; i <= n; i++) {
+            int page = r.nextInt(10) < 9 ? r.nextInt(HOT_PAGES) : r.nextInt(TABLE_PAGES);
+            bp.getPage(tid, new HeapPageId(table.getId(), page), Permissions.READ_ONLY);
+            if (report && i % WINDOW == 0) {
+                long m = bp.snapshotMetrics().getMisses();
+                System.out.printf("  lookups %5d-%5d: hit ratio %5.1f%%, %6.1f ms since restart%n",
+                        i - WINDOW + 1, i, 100.0 * (WINDOW - (m - misses)) / WINDOW,
+                        (System.nanoTime() - start) / 1e6);
+                misses = m;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, TABLE_PAGES * 504, 1000, null, null);
+        f.deleteOnExit();
+        HeapFile table = new SlowHeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(table, "t");
+        File saved = File.createTempFile("pool", ".pages");
+        saved.deleteOnExit();
+        System.out.printf("table: %d pages, pool: %d pages, hot set: %d pages, %d us per read%n",
+                TABLE_PAGES, POOL_PAGES, HOT_PAGES, READ_MICROS);
+
+        BufferPool bp = Database.resetBufferPool(POOL_PAGES);
+        lookups(bp, table, new Random(1), 4 * POOL_PAGES * 10 / 9, false);
+        System.out.printf("saved %d pages%n", bp.saveResidentPages(saved));
+
+        for (boolean warm : new boolean[] {false, true}) {
+            System.out.println(warm ? "warm restart:" : "cold restart:");
+            bp = Database.resetBufferPool(POOL_PAGES);
+            long start = System.nanoTime();
+            Thread loader = warm ? bp.warmUp(saved) : null;
+            lookups(bp, table, new Random(2), LOOKUPS, true);
+            if (loader != null) {
+                loader.join();
+                System.out.printf("  warm-up loaded %d pages, done after %.1f ms%n",
+                        bp.snapshotMetrics().getPrefetches(), (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+}
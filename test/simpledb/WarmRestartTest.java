@@ -0,0 +1,84 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class WarmRestartTest extends SimpleDbTestBase {
+
+    private HeapFile f;
+    private TransactionId tid;
+    private File saved;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        f = SystemTestUtil.createRandomHeapFile(2, 20 * 504, null, null);
+        tid = new TransactionId();
+        saved = File.createTempFile("pool", ".pages");
+        saved.deleteOnExit();
+    }
+
+    private HeapPageId pid(int pageNo) {
+        return new HeapPageId(f.getId(), pageNo);
+    }
+
+    /**
+     * The saved pages come most recently used first, and warming up a
+     * smaller pool loads the most recently used of them, give or take the
+     * pages the other warm-up threads were reading when it filled up.
+     */
+    @Test public void saveAndWarmUp() throws Exception {
+        BufferPool bp = Database.resetBufferPool(10);
+        for (int i = 0; i < 10; i++)
+            bp.getPage(tid, pid(i), Permissions.READ_ONLY);
+        bp.getPage(tid, pid(3), Permissions.READ_ONLY);
+        assertEquals(10, bp.saveResidentPages(saved));
+        List<PageId> pages = EvictionReplay.readTrace(saved);
+        assertEquals(pid(3), pages.get(0));
+        assertEquals(pid(9), pages.get(1));
+        assertEquals(pid(0), pages.get(9));
+
+        bp = Database.resetBufferPool(5);
+        bp.warmUp(saved).join();
+        assertEquals(5, bp.snapshotMetrics().getResidentPages());
+        List<PageId> first = pages.subList(0, 5 + BufferPool.WARM_UP_THREADS - 1);
+        assertTrue(first.containsAll(bp.getEvictionPolicy().residentPages()));
+        assertEquals(0, bp.snapshotMetrics().getMisses());
+    }
+
+    /**
+     * Pages of tables that are gone or past the end of their file are
+     * skipped.
+     */
+    @Test public void skipsMissingPages() throws Exception {
+        PrintWriter out = new PrintWriter(saved);
+        EvictionReplay.writeAccess(out, new HeapPageId(f.getId() + 1, 0));
+        EvictionReplay.writeAccess(out, pid(100));
+        EvictionReplay.writeAccess(out, pid(1));
+        out.close();
+
+        BufferPool bp = Database.resetBufferPool(10);
+        bp.warmUp(saved).join();
+        assertEquals(1, bp.snapshotMetrics().getResidentPages());
+        bp.getPage(tid, pid(1), Permissions.READ_ONLY);
+        assertEquals(0, bp.snapshotMetrics().getMisses());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(WarmRestartTest.class);
+    }
+}
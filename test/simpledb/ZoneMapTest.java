@@ -0,0 +1,150 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZoneMapTest extends TestUtil.CreateHeapFile {
+
+    private static final int PER_PAGE = 504;
+    private TransactionId tid;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tid = new TransactionId();
+        // column 0 of page p holds p * PER_PAGE ... (p + 1) * PER_PAGE - 1
+        for (int i = 0; i < PER_PAGE * 4; i++)
+            empty.insertTuple(tid, Utility.getHeapTuple(new int[] {i, -i}));
+        Database.getBufferPool().flushAllPages();
+    }
+
+    private static List<Predicate> preds(Predicate... p) {
+        return Arrays.asList(p);
+    }
+
+    private static Predicate pred(int field, Predicate.Op op, int v) {
+        return new Predicate(field, op, new IntField(v));
+    }
+
+    /**
+     * Unit test for ZoneMap.mayMatch()
+     */
+    @Test public void mayMatch() {
+        ZoneMap zm = empty.getZoneMap();
+        assertArrayEquals(new int[] {PER_PAGE, 2 * PER_PAGE - 1}, zm.getRange(1, 0));
+        assertArrayEquals(new int[] {-(2 * PER_PAGE - 1), -PER_PAGE}, zm.getRange(1, 1));
+
+        assertTrue(zm.mayMatch(1, preds(pred(0, Predicate.Op.EQUALS, PER_PAGE))));
+        assertFalse(zm.mayMatch(0, preds(pred(0, Predicate.Op.EQUALS, PER_PAGE))));
+        assertFalse(zm.mayMatch(1, preds(pred(0, Predicate.Op.GREATER_THAN, 2 * PER_PAGE - 1))));
+        assertTrue(zm.mayMatch(1, preds(pred(0, Predicate.Op.GREATER_THAN_OR_EQ, 2 * PER_PAGE - 1))));
+        assertFalse(zm.mayMatch(1, preds(pred(0, Predicate.Op.LESS_THAN, PER_PAGE))));
+        assertTrue(zm.mayMatch(1, preds(pred(0, Predicate.Op.LESS_THAN_OR_EQ, PER_PAGE))));
+        assertTrue(zm.mayMatch(1, preds(pred(0, Predicate.Op.NOT_EQUALS, PER_PAGE))));
+        // each predicate alone matches page 1, both together cannot
+        assertFalse(zm.mayMatch(1, preds(pred(0, Predicate.Op.GREATER_THAN, PER_PAGE),
+                pred(1, Predicate.Op.GREATER_THAN, -PER_PAGE))));
+        // unknown pages always may match
+        assertTrue(zm.mayMatch(10, preds(pred(0, Predicate.Op.EQUALS, -1))));
+    }
+
+    /**
+     * Inserts widen a page's range, deletes do not narrow it until the page
+     * is written.
+     */
+    @Test public void insertDelete() throws Exception {
+        Tuple t = Utility.getHeapTuple(new int[] {-5, 5});
+        HeapPageId pid = new HeapPageId(empty.getId(), 3);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(t);
+        ZoneMap zm = empty.getZoneMap();
+        assertArrayEquals(new int[] {-5, 4 * PER_PAGE - 1}, zm.getRange(3, 0));
+
+        page.deleteTuple(t);
+        assertArrayEquals(new int[] {-5, 4 * PER_PAGE - 1}, zm.getRange(3, 0));
+        empty.writePage(page);
+        assertArrayEquals(new int[] {3 * PER_PAGE + 1, 4 * PER_PAGE - 1}, zm.getRange(3, 0));
+    }
+
+    /**
+     * Ranges are read back when the file is opened again, unless the heap
+     * file was modified behind the map's back.
+     */
+    @Test public void persist() throws Exception {
+        File f = empty.getFile();
+        ZoneMap zm = new ZoneMap(ZoneMap.sidecarFor(f), f, empty.getTupleDesc(), 4);
+        assertArrayEquals(new int[] {2 * PER_PAGE, 3 * PER_PAGE - 1}, zm.getRange(2, 0));
+        zm.close();
+
+        assertTrue(f.setLastModified(f.lastModified() - 10000));
+        zm = new ZoneMap(ZoneMap.sidecarFor(f), f, empty.getTupleDesc(), 4);
+        assertNull(zm.getRange(2, 0));
+        zm.close();
+    }
+
+    /**
+     * Ranges learned from reads are only saved when the map is flushed or
+     * closed, with one write for consecutive pages.
+     */
+    @Test public void readsSavedOnFlush() throws Exception {
+        File f = empty.getFile();
+        File sidecar = File.createTempFile("reads", ".zm");
+        sidecar.deleteOnExit();
+        assertTrue(sidecar.delete());
+        ZoneMap zm = new ZoneMap(sidecar, f, empty.getTupleDesc(), 4);
+        for (int p = 0; p < 4; p++) {
+            zm.pageRead((TuplePage) empty.readPage(new HeapPageId(empty.getId(), p)));
+        }
+        assertArrayEquals(new int[] {2 * PER_PAGE, 3 * PER_PAGE - 1}, zm.getRange(2, 0));
+        assertFalse(sidecar.exists() && sidecar.length() > 0);
+        zm.close();
+
+        zm = new ZoneMap(sidecar, f, empty.getTupleDesc(), 4);
+        assertArrayEquals(new int[] {2 * PER_PAGE, 3 * PER_PAGE - 1}, zm.getRange(2, 0));
+        zm.close();
+    }
+
+    /**
+     * A SeqScan with a pushed-down predicate only reads the pages that may
+     * match, and only returns matching tuples.
+     */
+    @Test public void seqScanSkipsPages() throws Exception {
+        StringWriter trace = new StringWriter();
+        Database.getBufferPool().setAccessTrace(new PrintWriter(trace, true));
+        SeqScan scan = new SeqScan(tid, empty.getId(), "t");
+        scan.addPredicate(pred(0, Predicate.Op.GREATER_THAN_OR_EQ, 2 * PER_PAGE + 10));
+        scan.addPredicate(pred(0, Predicate.Op.LESS_THAN, 3 * PER_PAGE));
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            int v = ((IntField) scan.next().getField(0)).getValue();
+            assertTrue(v >= 2 * PER_PAGE + 10 && v < 3 * PER_PAGE);
+            n++;
+        }
+        scan.close();
+        Database.getBufferPool().setAccessTrace(null);
+        assertEquals(PER_PAGE - 10, n);
+        assertEquals(1, trace.toString().trim().split("\n").length);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
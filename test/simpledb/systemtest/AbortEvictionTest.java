@@ -1,5 +1,6 @@
 package simpledb.systemtest;
 
+import java.io.File;
 import java.io.IOException;
 
 import simpledb.*;
@@ -38,6 +39,83 @@ public class AbortEvictionTest extends SimpleDbTestBase {
         t.commit();
     }
 
+    /**
+     * A delete by a transaction that aborts is undone even though the pool
+     * had to evict pages while the transaction ran, whether the table's
+     * tuples or its pages are locked.
+     */
+    @Test public void testAbortedDeleteAfterEviction() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 3000, null, null);
+        abortDeleteAfterEviction(f);
+
+        File file = File.createTempFile("slotted", ".dat");
+        file.deleteOnExit();
+        FreeSpaceMap.sidecarFor(file).deleteOnExit();
+        ZoneMap.sidecarFor(file).deleteOnExit();
+        SlottedHeapFile slotted = new SlottedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(slotted, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 3000; i++) {
+            slotted.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().transactionComplete(tid, true);
+        abortDeleteAfterEviction(slotted);
+    }
+
+    private static void abortDeleteAfterEviction(HeapFile f) throws Exception {
+        Database.getBufferPool().flushAllPages();
+        BufferPool bp = Database.resetBufferPool(2);
+        assertTrue(f.numPages() > 2);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        bp.deleteTuple(tid, first);
+        // reading the other pages one by one evicts pages
+        for (int i = 1; i < f.numPages(); i++) {
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        }
+        assertEquals(2999, count(f, tid));
+        bp.transactionComplete(tid, false);
+        assertEquals(3000, count(f, new TransactionId()));
+    }
+
+    /**
+     * A commit does not write the uncommitted delete of another transaction
+     * on the same page: after a crash the deleted tuple is still there.
+     */
+    @Test public void testCommitBesideUncommittedDelete() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId running = new TransactionId();
+        DbFileIterator it = f.iterator(running);
+        it.open();
+        Tuple first = it.next();
+        it.close();
+        bp.deleteTuple(running, first);
+        TransactionId committing = new TransactionId();
+        bp.insertTuple(committing, f.getId(), Utility.getHeapTuple(new int[] { -1, -1 }));
+        bp.transactionComplete(committing, true);
+
+        // a crash loses the pool, and with it the running transaction
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(11, count(f, new TransactionId()));
+    }
+
+    private static int count(HeapFile f, TransactionId tid) throws Exception {
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(AbortEvictionTest.class);
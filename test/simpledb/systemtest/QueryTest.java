@@ -8,6 +8,7 @@ import org.junit.Test;
 import simpledb.BufferPool;
 import simpledb.Database;
 import simpledb.DbException;
+import simpledb.FreeSpaceMap;
 import simpledb.HeapFile;
 import simpledb.HeapFileEncoder;
 import simpledb.Parser;
@@ -15,6 +16,7 @@ import simpledb.TableStats;
 import simpledb.Transaction;
 import simpledb.TransactionAbortedException;
 import simpledb.Utility;
+import simpledb.ZoneMap;
 
 public class QueryTest {
 	
@@ -29,6 +31,8 @@ public class QueryTest {
 	public static HeapFile createDuplicateHeapFile(ArrayList<ArrayList<Integer>> tuples, int columns, String colPrefix) throws IOException {
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
+        FreeSpaceMap.sidecarFor(temp).deleteOnExit();
+        ZoneMap.sidecarFor(temp).deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
         return Utility.openHeapFile(columns, colPrefix, temp);
 	}